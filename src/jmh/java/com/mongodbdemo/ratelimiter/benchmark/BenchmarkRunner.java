@@ -0,0 +1,44 @@
+package com.mongodbdemo.ratelimiter.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs every benchmark at 1, 4, 16 and 64 threads with the GC profiler attached, so that each result
+ * carries {@code gc.alloc.rate.norm}. One JSON result file is written per thread count.
+ * <p>
+ * Arguments: the output directory (defaults to {@code target/jmh}) and an optional benchmark regex.
+ */
+public final class BenchmarkRunner {
+
+    private static final int[] THREAD_COUNTS = {1, 4, 16, 64};
+
+    private BenchmarkRunner() {
+
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        Path outputDirectory = Path.of(args.length > 0 ? args[0] : "target/jmh");
+        String include = args.length > 1 ? args[1] : ".*Benchmark.*";
+        Files.createDirectories(outputDirectory);
+
+        for (int threads : THREAD_COUNTS) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(outputDirectory.resolve("threads-" + threads + ".json").toString())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
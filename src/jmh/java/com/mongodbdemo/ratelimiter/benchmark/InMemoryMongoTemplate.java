@@ -0,0 +1,125 @@
+package com.mongodbdemo.ratelimiter.benchmark;
+
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.TTL_MONITOR_INTERVAL_SECONDS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link MongoTemplate} stand-in that applies the fixed-window and lease updates to {@code rateLimiter}
+ * documents held in a map, with the same upsert and duplicate-key behavior as MongoDB. Every call returns
+ * a fresh entity, as the mapping layer would, so allocation figures stay representative. Calls are
+ * counted per operation, as round-trips to a real server would be.
+ */
+public class InMemoryMongoTemplate extends MongoTemplate {
+
+    private final Map<String, RateLimiter> documents = new ConcurrentHashMap<>();
+    private final LongAdder findAndModifyCount = new LongAdder();
+    private final LongAdder findByIdCount = new LongAdder();
+    private final LongAdder updateFirstCount = new LongAdder();
+
+    public InMemoryMongoTemplate() {
+        super(databaseFactory());
+    }
+
+    @Override
+    public <T> T findAndModify(Query query, UpdateDefinition update, FindAndModifyOptions options, Class<T> entityClass) {
+        findAndModifyCount.increment();
+        Document queryObject = query.getQueryObject();
+        String userId = (String) queryObject.get("userId");
+        int threshold = counterLimit(queryObject);
+        Document updateObject = update.getUpdateObject();
+        int increment = ((Number) updateObject.get("$inc", Document.class).get("counter")).intValue();
+        Instant expirationTime = (Instant) updateObject.get("$setOnInsert", Document.class).get("expirationTime");
+
+        boolean[] filterMatched = {true};
+        RateLimiter updated = documents.compute(userId, (id, existing) -> {
+            if (existing == null || isExpired(existing)) {
+                return new RateLimiter(id, increment, expirationTime, 0L);
+            }
+            if (existing.getCounter() >= threshold) {
+                filterMatched[0] = false;
+                return existing;
+            }
+            return new RateLimiter(id, existing.getCounter() + increment, existing.getExpirationTime(),
+                    existing.getVersion() + 1);
+        });
+        if (!filterMatched[0]) {
+            // The filter did not match and the upsert collided with the existing _id
+            throw new DuplicateKeyException("E11000 duplicate key error collection: rateLimiter");
+        }
+        return entityClass.cast(updated);
+    }
+
+    @Override
+    public <T> T findById(Object id, Class<T> entityClass) {
+        findByIdCount.increment();
+        RateLimiter rateLimiter = documents.get((String) id);
+        return rateLimiter == null || isExpired(rateLimiter) ? null : entityClass.cast(rateLimiter);
+    }
+
+    @Override
+    public UpdateResult updateFirst(Query query, UpdateDefinition update, Class<?> entityClass) {
+        updateFirstCount.increment();
+        String userId = (String) query.getQueryObject().get("userId");
+        int increment = ((Number) update.getUpdateObject().get("$inc", Document.class).get("counter")).intValue();
+        documents.computeIfPresent(userId, (id, existing) -> new RateLimiter(id, existing.getCounter() + increment,
+                existing.getExpirationTime(), existing.getVersion() + 1));
+        return UpdateResult.acknowledged(1, 1L, null);
+    }
+
+    /**
+     * Returns the number of calls of each operation since creation or the last reset.
+     *
+     * @return the call count per operation name
+     */
+    public Map<String, Long> operationCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        counts.put("findAndModify", findAndModifyCount.sum());
+        counts.put("findById", findByIdCount.sum());
+        counts.put("updateFirst", updateFirstCount.sum());
+        return counts;
+    }
+
+    /**
+     * Sets all operation counts back to zero, keeping the documents.
+     */
+    public void resetOperationCounts() {
+        findAndModifyCount.reset();
+        findByIdCount.reset();
+        updateFirstCount.reset();
+    }
+
+    private static int counterLimit(Document queryObject) {
+        List<?> conditions = (List<?>) queryObject.get("$and");
+        Document counter = (Document) ((Document) conditions.get(0)).get("counter");
+        return ((Number) counter.get("$lt")).intValue();
+    }
+
+    private static boolean isExpired(RateLimiter rateLimiter) {
+        return rateLimiter.getExpirationTime().plusSeconds(TTL_MONITOR_INTERVAL_SECONDS).isBefore(Instant.now());
+    }
+
+    private static MongoDatabaseFactory databaseFactory() {
+        MongoDatabaseFactory mongoDatabaseFactory = mock(MongoDatabaseFactory.class);
+        when(mongoDatabaseFactory.getExceptionTranslator()).thenReturn(new MongoExceptionTranslator());
+        return mongoDatabaseFactory;
+    }
+}
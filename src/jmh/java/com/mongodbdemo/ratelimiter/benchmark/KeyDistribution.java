@@ -0,0 +1,76 @@
+package com.mongodbdemo.ratelimiter.benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * Key access patterns driven through the benchmarks. Samples are drawn up front so that picking
+ * the next key costs an array read and does not show up in allocation figures.
+ */
+public enum KeyDistribution {
+
+    /**
+     * Every key of the key space is equally likely.
+     */
+    UNIFORM,
+
+    /**
+     * Key popularity follows Zipf's law with exponent 1, as for real user traffic.
+     */
+    ZIPFIAN,
+
+    /**
+     * Every request targets the same key, as for a tenant-wide or global limit.
+     */
+    HOT_KEY;
+
+    private static final long SEED = 42L;
+
+    /**
+     * Draws a sequence of user IDs from this distribution.
+     *
+     * @param keySpace the number of distinct user IDs
+     * @param samples the number of user IDs to draw, a power of two
+     * @return the drawn user IDs
+     */
+    public String[] sample(int keySpace, int samples) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        double[] cumulative = this == ZIPFIAN ? zipfCumulative(keySpace) : null;
+        String[] keys = new String[samples];
+        for (int i = 0; i < samples; i++) {
+            int key = switch (this) {
+                case UNIFORM -> random.nextInt(keySpace);
+                case ZIPFIAN -> rank(cumulative, random.nextDouble());
+                case HOT_KEY -> 0;
+            };
+            keys[i] = "user" + key;
+        }
+        return keys;
+    }
+
+    private static double[] zipfCumulative(int keySpace) {
+        double[] cumulative = new double[keySpace];
+        double total = 0;
+        for (int rank = 1; rank <= keySpace; rank++) {
+            total += 1.0 / rank;
+            cumulative[rank - 1] = total;
+        }
+        for (int i = 0; i < keySpace; i++) {
+            cumulative[i] /= total;
+        }
+        return cumulative;
+    }
+
+    private static int rank(double[] cumulative, double probability) {
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] < probability) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,218 @@
+package com.mongodbdemo.ratelimiter.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mongodbdemo.ratelimiter.RatelimiterApplication;
+import com.mongodbdemo.ratelimiter.benchmark.InMemoryMongoTemplate;
+import com.mongodbdemo.ratelimiter.benchmark.KeyDistribution;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load test of {@code PUT /api/rate-limit/{userId}}. For each key distribution it starts the
+ * application with MongoDB replaced by {@link InMemoryMongoTemplate}, then sends requests in open loop at
+ * a fixed arrival rate: request {@code i} is due at {@code start + i / rate} whether or not earlier
+ * requests have completed, and its latency is measured from that due time. A stalled server therefore
+ * shows up in the percentiles instead of slowing the load down (no coordinated omission).
+ * <p>
+ * Arguments are {@code key=value} pairs:
+ * <ul>
+ *     <li>{@code rate}: requests per second, default {@code 1000}</li>
+ *     <li>{@code duration}: measured seconds per scenario, default {@code 30}</li>
+ *     <li>{@code warmup}: unmeasured seconds before each scenario, default {@code 5}</li>
+ *     <li>{@code keys}: number of distinct user IDs, default {@code 100000}</li>
+ *     <li>{@code distributions}: comma-separated {@link KeyDistribution} names, default all</li>
+ *     <li>{@code threshold}: {@code rate.limiter.threshold} of the application, default {@code 100}</li>
+ *     <li>{@code out}: directory of {@code loadtest.json}, default {@code target/loadtest}</li>
+ * </ul>
+ * Any other {@code --name=value} argument is passed to the application.
+ */
+public final class LoadTest {
+
+    private static final int SAMPLES = 1 << 16;
+    private static final long HISTOGRAM_MAX_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private LoadTest() {
+
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                applicationArgs.add(arg);
+            } else if (arg.contains("=")) {
+                options.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        int rate = Integer.parseInt(options.getOrDefault("rate", "1000"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        int keys = Integer.parseInt(options.getOrDefault("keys", "100000"));
+        int threshold = Integer.parseInt(options.getOrDefault("threshold", "100"));
+        Path outputDirectory = Path.of(options.getOrDefault("out", "target/loadtest"));
+        List<KeyDistribution> distributions = options.containsKey("distributions")
+                ? Arrays.stream(options.get("distributions").split(",")).map(KeyDistribution::valueOf).toList()
+                : List.of(KeyDistribution.values());
+
+        List<ScenarioResult> results = new ArrayList<>();
+        for (KeyDistribution distribution : distributions) {
+            Scenario scenario = new Scenario(distribution.name().toLowerCase(), distribution, keys, rate, duration, warmup, threshold);
+            ScenarioResult result = run(scenario, applicationArgs);
+            results.add(result);
+            System.out.printf("%-8s rate=%d/s achieved=%.0f/s p50=%dus p99=%dus p99.9=%dus 429=%.3f mongo=%s%n",
+                    result.scenario(), result.targetRate(), result.achievedRate(), result.latencyMicros().get("p50"),
+                    result.latencyMicros().get("p99"), result.latencyMicros().get("p99.9"), result.tooManyRequestsRatio(),
+                    result.mongoOperations());
+        }
+
+        Files.createDirectories(outputDirectory);
+        Path output = outputDirectory.resolve("loadtest.json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(output.toFile(), results);
+        System.out.println("Results written to " + output);
+    }
+
+    private static ScenarioResult run(Scenario scenario, List<String> applicationArgs) throws InterruptedException {
+        InMemoryMongoTemplate mongoTemplate = new InMemoryMongoTemplate();
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--rate.limiter.strategy=fixed-window",
+                "--rate.limiter.threshold=" + scenario.threshold(),
+                "--spring.data.mongodb.auto-index-creation=false",
+                "--rate.limiter.indexes.create=false",
+                "--logging.level.root=WARN"));
+        // Arguments override application.properties, default properties would not
+        args.addAll(applicationArgs);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(RatelimiterApplication.class)
+                .profiles(RatelimiterApplication.STANDALONE_PROFILE)
+                .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("mongoTemplate", mongoTemplate))
+                .run(args.toArray(String[]::new));
+        try (HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            URI[] uris = Arrays.stream(scenario.distribution().sample(scenario.keys(), SAMPLES))
+                    .map(userId -> URI.create("http://localhost:" + port + "/api/rate-limit/" + userId))
+                    .toArray(URI[]::new);
+
+            drive(httpClient, uris, scenario.rate(), scenario.warmupSeconds(), new Recording());
+            mongoTemplate.resetOperationCounts();
+            Recording recording = new Recording();
+            long start = System.nanoTime();
+            drive(httpClient, uris, scenario.rate(), scenario.durationSeconds(), recording);
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            return ScenarioResult.of(scenario, recording, elapsedSeconds, mongoTemplate.operationCounts());
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * Sends requests at a fixed arrival rate for the given number of seconds, each on its own virtual
+     * thread, and waits for all of them to complete.
+     */
+    private static void drive(HttpClient httpClient, URI[] uris, int rate, int seconds, Recording recording)
+            throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long requests = (long) rate * seconds;
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; i < requests; i++) {
+                long due = start + i * intervalNanos;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                HttpRequest request = HttpRequest.newBuilder(uris[(int) (i & (SAMPLES - 1))])
+                        .PUT(HttpRequest.BodyPublishers.noBody())
+                        .build();
+                executor.execute(() -> recording.record(due, send(httpClient, request)));
+            }
+        }
+    }
+
+    private static int send(HttpClient httpClient, HttpRequest request) {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    /**
+     * Parameters of one run.
+     */
+    record Scenario(String name, KeyDistribution distribution, int keys, int rate, int durationSeconds,
+                    int warmupSeconds, int threshold) {
+    }
+
+    /**
+     * Latencies and status codes of the requests of one run. Latencies are measured from each
+     * request's due time.
+     */
+    static final class Recording {
+        final Histogram latencyMicros = new ConcurrentHistogram(HISTOGRAM_MAX_MICROS, 3);
+        final LongAdder ok = new LongAdder();
+        final LongAdder tooManyRequests = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        void record(long dueNanos, int status) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - dueNanos);
+            latencyMicros.recordValue(Math.min(micros, HISTOGRAM_MAX_MICROS));
+            switch (status) {
+                case 200 -> ok.increment();
+                case 429 -> tooManyRequests.increment();
+                default -> errors.increment();
+            }
+        }
+    }
+
+    /**
+     * Machine-readable result of one run, written to {@code loadtest.json}.
+     */
+    record ScenarioResult(String scenario, String distribution, int keys, int threshold, int targetRate,
+                          double achievedRate, long requests, long ok, long tooManyRequests, long errors,
+                          double tooManyRequestsRatio, Map<String, Long> latencyMicros,
+                          Map<String, Long> mongoOperations, double mongoOperationsPerRequest) {
+
+        static ScenarioResult of(Scenario scenario, Recording recording, double elapsedSeconds, Map<String, Long> mongoOperations) {
+            Histogram histogram = recording.latencyMicros;
+            long requests = histogram.getTotalCount();
+            Map<String, Long> latency = new LinkedHashMap<>();
+            latency.put("p50", histogram.getValueAtPercentile(50));
+            latency.put("p90", histogram.getValueAtPercentile(90));
+            latency.put("p99", histogram.getValueAtPercentile(99));
+            latency.put("p99.9", histogram.getValueAtPercentile(99.9));
+            latency.put("max", histogram.getMaxValue());
+            long totalOperations = mongoOperations.values().stream().mapToLong(Long::longValue).sum();
+            return new ScenarioResult(scenario.name(), scenario.distribution().name(), scenario.keys(), scenario.threshold(),
+                    scenario.rate(), requests / elapsedSeconds, requests, recording.ok.sum(), recording.tooManyRequests.sum(),
+                    recording.errors.sum(), requests == 0 ? 0 : (double) recording.tooManyRequests.sum() / requests,
+                    latency, mongoOperations, requests == 0 ? 0 : (double) totalOperations / requests);
+        }
+    }
+}
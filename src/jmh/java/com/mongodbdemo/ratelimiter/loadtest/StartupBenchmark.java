@@ -0,0 +1,213 @@
+package com.mongodbdemo.ratelimiter.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup benchmark of the packaged builds. Each run starts a build as a new process on a free port and
+ * sends {@code PUT /api/rate-limit/{userId}} every few milliseconds until it gets a verdict (200 or 429).
+ * The time from launching the process to that verdict is what autoscaling waits for; the resident set
+ * size of the process is read from {@code /proc} at that moment, so it is only reported on Linux.
+ * <p>
+ * Builds are run when they exist:
+ * <ul>
+ *     <li>{@code jvm}: the executable jar, {@code mvn package}</li>
+ *     <li>{@code jvm-aot}: the same jar with {@code -Dspring.aot.enabled=true}, when built with
+ *     {@code mvn -Pnative package}</li>
+ *     <li>{@code native}: the native executable, {@code mvn -Pnative native:compile}</li>
+ * </ul>
+ * Arguments are {@code key=value} pairs:
+ * <ul>
+ *     <li>{@code runs}: runs per build, default {@code 10}</li>
+ *     <li>{@code target}: build directory, default {@code target}</li>
+ *     <li>{@code jar}: executable jar, default {@code <target>/ratelimiter-0.0.1-SNAPSHOT-exec.jar}</li>
+ *     <li>{@code native}: native executable, default {@code <target>/ratelimiter}</li>
+ *     <li>{@code aot}: whether to run {@code jvm-aot}, default {@code false}</li>
+ *     <li>{@code out}: directory of {@code startup.json}, default {@code <target>/startup}</li>
+ * </ul>
+ * The application runs the {@code memory} strategy without index creation, so no MongoDB is needed.
+ * Any {@code --name=value} argument is passed to the application and overrides these defaults, e.g.
+ * {@code --rate.limiter.strategy=fixed-window} to include the first MongoDB round-trip.
+ */
+public final class StartupBenchmark {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(1);
+    private static final long POLL_MILLIS = 5;
+
+    private StartupBenchmark() {
+
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        List<String> applicationArgs = new ArrayList<>(List.of(
+                "--rate.limiter.strategy=memory",
+                "--rate.limiter.indexes.create=false",
+                "--logging.level.root=WARN"));
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                applicationArgs.add(arg);
+            } else if (arg.contains("=")) {
+                options.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        int runs = Integer.parseInt(options.getOrDefault("runs", "10"));
+        Path target = Path.of(options.getOrDefault("target", "target"));
+        Path jar = Path.of(options.getOrDefault("jar", target.resolve("ratelimiter-0.0.1-SNAPSHOT-exec.jar").toString()));
+        Path nativeExecutable = Path.of(options.getOrDefault("native", target.resolve("ratelimiter").toString()));
+        Path outputDirectory = Path.of(options.getOrDefault("out", target.resolve("startup").toString()));
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+        Map<String, List<String>> builds = new LinkedHashMap<>();
+        if (Files.isRegularFile(jar)) {
+            builds.put("jvm", List.of(java, "-jar", jar.toString()));
+            if (Boolean.parseBoolean(options.getOrDefault("aot", "false"))) {
+                builds.put("jvm-aot", List.of(java, "-Dspring.aot.enabled=true", "-jar", jar.toString()));
+            }
+        } else {
+            System.out.println("Skipping jvm, " + jar + " not found");
+        }
+        if (Files.isExecutable(nativeExecutable)) {
+            builds.put("native", List.of(nativeExecutable.toString()));
+        } else {
+            System.out.println("Skipping native, " + nativeExecutable + " not found");
+        }
+
+        Files.createDirectories(outputDirectory);
+        List<BuildResult> results = new ArrayList<>();
+        try (HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(100))
+                .build()) {
+            for (Map.Entry<String, List<String>> build : builds.entrySet()) {
+                long[] startupMillis = new long[runs];
+                long[] rssKilobytes = new long[runs];
+                for (int run = 0; run < runs; run++) {
+                    int port = freePort();
+                    List<String> command = new ArrayList<>(build.getValue());
+                    command.add("--server.port=" + port);
+                    command.addAll(applicationArgs);
+                    Run result = run(httpClient, command, port, outputDirectory.resolve(build.getKey() + ".log"));
+                    startupMillis[run] = result.startupMillis();
+                    rssKilobytes[run] = result.rssKilobytes();
+                }
+                BuildResult result = BuildResult.of(build.getKey(), build.getValue(), startupMillis, rssKilobytes);
+                results.add(result);
+                System.out.printf("%-8s time-to-first-verdict p50=%dms min=%dms max=%dms rss p50=%dMB%n",
+                        result.build(), result.timeToFirstVerdictMillis().get("p50"), result.timeToFirstVerdictMillis().get("min"),
+                        result.timeToFirstVerdictMillis().get("max"), result.rssMegabytes().get("p50"));
+            }
+        }
+
+        Path output = outputDirectory.resolve("startup.json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(output.toFile(), results);
+        System.out.println("Results written to " + output);
+    }
+
+    /**
+     * Starts the process, waits for its first verdict and stops it.
+     */
+    private static Run run(HttpClient httpClient, List<String> command, int port, Path log)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/rate-limit/startup"))
+                .PUT(HttpRequest.BodyPublishers.noBody())
+                .timeout(Duration.ofSeconds(5))
+                .build();
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(log.toFile()))
+                .start();
+        try {
+            while (System.nanoTime() - start < STARTUP_TIMEOUT.toNanos()) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Process exited with " + process.exitValue() + ", see " + log);
+                }
+                int status = send(httpClient, request);
+                if (status == 200 || status == 429) {
+                    long startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    return new Run(startupMillis, rssKilobytes(process.pid()));
+                }
+                Thread.sleep(POLL_MILLIS);
+            }
+            throw new IllegalStateException("No verdict within " + STARTUP_TIMEOUT + ", see " + log);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static int send(HttpClient httpClient, HttpRequest request) throws InterruptedException {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads {@code VmRSS} of a process, or returns {@code -1} where {@code /proc} is not available.
+     */
+    private static long rssKilobytes(long pid) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", Long.toString(pid), "status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", ""));
+                }
+            }
+        } catch (IOException e) {
+            // Not Linux
+        }
+        return -1;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    record Run(long startupMillis, long rssKilobytes) {
+    }
+
+    /**
+     * Machine-readable result of one build, written to {@code startup.json}.
+     */
+    record BuildResult(String build, List<String> command, int runs, Map<String, Long> timeToFirstVerdictMillis,
+                       Map<String, Long> rssMegabytes, long[] startupMillis, long[] rssKilobytes) {
+
+        static BuildResult of(String build, List<String> command, long[] startupMillis, long[] rssKilobytes) {
+            return new BuildResult(build, command, startupMillis.length, summary(startupMillis, 1),
+                    summary(rssKilobytes, 1024), startupMillis, rssKilobytes);
+        }
+
+        private static Map<String, Long> summary(long[] values, long divisor) {
+            long[] sorted = values.clone();
+            Arrays.sort(sorted);
+            Map<String, Long> summary = new LinkedHashMap<>();
+            summary.put("min", sorted[0] / divisor);
+            summary.put("p50", sorted[sorted.length / 2] / divisor);
+            summary.put("max", sorted[sorted.length - 1] / divisor);
+            return summary;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.mongodbdemo.ratelimiter.server;
+
+import com.mongodbdemo.ratelimiter.RatelimiterApplication;
+import com.mongodbdemo.ratelimiter.client.RateLimiterClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end throughput of a check over {@code PUT /api/rate-limit/{userId}} and over the binary
+ * listener, both served by the same running application with the {@code memory} strategy so that
+ * the difference is the transport. Each benchmark thread keeps one check in flight; the binary
+ * checks of all threads are pipelined on a single connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProtocolBenchmark {
+
+    private static final int KEY_SPACE = 1 << 16;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private URI baseUri;
+    private RateLimiterClient binaryClient;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Arguments override application.properties, default properties would not
+        context = new SpringApplicationBuilder(RatelimiterApplication.class)
+                .profiles(RatelimiterApplication.STANDALONE_PROFILE)
+                .run(
+                        "--server.port=0",
+                        "--rate.limiter.strategy=memory",
+                        "--rate.limiter.threshold=1000000000",
+                        "--rate.limiter.deny-cache.enabled=false",
+                        "--rate.limiter.binary.enabled=true",
+                        "--rate.limiter.binary.port=0",
+                        "--spring.data.mongodb.auto-index-creation=false",
+                        "--rate.limiter.indexes.create=false",
+                        "--logging.level.root=WARN");
+        int httpPort = ((WebServerApplicationContext) context).getWebServer().getPort();
+        baseUri = URI.create("http://localhost:" + httpPort + "/api/rate-limit/");
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        binaryClient = RateLimiterClient.connect("localhost", context.getBean(BinaryRateLimiterServer.class).getPort());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        binaryClient.close();
+        httpClient.close();
+        context.close();
+    }
+
+    /**
+     * Per-thread position in the key space.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            next = ThreadLocalRandom.current().nextInt(KEY_SPACE);
+        }
+
+        String nextUserId() {
+            return "user" + (next++ & (KEY_SPACE - 1));
+        }
+    }
+
+    @Benchmark
+    public int http(Cursor cursor) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve(cursor.nextUserId()))
+                .PUT(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Benchmark
+    public boolean binary(Cursor cursor) {
+        return binaryClient.check(cursor.nextUserId()).join().allowed();
+    }
+}
@@ -0,0 +1,158 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.RawBsonDocumentCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.convert.UpdateMapper;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Client-side cost of one allowed fixed-window check, excluding the network round-trip: building the
+ * request and decoding the reply. {@code mongoTemplate} follows what {@code MongoTemplate.findAndModify}
+ * does for {@link RateLimiterService}, including query and update mapping, the version increment and
+ * reading the full document into a {@link RateLimiter}. {@code nativeDriver} follows
+ * {@link NativeRateLimitStrategy}, which reuses its update and keeps the projected reply as raw BSON.
+ * Compare {@code gc.alloc.rate.norm} and the score of the two.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckRequestBenchmark {
+
+    private static final int THRESHOLD = 5;
+    private static final Policy POLICY = new Policy(THRESHOLD, 1);
+    private static final int SAMPLES = 1 << 12;
+
+    private final String[] keys = new String[SAMPLES];
+    private QueryMapper queryMapper;
+    private UpdateMapper updateMapper;
+    private MappingMongoConverter converter;
+    private MongoPersistentEntity<?> entity;
+    private DocumentCodec documentCodec;
+    private RawBsonDocument fullReply;
+    private RawBsonDocument projectedReply;
+    private RawBsonDocumentCodec rawCodec;
+    private NativeRateLimitStrategy nativeStrategy;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < SAMPLES; i++) {
+            keys[i] = "user" + i;
+        }
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        queryMapper = new QueryMapper(converter);
+        updateMapper = new UpdateMapper(converter);
+        entity = mappingContext.getRequiredPersistentEntity(RateLimiter.class);
+        documentCodec = new DocumentCodec();
+
+        Date expirationTime = new Date(System.currentTimeMillis() + 60_000);
+        fullReply = RawBsonDocument.parse(new Document("_id", "user0")
+                .append("counter", 1)
+                .append("expirationTime", expirationTime)
+                .append("version", 0L)
+                .append("_class", RateLimiter.class.getName())
+                .toJson());
+        projectedReply = RawBsonDocument.parse(new Document("expirationTime", expirationTime).toJson());
+
+        rawCodec = new RawBsonDocumentCodec();
+        nativeStrategy = new NativeRateLimitStrategy(stubMongoTemplate(), THRESHOLD, 1);
+    }
+
+    /**
+     * Per-thread position in the key sequence.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            next = ThreadLocalRandom.current().nextInt(SAMPLES);
+        }
+    }
+
+    @Benchmark
+    public void mongoTemplate(Cursor cursor, Blackhole blackhole) {
+        String userId = keys[cursor.next++ & (SAMPLES - 1)];
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .andOperator(Criteria.where("counter").lt(THRESHOLD), EndedWindows.notEnded(Instant.now())));
+        Update update = new Update()
+                .inc("counter", 1)
+                .setOnInsert("userId", userId)
+                .setOnInsert("expirationTime", Instant.now().plusSeconds(0))
+                .inc("version", 1);
+        blackhole.consume(queryMapper.getMappedObject(query.getQueryObject(), entity));
+        blackhole.consume(updateMapper.getMappedObject(update.getUpdateObject(), entity));
+
+        Document reply = documentCodec.decode(new BsonBinaryReader(fullReply.getByteBuffer().asNIO()), DecoderContext.builder().build());
+        blackhole.consume(converter.read(RateLimiter.class, reply));
+    }
+
+    @Benchmark
+    public void nativeDriver(Cursor cursor, Blackhole blackhole) {
+        String userId = keys[cursor.next++ & (SAMPLES - 1)];
+        long nowSeconds = System.currentTimeMillis() / 1000;
+        blackhole.consume(nativeStrategy.filter(new BsonString(userId), nowSeconds, POLICY));
+        blackhole.consume(nativeStrategy.update(nowSeconds, POLICY));
+
+        blackhole.consume(rawCodec.decode(new BsonBinaryReader(projectedReply.getByteBuffer().asNIO()), DecoderContext.builder().build()));
+    }
+
+    /**
+     * Returns a template whose collection is never called; the strategy only needs one to be constructed.
+     */
+    @SuppressWarnings("unchecked")
+    private static MongoTemplate stubMongoTemplate() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        MongoCollection<RawBsonDocument> projected = mock(MongoCollection.class);
+        when(mongoTemplate.getCollectionName(RateLimiter.class)).thenReturn("rateLimiter");
+        when(mongoTemplate.getCollection("rateLimiter")).thenReturn(collection);
+        when(collection.withDocumentClass(RawBsonDocument.class)).thenReturn(projected);
+        return mongoTemplate;
+    }
+}
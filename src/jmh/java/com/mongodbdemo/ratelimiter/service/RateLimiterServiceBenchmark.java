@@ -0,0 +1,111 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.benchmark.InMemoryMongoTemplate;
+import com.mongodbdemo.ratelimiter.benchmark.KeyDistribution;
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link RateLimiterService#checkRateLimit(String)} per strategy, key distribution and
+ * traffic mix, with MongoDB replaced by {@link InMemoryMongoTemplate}. Allow-heavy traffic uses a
+ * threshold that is never reached; deny-heavy traffic uses the default threshold of 5, so past the
+ * first few requests per key nearly every check is denied.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimiterServiceBenchmark {
+
+    private static final int KEY_SPACE = 100_000;
+    private static final int SAMPLES = 1 << 16;
+
+    @Param({"fixed-window", "lease", "memory", "memory-mapped"})
+    private String strategy;
+
+    @Param({"UNIFORM", "ZIPFIAN", "HOT_KEY"})
+    private KeyDistribution distribution;
+
+    @Param({"allow-heavy", "deny-heavy"})
+    private String traffic;
+
+    private RateLimiterService rateLimiterService;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        int threshold = "allow-heavy".equals(traffic) ? 1_000_000_000 : 5;
+        rateLimiterService = new RateLimiterService(new InMemoryMongoTemplate());
+        configure(rateLimiterService, threshold);
+
+        switch (strategy) {
+            case "lease" -> {
+                LeaseRateLimitStrategy lease = new LeaseRateLimitStrategy(new InMemoryMongoTemplate());
+                configure(lease, threshold);
+                ReflectionTestUtils.setField(lease, "maxBlockSize", 50);
+                ReflectionTestUtils.setField(lease, "leaseDurationMillis", 2000L);
+                rateLimiterService.setRateLimitStrategy(lease);
+            }
+            case "memory" -> {
+                InMemoryRateLimitStrategy memory = new InMemoryRateLimitStrategy(1 << 20, "");
+                configure(memory, threshold);
+                rateLimiterService.setRateLimitStrategy(memory);
+            }
+            case "memory-mapped" -> {
+                Path file = Files.createTempFile("counters", ".table");
+                file.toFile().deleteOnExit();
+                InMemoryRateLimitStrategy memory = new InMemoryRateLimitStrategy(1 << 20, file.toString());
+                configure(memory, threshold);
+                rateLimiterService.setRateLimitStrategy(memory);
+            }
+            default -> {
+                // The fixed-window counter built into the service
+            }
+        }
+        keys = distribution.sample(KEY_SPACE, SAMPLES);
+    }
+
+    /**
+     * Per-thread position in the pre-drawn key sequence, starting at a random offset so that threads
+     * do not walk the sequence in lockstep.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            next = ThreadLocalRandom.current().nextInt(SAMPLES);
+        }
+    }
+
+    @Benchmark
+    public RateLimiterResponse checkRateLimit(Cursor cursor) {
+        return rateLimiterService.checkRateLimit(keys[cursor.next++ & (SAMPLES - 1)]);
+    }
+
+    private static void configure(Object target, int threshold) {
+        ReflectionTestUtils.setField(target, "threshold", threshold);
+        ReflectionTestUtils.setField(target, "expirationMinutes", 1);
+    }
+}
@@ -0,0 +1,110 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Time to serve a burst of concurrent checks on a single hot key whose first update attempt always loses
+ * the optimistic lock, so every check spends time in the retry backoff, on a pool sized like Tomcat's
+ * default of 200 platform threads and on virtual threads. MongoDB is replaced by a template that only
+ * simulates the round-trip latency, so the results show how many blocked checks each model keeps in flight.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Threads(1)
+@Fork(1)
+public class ThreadModelBenchmark {
+
+    private static final int TOMCAT_DEFAULT_MAX_THREADS = 200;
+    private static final int CONCURRENT_REQUESTS = 2000;
+    private static final long MONGO_ROUND_TRIP_MILLIS = 20;
+
+    @Param({"platform-pool", "virtual"})
+    private String threads;
+
+    private RateLimiterService rateLimiterService;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        AtomicLong attempts = new AtomicLong();
+        RateLimiter rateLimiter = new RateLimiter("hotKey", 1, Instant.now().plusSeconds(60), 1L);
+        MongoDatabaseFactory mongoDatabaseFactory = mock(MongoDatabaseFactory.class);
+        when(mongoDatabaseFactory.getExceptionTranslator()).thenReturn(new MongoExceptionTranslator());
+        MongoTemplate mongoTemplate = new MongoTemplate(mongoDatabaseFactory) {
+            @Override
+            public <T> T findAndModify(Query query, UpdateDefinition update, FindAndModifyOptions options,
+                                       Class<T> entityClass) {
+                sleepQuietly(MONGO_ROUND_TRIP_MILLIS);
+                if (attempts.incrementAndGet() % 2 == 1) {
+                    throw new OptimisticLockingFailureException("Contended hot key");
+                }
+                return entityClass.cast(rateLimiter);
+            }
+        };
+        rateLimiterService = new RateLimiterService(mongoTemplate);
+        executor = "virtual".equals(threads)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(TOMCAT_DEFAULT_MAX_THREADS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.close();
+    }
+
+    @Benchmark
+    public void burstOfChecks() throws InterruptedException, ExecutionException {
+        List<Future<?>> futures = new ArrayList<>(CONCURRENT_REQUESTS);
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            futures.add(executor.submit(() -> rateLimiterService.checkRateLimit("hotKey")));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -7,4 +7,12 @@ public final class RateLimiterConstants {
 
     public static final String BASE_PATH = "/api/rate-limit";
     public static final String USER_ID_PATH = "{userId}";
+    public static final String LIMITS_PATH = "{userId}/limits";
+    public static final String HEAVY_HITTERS_PATH = "heavy-hitters";
+
+    /**
+     * Interval at which the MongoDB TTL monitor removes expired documents. Retry-after instants
+     * handed to the controller are offset by this interval.
+     */
+    public static final long TTL_MONITOR_INTERVAL_SECONDS = 60L;
 }
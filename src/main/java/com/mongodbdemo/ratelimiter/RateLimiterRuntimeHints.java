@@ -0,0 +1,40 @@
+package com.mongodbdemo.ratelimiter;
+
+import com.mongodbdemo.ratelimiter.dto.ApiResponse;
+import com.mongodbdemo.ratelimiter.dto.HeavyHitter;
+import com.mongodbdemo.ratelimiter.dto.MultiLimitResponse;
+import com.mongodbdemo.ratelimiter.dto.RateLimitVerdict;
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.entity.ClusterCheckpoint;
+import com.mongodbdemo.ratelimiter.entity.GcraState;
+import com.mongodbdemo.ratelimiter.entity.LimitCounter;
+import com.mongodbdemo.ratelimiter.entity.LimitPolicy;
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+import java.util.List;
+
+/**
+ * Reflection hints for a native image. Entities are instantiated and populated by the MongoDB
+ * converter, and responses serialized by Jackson, through reflection that AOT processing cannot
+ * fully infer, e.g. for types only reached through {@code ResponseEntity<?>} or {@code findAndModify}.
+ */
+public class RateLimiterRuntimeHints implements RuntimeHintsRegistrar {
+
+    static final List<Class<?>> REFLECTIVE_TYPES = List.of(
+            RateLimiter.class, GcraState.class, LimitCounter.class, LimitPolicy.class,
+            ClusterCheckpoint.class, ApiResponse.class, RateLimiterResponse.class, MultiLimitResponse.class, RateLimitVerdict.class,
+            HeavyHitter.class);
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (Class<?> type : REFLECTIVE_TYPES) {
+            hints.reflection().registerType(type,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS,
+                    MemberCategory.DECLARED_FIELDS);
+        }
+    }
+}
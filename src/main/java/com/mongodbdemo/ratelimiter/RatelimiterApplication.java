@@ -2,12 +2,24 @@ package com.mongodbdemo.ratelimiter;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
+@ImportRuntimeHints(RateLimiterRuntimeHints.class)
 public class RatelimiterApplication {
 
+	/**
+	 * Profile of the standalone service. Its settings, such as the server port and the MongoDB connection,
+	 * live in {@code application-standalone.properties}, so they never apply to applications embedding the jar.
+	 */
+	public static final String STANDALONE_PROFILE = "standalone";
+
 	public static void main(String[] args) {
-		SpringApplication.run(RatelimiterApplication.class, args);
+		SpringApplication application = new SpringApplication(RatelimiterApplication.class);
+		application.setAdditionalProfiles(STANDALONE_PROFILE);
+		application.run(args);
 	}
 
 }
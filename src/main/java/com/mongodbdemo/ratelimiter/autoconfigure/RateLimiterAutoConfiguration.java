@@ -0,0 +1,40 @@
+package com.mongodbdemo.ratelimiter.autoconfigure;
+
+import com.mongodbdemo.ratelimiter.RateLimiterRuntimeHints;
+import com.mongodbdemo.ratelimiter.metrics.RateLimiterMetrics;
+import com.mongodbdemo.ratelimiter.repository.MongoIndexInitializer;
+import com.mongodbdemo.ratelimiter.service.RateLimiterService;
+import com.mongodbdemo.ratelimiter.web.RateLimiterWebConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Embeds the rate limiter in a host application that has this jar as a dependency: the service with its
+ * strategies and metrics, the {@link MongoIndexInitializer} that creates its indexes, plus
+ * {@link RateLimiterWebConfiguration} in web applications. Checks run in
+ * process against the host's {@code MongoTemplate}, on the same collections as the standalone service.
+ * The host sets {@code rate.limiter.threshold} and {@code rate.limiter.expiration.minutes}.
+ * <p>
+ * Backs off when a {@link RateLimiterService} is already defined, as in the standalone service itself.
+ */
+@AutoConfiguration(after = MongoDataAutoConfiguration.class)
+@ConditionalOnMissingBean(RateLimiterService.class)
+@ComponentScan(basePackageClasses = {RateLimiterService.class, RateLimiterMetrics.class})
+@EnableScheduling
+@Import(MongoIndexInitializer.class)
+@ImportRuntimeHints(RateLimiterRuntimeHints.class)
+public class RateLimiterAutoConfiguration {
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    @Import(RateLimiterWebConfiguration.class)
+    static class WebConfiguration {
+    }
+}
@@ -0,0 +1,136 @@
+package com.mongodbdemo.ratelimiter.client;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Frames of the binary rate limit protocol. Every frame starts with a 4-byte big-endian length that
+ * counts the bytes following it.
+ * <pre>
+ * request:  length | requestId (int) | opcode (byte) | userId (UTF-8, rest of the frame)
+ * response: length | requestId (int) | status (byte) | retryAfterSeconds (long)
+ * </pre>
+ * Requests on one connection may be pipelined; responses come back in completion order and are
+ * matched to their request by {@code requestId}.
+ */
+public final class BinaryProtocol {
+
+    /**
+     * Opcode of a request that checks and consumes one permit for a user ID.
+     */
+    public static final byte OP_CHECK = 1;
+
+    public static final byte STATUS_ALLOWED = 0;
+    public static final byte STATUS_DENIED = 1;
+    public static final byte STATUS_ERROR = 2;
+
+    /**
+     * Largest user ID accepted, in UTF-8 bytes.
+     */
+    public static final int MAX_USER_ID_BYTES = 1024;
+
+    private static final int REQUEST_HEADER_BYTES = Integer.BYTES + Byte.BYTES;
+    private static final int RESPONSE_BYTES = Integer.BYTES + Byte.BYTES + Long.BYTES;
+
+    private BinaryProtocol() {
+
+    }
+
+    /**
+     * Request decoded from a frame.
+     *
+     * @param requestId the ID the response must carry
+     * @param opcode the operation requested
+     * @param userId the ID of the user for whom the rate limit is being checked
+     */
+    public record Request(int requestId, byte opcode, String userId) {
+    }
+
+    /**
+     * Response decoded from a frame.
+     *
+     * @param requestId the ID of the request this responds to
+     * @param status one of {@link #STATUS_ALLOWED}, {@link #STATUS_DENIED} or {@link #STATUS_ERROR}
+     * @param retryAfterSeconds seconds until the user may retry when denied, {@code 0} otherwise
+     */
+    public record Response(int requestId, byte status, long retryAfterSeconds) {
+    }
+
+    /**
+     * Encodes a user ID for {@link #writeRequest}.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @return the user ID in UTF-8
+     * @throws IllegalArgumentException if the user ID exceeds {@link #MAX_USER_ID_BYTES}
+     */
+    public static byte[] encodeUserId(String userId) {
+        byte[] userIdBytes = userId.getBytes(StandardCharsets.UTF_8);
+        if (userIdBytes.length > MAX_USER_ID_BYTES) {
+            throw new IllegalArgumentException("User ID exceeds " + MAX_USER_ID_BYTES + " bytes");
+        }
+        return userIdBytes;
+    }
+
+    public static void writeRequest(DataOutputStream out, int requestId, byte opcode, byte[] userIdBytes) throws IOException {
+        out.writeInt(REQUEST_HEADER_BYTES + userIdBytes.length);
+        out.writeInt(requestId);
+        out.writeByte(opcode);
+        out.write(userIdBytes);
+    }
+
+    /**
+     * Reads the next request frame.
+     *
+     * @param in the connection's input
+     * @return the request, or {@code null} if the peer closed the connection between frames
+     * @throws ProtocolException if the frame length is out of bounds
+     */
+    public static Request readRequest(DataInputStream in) throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            return null;
+        }
+        int length = readLength(in, first);
+        if (length < REQUEST_HEADER_BYTES || length > REQUEST_HEADER_BYTES + MAX_USER_ID_BYTES) {
+            throw new ProtocolException("Invalid request frame length " + length);
+        }
+        int requestId = in.readInt();
+        byte opcode = in.readByte();
+        byte[] userIdBytes = new byte[length - REQUEST_HEADER_BYTES];
+        in.readFully(userIdBytes);
+        return new Request(requestId, opcode, new String(userIdBytes, StandardCharsets.UTF_8));
+    }
+
+    public static void writeResponse(DataOutputStream out, int requestId, byte status, long retryAfterSeconds) throws IOException {
+        out.writeInt(RESPONSE_BYTES);
+        out.writeInt(requestId);
+        out.writeByte(status);
+        out.writeLong(retryAfterSeconds);
+    }
+
+    /**
+     * Reads the next response frame.
+     *
+     * @param in the connection's input
+     * @return the response, or {@code null} if the peer closed the connection between frames
+     * @throws ProtocolException if the frame length is not that of a response
+     */
+    public static Response readResponse(DataInputStream in) throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            return null;
+        }
+        int length = readLength(in, first);
+        if (length != RESPONSE_BYTES) {
+            throw new ProtocolException("Invalid response frame length " + length);
+        }
+        return new Response(in.readInt(), in.readByte(), in.readLong());
+    }
+
+    private static int readLength(DataInputStream in, int first) throws IOException {
+        return (first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+    }
+}
@@ -0,0 +1,144 @@
+package com.mongodbdemo.ratelimiter.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Client of the binary rate limit listener. One client holds one connection and is safe for concurrent
+ * use: checks from any number of threads are pipelined on that connection and each completes when the
+ * response carrying its request ID arrives, in whatever order the server answers.
+ * <pre>
+ * try (RateLimiterClient client = RateLimiterClient.connect("localhost", 9002)) {
+ *     RateLimiterClient.Verdict verdict = client.check("user123").join();
+ * }
+ * </pre>
+ */
+public final class RateLimiterClient implements AutoCloseable {
+
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private final Map<Integer, CompletableFuture<Verdict>> pending = new ConcurrentHashMap<>();
+    private volatile UncheckedIOException closed;
+
+    private RateLimiterClient(Socket socket) throws IOException {
+        this.socket = socket;
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        Thread.ofVirtual().name("rate-limiter-client-reader").start(() -> readResponses(in));
+    }
+
+    /**
+     * Opens a connection to a binary rate limit listener.
+     *
+     * @param host the host the listener runs on
+     * @param port the port set through {@code rate.limiter.binary.port}
+     * @return a connected client
+     * @throws IOException if the connection cannot be established
+     */
+    public static RateLimiterClient connect(String host, int port) throws IOException {
+        Socket socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(host, port));
+        return new RateLimiterClient(socket);
+    }
+
+    /**
+     * Checks and consumes one permit for the given user ID.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @return a future completed with the verdict, or exceptionally if the user ID is too long, the check
+     * failed on the server or the connection was lost
+     */
+    public CompletableFuture<Verdict> check(String userId) {
+        CompletableFuture<Verdict> future = new CompletableFuture<>();
+        byte[] userIdBytes;
+        try {
+            // Validated before taking the lock, so a writer never fails after other requests counted on its flush
+            userIdBytes = BinaryProtocol.encodeUserId(userId);
+        } catch (IllegalArgumentException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        int requestId = nextRequestId.getAndIncrement();
+        pending.put(requestId, future);
+        if (closed != null) {
+            pending.remove(requestId);
+            future.completeExceptionally(closed);
+            return future;
+        }
+        writeLock.lock();
+        try {
+            try {
+                BinaryProtocol.writeRequest(out, requestId, BinaryProtocol.OP_CHECK, userIdBytes);
+            } finally {
+                // A thread waiting for the lock flushes this request along with its own, so the last
+                // writer flushes even if its own write failed
+                if (!writeLock.hasQueuedThreads()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            pending.remove(requestId);
+            future.completeExceptionally(e);
+        } finally {
+            writeLock.unlock();
+        }
+        return future;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private void readResponses(DataInputStream in) {
+        IOException failure = null;
+        try {
+            BinaryProtocol.Response response;
+            while ((response = BinaryProtocol.readResponse(in)) != null) {
+                CompletableFuture<Verdict> future = pending.remove(response.requestId());
+                if (future == null) {
+                    continue;
+                }
+                if (response.status() == BinaryProtocol.STATUS_ERROR) {
+                    future.completeExceptionally(new IllegalStateException("Rate limit check failed on the server"));
+                } else {
+                    future.complete(new Verdict(response.status() == BinaryProtocol.STATUS_ALLOWED, response.retryAfterSeconds()));
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+        closed = new UncheckedIOException("Rate limiter connection closed",
+                failure != null ? failure : new IOException("End of stream"));
+        // Checks registered before the flag was set are failed here, later ones by check itself
+        pending.keySet().forEach(requestId -> {
+            CompletableFuture<Verdict> future = pending.remove(requestId);
+            if (future != null) {
+                future.completeExceptionally(closed);
+            }
+        });
+    }
+
+    /**
+     * Outcome of one check.
+     *
+     * @param allowed whether the request is allowed
+     * @param retryAfterSeconds seconds until the user may retry when denied, {@code 0} otherwise
+     */
+    public record Verdict(boolean allowed, long retryAfterSeconds) {
+    }
+}
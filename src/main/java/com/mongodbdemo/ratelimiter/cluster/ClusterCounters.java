@@ -0,0 +1,264 @@
+package com.mongodbdemo.ratelimiter.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-key G-counters of the current window, one slot per cluster node. A node only increments its own
+ * slot and merges the slots of the others by taking the maximum, so merging is idempotent, commutative
+ * and associative: deltas can be lost, duplicated or reordered and every node still converges to the
+ * same counts. A key's total is the sum of its slots.
+ * <p>
+ * Windows are aligned to multiples of the window length in epoch time, so all nodes agree on which
+ * window a request falls in without coordinating. A key keeps only its latest window; older ones are
+ * replaced when a request or a delta of a newer window arrives, and dropped by {@link #evictExpired}.
+ * <p>
+ * A peer not heard from for {@code suspectMillis} is presumed partitioned away and still consuming its
+ * fair share: its slot counts as at least {@code ceil(limit / nodes)}. The nodes on each side of a
+ * partition therefore admit at most the shares of their side plus what they had counted before it, and
+ * overshoot stays bounded by what was admitted during gossip and suspicion delays.
+ */
+public final class ClusterCounters {
+
+    /**
+     * Returned by {@link #tryAcquire} when the request is allowed.
+     */
+    public static final long ALLOWED = 0L;
+
+    private final int nodeIndex;
+    private final int nodes;
+    private final long windowMillis;
+    private final long suspectMillis;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final Set<String> unsaved = ConcurrentHashMap.newKeySet();
+    private final AtomicLongArray lastHeardMillis;
+
+    /**
+     * Creates the counters of one node.
+     *
+     * @param nodeIndex the index of this node, which owns that slot of every counter
+     * @param nodes the number of nodes in the cluster
+     * @param windowMillis the length of a window in milliseconds
+     * @param suspectMillis how long a silent peer is trusted before it is presumed partitioned away
+     */
+    public ClusterCounters(int nodeIndex, int nodes, long windowMillis, long suspectMillis) {
+        this.nodeIndex = nodeIndex;
+        this.nodes = nodes;
+        this.windowMillis = windowMillis;
+        this.suspectMillis = suspectMillis;
+        this.lastHeardMillis = new AtomicLongArray(nodes);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < nodes; i++) {
+            lastHeardMillis.set(i, now);
+        }
+    }
+
+    /**
+     * Counts one request for the key on this node if the cluster-wide total is below the limit.
+     *
+     * @param key the key being checked
+     * @param limit the number of requests allowed per window across the cluster
+     * @param nowMillis the current time in epoch milliseconds
+     * @return {@link #ALLOWED}, or the epoch millisecond at which the key's window ends when denied
+     */
+    public long tryAcquire(String key, int limit, long nowMillis) {
+        Window window = currentWindow(key, nowMillis);
+        long share = (limit + nodes - 1) / nodes;
+        while (true) {
+            long own = window.counts.get(nodeIndex);
+            long total = own;
+            for (int node = 0; node < nodes; node++) {
+                if (node != nodeIndex) {
+                    long count = window.counts.get(node);
+                    total += isReachable(node, nowMillis) ? count : Math.max(count, share);
+                }
+            }
+            if (total >= limit) {
+                return window.start + windowMillis;
+            }
+            if (window.counts.compareAndSet(nodeIndex, own, own + 1)) {
+                dirty.add(key);
+                unsaved.add(key);
+                return ALLOWED;
+            }
+        }
+    }
+
+    /**
+     * Merges one slot of a key's counter received from a peer or read from a checkpoint.
+     *
+     * @param key the key of the counter
+     * @param windowStart the start of the counter's window in epoch milliseconds
+     * @param node the index of the node owning the slot
+     * @param count the slot's count
+     */
+    public void merge(String key, long windowStart, int node, long count) {
+        if (node < 0 || node >= nodes) {
+            return;
+        }
+        Window window = windows.compute(key, (k, current) ->
+                current == null || current.start < windowStart ? new Window(windowStart, nodes) : current);
+        if (window.start != windowStart) {
+            return; // A delta of a window this node has moved past
+        }
+        long current;
+        do {
+            current = window.counts.get(node);
+        } while (current < count && !window.counts.compareAndSet(node, current, count));
+    }
+
+    /**
+     * Records that a peer was heard from.
+     *
+     * @param node the index of the peer
+     * @param nowMillis the current time in epoch milliseconds
+     */
+    public void heard(int node, long nowMillis) {
+        if (node >= 0 && node < nodes) {
+            lastHeardMillis.set(node, nowMillis);
+        }
+    }
+
+    /**
+     * Returns whether a peer has been heard from within the suspicion timeout.
+     *
+     * @param node the index of the peer
+     * @param nowMillis the current time in epoch milliseconds
+     * @return {@code true} if the peer's counts are trusted as they are
+     */
+    public boolean isReachable(int node, long nowMillis) {
+        return nowMillis - lastHeardMillis.get(node) < suspectMillis;
+    }
+
+    /**
+     * Returns this node's slot of every key counted since the last call, for gossip.
+     *
+     * @return the changed slots of this node
+     */
+    public List<Slot> drainChanges() {
+        return drain(dirty);
+    }
+
+    /**
+     * Returns this node's slot of every key counted since the last call, for checkpoints. Tracked apart
+     * from {@link #drainChanges}, so gossip rounds do not hide changes from the next checkpoint.
+     *
+     * @return the changed slots of this node
+     */
+    public List<Slot> drainUnsaved() {
+        return drain(unsaved);
+    }
+
+    /**
+     * Hands slots whose checkpoint failed back to the next {@link #drainUnsaved} call.
+     *
+     * @param slots the slots that were not saved
+     */
+    public void retainUnsaved(List<Slot> slots) {
+        for (Slot slot : slots) {
+            unsaved.add(slot.key());
+        }
+    }
+
+    /**
+     * Returns every non-zero slot of every current window.
+     *
+     * @return the full state of this node
+     */
+    public List<Slot> snapshot() {
+        List<Slot> slots = new ArrayList<>();
+        windows.forEach((key, window) -> {
+            for (int node = 0; node < nodes; node++) {
+                long count = window.counts.get(node);
+                if (count > 0) {
+                    slots.add(new Slot(key, window.start, node, count));
+                }
+            }
+        });
+        return slots;
+    }
+
+    /**
+     * Drops the windows that have ended.
+     *
+     * @param nowMillis the current time in epoch milliseconds
+     */
+    public void evictExpired(long nowMillis) {
+        windows.values().removeIf(window -> window.start + windowMillis <= nowMillis);
+    }
+
+    /**
+     * Returns the cluster-wide count of a key in its current window, as known to this node.
+     *
+     * @param key the key
+     * @param nowMillis the current time in epoch milliseconds
+     * @return the sum of the key's slots, or {@code 0} if it has no counter for the current window
+     */
+    public long total(String key, long nowMillis) {
+        Window window = windows.get(key);
+        if (window == null || window.start + windowMillis <= nowMillis) {
+            return 0;
+        }
+        long total = 0;
+        for (int node = 0; node < nodes; node++) {
+            total += window.counts.get(node);
+        }
+        return total;
+    }
+
+    public int nodeIndex() {
+        return nodeIndex;
+    }
+
+    public long windowMillis() {
+        return windowMillis;
+    }
+
+    private List<Slot> drain(Set<String> changed) {
+        List<Slot> changes = new ArrayList<>(changed.size());
+        for (String key : changed) {
+            changed.remove(key);
+            Window window = windows.get(key);
+            if (window != null) {
+                changes.add(new Slot(key, window.start, nodeIndex, window.counts.get(nodeIndex)));
+            }
+        }
+        return changes;
+    }
+
+    private Window currentWindow(String key, long nowMillis) {
+        long start = nowMillis - Math.floorMod(nowMillis, windowMillis);
+        Window window = windows.get(key);
+        if (window != null && window.start >= start) {
+            return window;
+        }
+        return windows.compute(key, (k, current) ->
+                current == null || current.start < start ? new Window(start, nodes) : current);
+    }
+
+    /**
+     * One node's count of a key in a window, as gossiped and checkpointed.
+     *
+     * @param key the key of the counter
+     * @param windowStart the start of the window in epoch milliseconds
+     * @param node the index of the node owning the slot
+     * @param count the slot's count
+     */
+    public record Slot(String key, long windowStart, int node, long count) {
+    }
+
+    private static final class Window {
+        private final long start;
+        private final AtomicLongArray counts;
+
+        Window(long start, int nodes) {
+            this.start = start;
+            this.counts = new AtomicLongArray(nodes);
+        }
+    }
+}
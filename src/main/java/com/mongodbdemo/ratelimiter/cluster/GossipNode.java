@@ -0,0 +1,202 @@
+package com.mongodbdemo.ratelimiter.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * Exchanges the {@link ClusterCounters} of one node with its peers over UDP. Every
+ * {@code gossipMillis} the node sends the slots it changed since the previous round to every peer,
+ * or an empty heartbeat when it changed none, and every {@code antiEntropyMillis} it sends its whole
+ * state to one random peer, which repairs deltas lost to dropped datagrams or partitions. Since merging
+ * takes the maximum of each slot, datagrams may be lost, duplicated or reordered.
+ * <p>
+ * A datagram starts with a magic number and the sender's index, followed by slots encoded as the key's
+ * length and UTF-8 bytes, the window start, the owning node and the count. Slots are split over as many
+ * datagrams of at most {@value #MAX_DATAGRAM_BYTES} bytes as needed, so they are not fragmented on
+ * common networks. Keys longer than fits in one datagram are not gossiped.
+ */
+public final class GossipNode {
+
+    private static final Logger log = LoggerFactory.getLogger(GossipNode.class);
+
+    static final int MAGIC = 0x524c4731; // "RLG1"
+    static final int MAX_DATAGRAM_BYTES = 1400;
+    private static final int HEADER_BYTES = Integer.BYTES + 1;
+    private static final int SLOT_BYTES = Short.BYTES + Long.BYTES + 1 + Long.BYTES;
+
+    private final ClusterCounters counters;
+    private final List<InetSocketAddress> members;
+    private final long gossipMillis;
+    private final long antiEntropyMillis;
+
+    private volatile DatagramChannel channel;
+    private volatile IntPredicate linkFilter = peer -> true;
+
+    /**
+     * Creates the gossip endpoint of the node owning {@code counters}.
+     *
+     * @param counters the counters of this node; its index selects its own address in {@code members}
+     * @param members the addresses of all nodes, in node index order
+     * @param gossipMillis the interval between delta rounds
+     * @param antiEntropyMillis the interval between full-state exchanges
+     */
+    public GossipNode(ClusterCounters counters, List<InetSocketAddress> members, long gossipMillis, long antiEntropyMillis) {
+        this.counters = counters;
+        this.members = List.copyOf(members);
+        this.gossipMillis = gossipMillis;
+        this.antiEntropyMillis = antiEntropyMillis;
+    }
+
+    /**
+     * Binds this node's address and starts receiving and gossiping on virtual threads.
+     */
+    public void start() {
+        InetSocketAddress address = members.get(counters.nodeIndex());
+        try {
+            DatagramChannel datagramChannel = DatagramChannel.open(StandardProtocolFamily.INET);
+            datagramChannel.bind(address);
+            channel = datagramChannel;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to bind gossip channel on " + address, e);
+        }
+        Thread.ofVirtual().name("cluster-gossip-receiver").start(this::receive);
+        Thread.ofVirtual().name("cluster-gossip-sender").start(this::gossip);
+        log.info("Cluster node {} gossiping on {} with {} peers", counters.nodeIndex(), address, members.size() - 1);
+    }
+
+    public void stop() {
+        DatagramChannel datagramChannel = channel;
+        channel = null;
+        if (datagramChannel != null) {
+            try {
+                datagramChannel.close();
+            } catch (IOException e) {
+                // Nothing left to clean up
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return channel != null;
+    }
+
+    /**
+     * Drops datagrams to and from the peers the filter rejects, to simulate network partitions.
+     *
+     * @param linkFilter tests a peer's index, {@code true} when the link to it is up
+     */
+    void setLinkFilter(IntPredicate linkFilter) {
+        this.linkFilter = linkFilter;
+    }
+
+    private void gossip() {
+        long nextAntiEntropy = System.currentTimeMillis() + antiEntropyMillis;
+        while (channel != null) {
+            try {
+                Thread.sleep(gossipMillis);
+                long now = System.currentTimeMillis();
+                List<ClusterCounters.Slot> changes = counters.drainChanges();
+                for (int peer = 0; peer < members.size(); peer++) {
+                    if (peer != counters.nodeIndex()) {
+                        send(peer, changes);
+                    }
+                }
+                if (now >= nextAntiEntropy) {
+                    // A node without peers still has to drop its ended windows
+                    counters.evictExpired(now);
+                    if (members.size() > 1) {
+                        send(randomPeer(), counters.snapshot());
+                    }
+                    nextAntiEntropy = now + antiEntropyMillis;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.debug("Failed to send gossip", e);
+            }
+        }
+    }
+
+    private void send(int peer, List<ClusterCounters.Slot> slots) throws IOException {
+        DatagramChannel datagramChannel = channel;
+        if (datagramChannel == null || !linkFilter.test(peer)) {
+            return;
+        }
+        InetSocketAddress target = members.get(peer);
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_BYTES);
+        startDatagram(buffer);
+        boolean empty = true;
+        for (ClusterCounters.Slot slot : slots) {
+            byte[] key = slot.key().getBytes(StandardCharsets.UTF_8);
+            if (HEADER_BYTES + SLOT_BYTES + key.length > MAX_DATAGRAM_BYTES) {
+                continue;
+            }
+            if (buffer.remaining() < SLOT_BYTES + key.length) {
+                datagramChannel.send(buffer.flip(), target);
+                startDatagram(buffer.clear());
+            }
+            buffer.putShort((short) key.length).put(key)
+                    .putLong(slot.windowStart()).put((byte) slot.node()).putLong(slot.count());
+            empty = false;
+        }
+        if (!empty || buffer.position() == HEADER_BYTES) {
+            datagramChannel.send(buffer.flip(), target);
+        }
+    }
+
+    private void startDatagram(ByteBuffer buffer) {
+        buffer.putInt(MAGIC).put((byte) counters.nodeIndex());
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_BYTES);
+        DatagramChannel datagramChannel;
+        while ((datagramChannel = channel) != null) {
+            try {
+                buffer.clear();
+                datagramChannel.receive(buffer);
+                merge(buffer.flip());
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.debug("Dropped malformed gossip datagram", e);
+            }
+        }
+    }
+
+    private void merge(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            return;
+        }
+        int sender = buffer.get();
+        if (sender == counters.nodeIndex() || !linkFilter.test(sender)) {
+            return;
+        }
+        counters.heard(sender, System.currentTimeMillis());
+        while (buffer.hasRemaining()) {
+            byte[] key = new byte[buffer.getShort()];
+            buffer.get(key);
+            counters.merge(new String(key, StandardCharsets.UTF_8), buffer.getLong(), buffer.get(), buffer.getLong());
+        }
+    }
+
+    private int randomPeer() {
+        int peer = ThreadLocalRandom.current().nextInt(members.size() - 1);
+        return peer >= counters.nodeIndex() ? peer + 1 : peer;
+    }
+}
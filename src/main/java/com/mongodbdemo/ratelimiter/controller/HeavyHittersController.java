@@ -0,0 +1,48 @@
+package com.mongodbdemo.ratelimiter.controller;
+
+import com.mongodbdemo.ratelimiter.dto.HeavyHitter;
+import com.mongodbdemo.ratelimiter.service.HeavyHitters;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.BASE_PATH;
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.HEAVY_HITTERS_PATH;
+
+/**
+ * Controller class exposing the heaviest keys seen by this node, enabled through
+ * {@code rate.limiter.heavy-hitters.enabled}.
+ */
+@RestController
+@RequestMapping(BASE_PATH)
+@ConditionalOnProperty(name = "rate.limiter.heavy-hitters.enabled", havingValue = "true")
+public class HeavyHittersController {
+
+    private final HeavyHitters heavyHitters;
+
+    public HeavyHittersController(HeavyHitters heavyHitters) {
+        this.heavyHitters = heavyHitters;
+    }
+
+    /**
+     * Returns the keys with the most recent checks on this node, heaviest first, with their estimated
+     * recent checks and denials. A limit below 1 is rejected with 400 Bad Request.
+     *
+     * @param limit the maximum number of keys, capped by {@code rate.limiter.heavy-hitters.top}
+     * @return a {@code ResponseEntity} containing the heaviest keys
+     */
+    @GetMapping(HEAVY_HITTERS_PATH)
+    public ResponseEntity<List<HeavyHitter>> topKeys(@RequestParam(value = "limit", defaultValue = "10") int limit) {
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be at least 1");
+        }
+        return ResponseEntity.ok(heavyHitters.top(limit));
+    }
+}
@@ -1,19 +1,24 @@
 package com.mongodbdemo.ratelimiter.controller;
 
 import com.mongodbdemo.ratelimiter.dto.ApiResponse;
+import com.mongodbdemo.ratelimiter.dto.MultiLimitResponse;
+import com.mongodbdemo.ratelimiter.dto.RateLimitVerdict;
 import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.service.HierarchicalRateLimiter;
 import com.mongodbdemo.ratelimiter.service.RateLimiterService;
+import com.mongodbdemo.ratelimiter.web.RateLimitResponses;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.time.Duration;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.mongodbdemo.ratelimiter.RateLimiterConstants.BASE_PATH;
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.LIMITS_PATH;
 import static com.mongodbdemo.ratelimiter.RateLimiterConstants.USER_ID_PATH;
 
 /**
@@ -25,14 +30,20 @@ import static com.mongodbdemo.ratelimiter.RateLimiterConstants.USER_ID_PATH;
 public class RateLimiterController {
 
     private final RateLimiterService rateLimiterService;
+    private final HierarchicalRateLimiter hierarchicalRateLimiter;
+
+    @Value("${rate.limiter.batch.max-size}")
+    private int maxBatchSize;
 
     /**
-     * Constructs a {@code RateLimiterController} with the given {@code RateLimiterService}.
+     * Constructs a {@code RateLimiterController} with the given services.
      *
      * @param rateLimiterService the service used to check and manage rate limits
+     * @param hierarchicalRateLimiter the service used to check several limits of one request together
      */
-    public RateLimiterController(RateLimiterService rateLimiterService) {
+    public RateLimiterController(RateLimiterService rateLimiterService, HierarchicalRateLimiter hierarchicalRateLimiter) {
         this.rateLimiterService = rateLimiterService;
+        this.hierarchicalRateLimiter = hierarchicalRateLimiter;
     }
 
     /**
@@ -40,24 +51,98 @@ public class RateLimiterController {
      * If the request is allowed, it returns a 200 OK status with a message indicating the request is allowed.
      * If the request is not allowed, it returns a 429 Too Many Requests status with a retry-after header and a message indicating
      * that the rate limit has been exceeded.
+     * Both carry {@code RateLimit-Limit}, {@code RateLimit-Remaining} and {@code RateLimit-Reset} headers when the
+     * strategy reports the state of the user's counter.
+     * A request with a {@code cost} above 1 consumes that many permits at once, or none if fewer remain;
+     * it is rejected with 400 Bad Request when the configured strategy cannot charge a cost.
      *
      * @param userId the ID of the user for whom the rate limit is being checked
+     * @param cost the number of permits the request consumes
      * @return a {@code ResponseEntity} containing the status and message of the rate limit check
      */
     @PutMapping(USER_ID_PATH)
-    public ResponseEntity<ApiResponse> checkRateLimit(@PathVariable("userId") String userId) {
-        RateLimiterResponse response = rateLimiterService.checkRateLimit(userId);
+    public ResponseEntity<ApiResponse> checkRateLimit(@PathVariable("userId") String userId,
+                                                      @RequestParam(value = "cost", defaultValue = "1") int cost) {
+        if (cost < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cost must be at least 1");
+        }
+        if (cost > 1 && !rateLimiterService.supportsWeightedChecks()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The configured strategy cannot charge a cost above 1");
+        }
+        RateLimiterResponse response = cost == 1
+                ? rateLimiterService.checkRateLimit(userId)
+                : rateLimiterService.checkWeightedRateLimit(userId, cost);
+        HttpHeaders httpHeaders = RateLimitResponses.rateLimitHeaders(response);
+
+        if (response.isAllowed()) {
+            return ResponseEntity.ok().headers(httpHeaders).body(new ApiResponse("Request allowed"));
+        } else {
+            httpHeaders.add("retry-after", String.valueOf(RateLimitResponses.retryAfterSeconds(response.getRetryAfter())));
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).headers(httpHeaders)
+                    .body(new ApiResponse("Too many requests please try again"));
+        }
+    }
+
+    /**
+     * Checks every limit that applies to a request of the given user (global, tenant, user and user on
+     * an endpoint) in one operation, consuming a permit of each only if none is exceeded.
+     * If the request is allowed, it returns a 200 OK status. If not, it returns a 429 Too Many Requests status
+     * with a retry-after header for the latest reset among the exceeded limits, a
+     * {@code ratelimit-exceeded} header listing them, and the {@code RateLimit-*} headers of the exceeded
+     * limit resetting last. Allowed checks do not read their counters back, so they carry no {@code RateLimit-*}
+     * headers.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param tenantId the tenant of the request, if any
+     * @param endpoint the endpoint being called, if it has a limit of its own
+     * @return a {@code ResponseEntity} containing the status and message of the rate limit check
+     */
+    @PutMapping(LIMITS_PATH)
+    public ResponseEntity<ApiResponse> checkLimits(@PathVariable("userId") String userId,
+                                                   @RequestParam(value = "tenant", required = false) String tenantId,
+                                                   @RequestParam(value = "endpoint", required = false) String endpoint) {
+        MultiLimitResponse response = hierarchicalRateLimiter.checkRateLimit(tenantId, userId, endpoint);
+        HttpHeaders httpHeaders = RateLimitResponses.rateLimitHeaders(response);
 
         if (response.isAllowed()) {
-            return ResponseEntity.ok(new ApiResponse("Request allowed"));
+            return ResponseEntity.ok().headers(httpHeaders).body(new ApiResponse("Request allowed"));
         } else {
-            HttpHeaders httpHeaders = new HttpHeaders();
-            Instant docExpirationTime = response.getRetryAfter().plusSeconds(60);
-            Instant currTime = LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant();
-            httpHeaders.add("retry-after", String.valueOf(Duration.between(currTime,
-                    docExpirationTime).toSeconds()));
+            httpHeaders.add("retry-after", String.valueOf(RateLimitResponses.retryAfterSeconds(response.getRetryAfter())));
+            httpHeaders.add("ratelimit-exceeded", String.join(",", response.getExceededLimits()));
             return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).headers(httpHeaders)
                     .body(new ApiResponse("Too many requests please try again"));
         }
     }
+
+    /**
+     * Checks the rate limit for several user IDs in one call and returns a verdict for each of them,
+     * in request order. A user ID listed more than once consumes one permit per occurrence.
+     * The response is always 200 OK; denied entries carry the number of seconds after which the
+     * user can retry, and every entry carries the limit, remaining quota and reset of the
+     * {@code RateLimit-*} headers when the strategy reports them.
+     *
+     * @param userIds the IDs of the users for whom the rate limit is being checked
+     * @return a {@code ResponseEntity} containing one verdict per requested user ID
+     */
+    @PutMapping
+    public ResponseEntity<List<RateLimitVerdict>> checkRateLimits(@RequestBody List<String> userIds) {
+        if (userIds.size() > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "At most " + maxBatchSize + " user IDs can be checked per request");
+        }
+        List<RateLimiterResponse> responses = rateLimiterService.checkRateLimits(userIds);
+
+        List<RateLimitVerdict> verdicts = new ArrayList<>(responses.size());
+        for (int i = 0; i < responses.size(); i++) {
+            RateLimiterResponse response = responses.get(i);
+            Long retryAfter = response.isAllowed() ? null : RateLimitResponses.retryAfterSeconds(response.getRetryAfter());
+            if (response.hasQuota()) {
+                verdicts.add(new RateLimitVerdict(userIds.get(i), response.isAllowed(), retryAfter, response.getLimit(),
+                        response.getRemaining(), RateLimitResponses.resetSeconds(response.getReset())));
+            } else {
+                verdicts.add(new RateLimitVerdict(userIds.get(i), response.isAllowed(), retryAfter));
+            }
+        }
+        return ResponseEntity.ok(verdicts);
+    }
 }
@@ -0,0 +1,12 @@
+package com.mongodbdemo.ratelimiter.dto;
+
+/**
+ * Estimated recent traffic of one of the heaviest keys seen by a node. Estimates never undercount and
+ * are halved every {@code rate.limiter.heavy-hitters.decay.millis}.
+ *
+ * @param key the key, such as a user ID
+ * @param requests the estimated recent checks of the key
+ * @param denials the estimated recent denied checks of the key
+ */
+public record HeavyHitter(String key, long requests, long denials) {
+}
@@ -0,0 +1,29 @@
+package com.mongodbdemo.ratelimiter.dto;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Verdict of a check against several limits at once. When denied, {@code retryAfter} is the latest
+ * of the exceeded limits' retry instants, so the request is allowed again only once all of them reset,
+ * and the quota reported is that of the exceeded limit resetting last.
+ */
+@Getter
+public class MultiLimitResponse extends RateLimiterResponse {
+
+    private final List<String> exceededLimits;
+
+    public MultiLimitResponse(boolean allowed, Instant retryAfter, List<String> exceededLimits) {
+        super(allowed, retryAfter);
+        this.exceededLimits = exceededLimits;
+    }
+
+    public MultiLimitResponse(boolean allowed, Instant retryAfter, int limit, int remaining, Instant reset,
+                              List<String> exceededLimits) {
+        super(allowed, retryAfter, limit, remaining, reset);
+        this.exceededLimits = exceededLimits;
+    }
+
+}
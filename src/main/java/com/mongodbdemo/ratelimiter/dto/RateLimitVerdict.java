@@ -0,0 +1,20 @@
+package com.mongodbdemo.ratelimiter.dto;
+
+/**
+ * Verdict for one user ID of a batch rate limit check. {@code limit}, {@code remaining} and {@code reset}
+ * are the values of the {@code RateLimit-*} headers a single check would return, and are {@code null}
+ * when the strategy does not report the state of the user's counter.
+ *
+ * @param userId the user ID the verdict applies to
+ * @param allowed whether the request is allowed
+ * @param retryAfter seconds until the user can retry, or {@code null} when the request is allowed
+ * @param limit the number of requests allowed per window
+ * @param remaining the number of requests left in the current window after this one
+ * @param reset seconds until the current window ends
+ */
+public record RateLimitVerdict(String userId, boolean allowed, Long retryAfter, Integer limit, Integer remaining, Long reset) {
+
+    public RateLimitVerdict(String userId, boolean allowed, Long retryAfter) {
+        this(userId, allowed, retryAfter, null, null, null);
+    }
+}
@@ -3,19 +3,48 @@ package com.mongodbdemo.ratelimiter.dto;
 import lombok.Getter;
 
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZonedDateTime;
 
 @Getter
 public class RateLimiterResponse {
 
+    /**
+     * Value of {@code limit} and {@code remaining} when the strategy does not report the state of the counter.
+     */
+    public static final int UNKNOWN = -1;
+
     private final boolean allowed;
     private final Instant retryAfter;
+    private final int limit;
+    private final int remaining;
+    private final Instant reset;
 
     public RateLimiterResponse(boolean allowed, Instant retryAfter) {
+        this(allowed, retryAfter, UNKNOWN, UNKNOWN, null);
+    }
+
+    /**
+     * Creates a response that also reports the state of the counter that decided it.
+     *
+     * @param allowed whether the request is allowed
+     * @param retryAfter the retry-after instant of a denied request, {@code null} when allowed
+     * @param limit the number of requests allowed per window
+     * @param remaining the number of requests left in the current window after this one
+     * @param reset the end of the current window
+     */
+    public RateLimiterResponse(boolean allowed, Instant retryAfter, int limit, int remaining, Instant reset) {
         this.allowed = allowed;
         this.retryAfter = retryAfter;
+        this.limit = limit;
+        this.remaining = remaining;
+        this.reset = reset;
     }
 
+    /**
+     * Returns whether {@code limit}, {@code remaining} and {@code reset} are known.
+     *
+     * @return {@code true} if the response reports the state of its counter
+     */
+    public boolean hasQuota() {
+        return limit != UNKNOWN;
+    }
 }
-
@@ -0,0 +1,32 @@
+package com.mongodbdemo.ratelimiter.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Checkpoint of one key's cluster counter in one window, keyed by {@code <key>@<windowStart>}. Each node
+ * raises the counts it knows of with {@code $max}, so checkpoints from every node merge like gossip does.
+ */
+@Data
+@AllArgsConstructor
+@Document(collection = "clusterCounters")
+public class ClusterCheckpoint {
+
+    @Id
+    private String id;
+
+    private String key;
+
+    private Instant windowStart;
+
+    private Map<String, Long> counts; // Count per node index
+
+    @Indexed(name = "expirationTime", expireAfterSeconds = 0) // TTL index to delete the checkpoint when its window ends
+    private Instant expirationTime;
+}
@@ -0,0 +1,27 @@
+package com.mongodbdemo.ratelimiter.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.Instant;
+
+/**
+ * Per-user state of the GCRA limiter: the theoretical arrival time of the next request.
+ * Once it lies in the past the state is equivalent to a missing document, so it doubles as the TTL field.
+ */
+@Data
+@AllArgsConstructor
+@Document(collection = "gcraRateLimiter")
+public class GcraState {
+
+    @Id
+    private String userId;
+
+    @Field("tat")
+    @Indexed(name = "tat", expireAfterSeconds = 0) // TTL index to delete the document once it no longer limits
+    private Instant theoreticalArrivalTime;
+}
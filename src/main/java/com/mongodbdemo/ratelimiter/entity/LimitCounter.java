@@ -0,0 +1,27 @@
+package com.mongodbdemo.ratelimiter.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Count of one limit, such as a tenant's or a user's on an endpoint, within its current window.
+ * Once {@code windowEnd} has passed the counter is equivalent to a missing document, so it doubles as the TTL field.
+ */
+@Data
+@AllArgsConstructor
+@Document(collection = "limitCounters")
+public class LimitCounter {
+
+    @Id
+    private String key;
+
+    private int count;
+
+    @Indexed(name = "windowEnd", expireAfterSeconds = 0) // TTL index to delete the counter once its window ended
+    private Instant windowEnd;
+}
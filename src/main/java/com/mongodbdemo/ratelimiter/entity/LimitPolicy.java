@@ -0,0 +1,33 @@
+package com.mongodbdemo.ratelimiter.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.PersistenceCreator;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Limit applying to the keys matched by a pattern. A pattern ending with {@code *} matches every key
+ * starting with what precedes it; any other pattern matches that key only.
+ * <p>
+ * {@code fallback} is {@code local}, {@code open} or {@code closed}, see {@code FallbackMode}; when
+ * missing, {@code rate.limiter.fallback.mode} applies.
+ */
+@Data
+@AllArgsConstructor(onConstructor_ = @PersistenceCreator)
+@Document(collection = "limitPolicies")
+public class LimitPolicy {
+
+    @Id
+    private String pattern;
+
+    private int threshold;
+
+    private int windowMinutes;
+
+    private String fallback;
+
+    public LimitPolicy(String pattern, int threshold, int windowMinutes) {
+        this(pattern, threshold, windowMinutes, null);
+    }
+}
@@ -0,0 +1,233 @@
+package com.mongodbdemo.ratelimiter.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters recorded on the rate-limit hot path. Every meter is registered up front with a fixed set of
+ * tags, so recording is a field read plus an update and does not allocate per check.
+ */
+@Component
+public class RateLimiterMetrics {
+
+    private final Timer findAndModifySuccess;
+    private final Timer findAndModifyDuplicateKey;
+    private final Timer findAndModifyOptimisticLock;
+    private final Timer findAndModifyError;
+    private final Counter duplicateKeyRetries;
+    private final Counter optimisticLockRetries;
+    private final Counter duplicateKeyFallbackDenied;
+    private final Counter duplicateKeyFallbackMissing;
+    private final Counter allowed;
+    private final Counter denied;
+    private final Timer backoff;
+    private final Counter shardPromotions;
+    private final Counter shardRebalances;
+    private final Timer limitsWriteAllowed;
+    private final Timer limitsWriteFull;
+    private final Timer limitsWriteError;
+    private final Counter limitsCompensationSuccess;
+    private final Counter limitsCompensationError;
+    private final Counter limitsRecheckExceeded;
+    private final Counter limitsRecheckWindowEnded;
+
+    public RateLimiterMetrics(MeterRegistry meterRegistry) {
+        this.findAndModifySuccess = findAndModifyTimer(meterRegistry, "success");
+        this.findAndModifyDuplicateKey = findAndModifyTimer(meterRegistry, "duplicate_key");
+        this.findAndModifyOptimisticLock = findAndModifyTimer(meterRegistry, "optimistic_lock");
+        this.findAndModifyError = findAndModifyTimer(meterRegistry, "error");
+        this.duplicateKeyRetries = retryCounter(meterRegistry, "DuplicateKeyException");
+        this.optimisticLockRetries = retryCounter(meterRegistry, "OptimisticLockingFailureException");
+        this.duplicateKeyFallbackDenied = fallbackCounter(meterRegistry, "denied");
+        this.duplicateKeyFallbackMissing = fallbackCounter(meterRegistry, "missing");
+        this.allowed = verdictCounter(meterRegistry, "allowed");
+        this.denied = verdictCounter(meterRegistry, "denied");
+        this.backoff = Timer.builder("ratelimiter.backoff")
+                .description("Time spent sleeping between retries")
+                .register(meterRegistry);
+        this.shardPromotions = Counter.builder("ratelimiter.sharding.promotions")
+                .description("Hot keys moved to sharded counters")
+                .register(meterRegistry);
+        this.shardRebalances = Counter.builder("ratelimiter.sharding.rebalances")
+                .description("Sharded checks moved from a full shard to one with headroom")
+                .register(meterRegistry);
+        this.limitsWriteAllowed = limitsWriteTimer(meterRegistry, "allowed");
+        this.limitsWriteFull = limitsWriteTimer(meterRegistry, "full");
+        this.limitsWriteError = limitsWriteTimer(meterRegistry, "error");
+        this.limitsCompensationSuccess = limitsCompensationCounter(meterRegistry, "success");
+        this.limitsCompensationError = limitsCompensationCounter(meterRegistry, "error");
+        this.limitsRecheckExceeded = limitsRecheckCounter(meterRegistry, "exceeded");
+        this.limitsRecheckWindowEnded = limitsRecheckCounter(meterRegistry, "window_ended");
+    }
+
+    /**
+     * Returns metrics backed by a registry without children, whose meters discard every recording.
+     *
+     * @return metrics that record nothing
+     */
+    public static RateLimiterMetrics noop() {
+        return new RateLimiterMetrics(new CompositeMeterRegistry());
+    }
+
+    /**
+     * Records the latency of one {@code findAndModify} round-trip.
+     *
+     * @param startNanos the {@link System#nanoTime()} before the call
+     * @param failure the exception thrown by the call, or {@code null} if it succeeded
+     */
+    public void recordFindAndModify(long startNanos, RuntimeException failure) {
+        Timer timer;
+        if (failure == null) {
+            timer = findAndModifySuccess;
+        } else if (failure instanceof DuplicateKeyException) {
+            timer = findAndModifyDuplicateKey;
+        } else if (failure instanceof OptimisticLockingFailureException) {
+            timer = findAndModifyOptimisticLock;
+        } else {
+            timer = findAndModifyError;
+        }
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records one retry of a rate limit check.
+     *
+     * @param cause the exception that triggered the retry
+     */
+    public void recordRetry(RuntimeException cause) {
+        if (cause instanceof DuplicateKeyException) {
+            duplicateKeyRetries.increment();
+        } else {
+            optimisticLockRetries.increment();
+        }
+    }
+
+    /**
+     * Records one {@code DuplicateKeyException} that fell back to {@code findById}.
+     *
+     * @param documentFound whether the lookup found the over-limit document, turning the check into a denial
+     */
+    public void recordDuplicateKeyFallback(boolean documentFound) {
+        (documentFound ? duplicateKeyFallbackDenied : duplicateKeyFallbackMissing).increment();
+    }
+
+    /**
+     * Records the verdict of one rate limit check.
+     *
+     * @param isAllowed whether the request was allowed
+     */
+    public void recordVerdict(boolean isAllowed) {
+        (isAllowed ? allowed : denied).increment();
+    }
+
+    /**
+     * Records time spent sleeping in a retry backoff.
+     *
+     * @param startNanos the {@link System#nanoTime()} before the sleep
+     */
+    public void recordBackoff(long startNanos) {
+        backoff.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records one key promoted to sharded counters.
+     */
+    public void recordShardPromotion() {
+        shardPromotions.increment();
+    }
+
+    /**
+     * Records one sharded check retried on another shard after the shard it picked was full.
+     */
+    public void recordShardRebalance() {
+        shardRebalances.increment();
+    }
+
+    /**
+     * Records the latency of one bulk write incrementing the counters of a multi-limit check.
+     *
+     * @param startNanos the {@link System#nanoTime()} before the call
+     * @param counterFull whether the write stopped at a full counter
+     * @param failure the exception thrown by the call for any other reason, or {@code null}
+     */
+    public void recordLimitsWrite(long startNanos, boolean counterFull, RuntimeException failure) {
+        Timer timer = failure != null ? limitsWriteError : counterFull ? limitsWriteFull : limitsWriteAllowed;
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records one bulk write taking back the increments of a denied multi-limit check.
+     *
+     * @param succeeded whether the write succeeded; a failed one leaves the increments in place until their windows end
+     */
+    public void recordLimitsCompensation(boolean succeeded) {
+        (succeeded ? limitsCompensationSuccess : limitsCompensationError).increment();
+    }
+
+    /**
+     * Records one read of the counters a multi-limit check stopped at.
+     *
+     * @param exceeded whether a limit was exceeded, turning the check into a denial, rather than its window having ended
+     */
+    public void recordLimitsRecheck(boolean exceeded) {
+        (exceeded ? limitsRecheckExceeded : limitsRecheckWindowEnded).increment();
+    }
+
+    private static Timer findAndModifyTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("ratelimiter.mongo.findandmodify")
+                .description("Latency of findAndModify round-trips on the rateLimiter collection")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Counter retryCounter(MeterRegistry meterRegistry, String exception) {
+        return Counter.builder("ratelimiter.retries")
+                .description("Retries of a rate limit check")
+                .tag("exception", exception)
+                .register(meterRegistry);
+    }
+
+    private static Counter fallbackCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("ratelimiter.duplicatekey.fallbacks")
+                .description("Duplicate key errors resolved by reading the existing document")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Timer limitsWriteTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("ratelimiter.limits.bulkwrite")
+                .description("Latency of bulk writes incrementing the limitCounters of multi-limit checks")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Counter limitsCompensationCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("ratelimiter.limits.compensations")
+                .description("Bulk writes taking back the increments of denied multi-limit checks")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter limitsRecheckCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("ratelimiter.limits.rechecks")
+                .description("Reads of the full limitCounters of multi-limit checks")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter verdictCounter(MeterRegistry meterRegistry, String verdict) {
+        return Counter.builder("ratelimiter.verdicts")
+                .description("Rate limit verdicts")
+                .tag("verdict", verdict)
+                .register(meterRegistry);
+    }
+}
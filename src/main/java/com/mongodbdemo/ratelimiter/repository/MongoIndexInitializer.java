@@ -0,0 +1,94 @@
+package com.mongodbdemo.ratelimiter.repository;
+
+import com.mongodbdemo.ratelimiter.entity.ClusterCheckpoint;
+import com.mongodbdemo.ratelimiter.entity.GcraState;
+import com.mongodbdemo.ratelimiter.entity.LimitCounter;
+import com.mongodbdemo.ratelimiter.entity.LimitPolicy;
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Creates the indexes declared on the rate limiter's entities, such as the TTL index on
+ * {@code expirationTime}, once the application is ready and on a background thread. This replaces
+ * {@code spring.data.mongodb.auto-index-creation}, which creates them while the context starts and so
+ * delays the first verdict by a round-trip per index, or indefinitely while MongoDB is unreachable.
+ * The entities are listed explicitly, since a host application's mapping context only knows the
+ * entities it has touched so far.
+ * <p>
+ * Checks are correct before the indexes exist: a check that finds a {@code rateLimiter} document whose
+ * window has ended removes it and starts a new window itself, and the other collections carry their own
+ * window ends. Until then, expired documents are only kept longer. Failed attempts are retried every
+ * {@code rate.limiter.indexes.retry.millis}.
+ */
+@Component
+@ConditionalOnProperty(name = "rate.limiter.indexes.create", havingValue = "true", matchIfMissing = true)
+public class MongoIndexInitializer {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoIndexInitializer.class);
+
+    static final List<Class<?>> ENTITIES = List.of(
+            RateLimiter.class, GcraState.class, LimitCounter.class, ClusterCheckpoint.class, LimitPolicy.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final MongoMappingContext mappingContext;
+
+    @Value("${rate.limiter.indexes.retry.millis:5000}")
+    private long retryMillis;
+
+    public MongoIndexInitializer(MongoTemplate mongoTemplate, MongoMappingContext mappingContext) {
+        this.mongoTemplate = mongoTemplate;
+        this.mappingContext = mappingContext;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Thread.ofVirtual().name("mongo-index-initializer").start(() -> {
+            while (!createIndexes()) {
+                try {
+                    Thread.sleep(retryMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        });
+    }
+
+    /**
+     * Ensures every index declared on the entities exists. Creating an existing index is a no-op.
+     *
+     * @return {@code true} if all indexes exist, {@code false} if any could not be created
+     */
+    boolean createIndexes() {
+        IndexResolver indexResolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        boolean created = true;
+        for (Class<?> type : ENTITIES) {
+            MongoPersistentEntity<?> entity = mappingContext.getRequiredPersistentEntity(type);
+            for (IndexDefinition index : indexResolver.resolveIndexFor(entity.getTypeInformation())) {
+                try {
+                    mongoTemplate.indexOps(entity.getCollection()).ensureIndex(index);
+                } catch (DataAccessException e) {
+                    log.warn("Failed to create index {} on {}, retrying in {} ms",
+                            index.getIndexKeys(), entity.getCollection(), retryMillis, e);
+                    created = false;
+                }
+            }
+        }
+        return created;
+    }
+}
@@ -0,0 +1,202 @@
+package com.mongodbdemo.ratelimiter.server;
+
+import com.mongodbdemo.ratelimiter.client.BinaryProtocol;
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.service.RateLimiterService;
+import com.mongodbdemo.ratelimiter.web.RateLimitResponses;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Second listener serving rate limit checks over {@link BinaryProtocol} for sidecar callers, next to
+ * the HTTP endpoints. Checks go to the same {@link RateLimiterService}.
+ * <p>
+ * Each connection has a reader that decodes request frames and hands every request to its own virtual
+ * thread, so a connection can carry many checks in flight. Responses are written as checks complete and
+ * are matched to requests by ID. A writer skips the flush when another response is already waiting to be
+ * written, so responses that complete together share one packet. At most
+ * {@code rate.limiter.binary.max-in-flight} checks run per connection; beyond that the reader stops
+ * reading and TCP flow control pushes back on the caller.
+ */
+@Component
+@ConditionalOnProperty(name = "rate.limiter.binary.enabled", havingValue = "true")
+public class BinaryRateLimiterServer implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryRateLimiterServer.class);
+
+    private final RateLimiterService rateLimiterService;
+    private final int port;
+    private final int maxInFlight;
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+
+    private volatile ServerSocketChannel serverChannel;
+
+    public BinaryRateLimiterServer(RateLimiterService rateLimiterService,
+                                   @Value("${rate.limiter.binary.port}") int port,
+                                   @Value("${rate.limiter.binary.max-in-flight:1024}") int maxInFlight) {
+        this.rateLimiterService = rateLimiterService;
+        this.port = port;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void start() {
+        try {
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            channel.bind(new InetSocketAddress(port));
+            serverChannel = channel;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to bind binary rate limit listener on port " + port, e);
+        }
+        Thread.ofVirtual().name("binary-rate-limiter-acceptor").start(this::acceptConnections);
+        log.info("Binary rate limit listener started on port {}", getPort());
+    }
+
+    @Override
+    public void stop() {
+        ServerSocketChannel channel = serverChannel;
+        serverChannel = null;
+        closeQuietly(channel);
+        connections.forEach(BinaryRateLimiterServer::closeQuietly);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return serverChannel != null;
+    }
+
+    /**
+     * Returns the port the listener is bound to, which differs from the configured one when that is {@code 0}.
+     *
+     * @return the local port, or {@code -1} when the listener is not running
+     */
+    public int getPort() {
+        ServerSocketChannel channel = serverChannel;
+        try {
+            return channel == null ? -1 : ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private void acceptConnections() {
+        ServerSocketChannel channel;
+        while ((channel = serverChannel) != null) {
+            try {
+                SocketChannel connection = channel.accept();
+                connection.socket().setTcpNoDelay(true);
+                connections.add(connection);
+                Thread.ofVirtual().name("binary-rate-limiter-connection").start(() -> serve(connection));
+            } catch (IOException e) {
+                if (serverChannel != null) {
+                    log.warn("Failed to accept binary rate limit connection", e);
+                }
+            }
+        }
+    }
+
+    private void serve(SocketChannel connection) {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        try {
+            // The socket's own streams let the reader and the writers use the channel concurrently
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.socket().getInputStream()));
+            ResponseWriter writer = new ResponseWriter(new DataOutputStream(new BufferedOutputStream(connection.socket().getOutputStream())));
+            BinaryProtocol.Request request;
+            while ((request = BinaryProtocol.readRequest(in)) != null) {
+                inFlight.acquire();
+                BinaryProtocol.Request next = request;
+                Thread.ofVirtual().start(() -> {
+                    try {
+                        writer.write(next.requestId(), respond(next));
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } catch (IOException e) {
+            log.debug("Binary rate limit connection closed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            connections.remove(connection);
+            closeQuietly(connection);
+        }
+    }
+
+    private Verdict respond(BinaryProtocol.Request request) {
+        if (request.opcode() != BinaryProtocol.OP_CHECK) {
+            return Verdict.ERROR;
+        }
+        try {
+            RateLimiterResponse response = rateLimiterService.checkRateLimit(request.userId());
+            if (response.isAllowed()) {
+                return Verdict.ALLOWED;
+            }
+            return new Verdict(BinaryProtocol.STATUS_DENIED, RateLimitResponses.retryAfterSeconds(response.getRetryAfter()));
+        } catch (RuntimeException e) {
+            log.warn("Rate limit check failed for binary request {}", request.requestId(), e);
+            return Verdict.ERROR;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing left to clean up
+        }
+    }
+
+    private record Verdict(byte status, long retryAfterSeconds) {
+        static final Verdict ALLOWED = new Verdict(BinaryProtocol.STATUS_ALLOWED, 0L);
+        static final Verdict ERROR = new Verdict(BinaryProtocol.STATUS_ERROR, 0L);
+    }
+
+    /**
+     * Serializes responses of one connection, flushing only when no other response is queued behind.
+     */
+    private static final class ResponseWriter {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final DataOutputStream out;
+
+        ResponseWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void write(int requestId, Verdict verdict) {
+            lock.lock();
+            try {
+                BinaryProtocol.writeResponse(out, requestId, verdict.status(), verdict.retryAfterSeconds());
+                if (!lock.hasQueuedThreads()) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                log.debug("Failed to write binary rate limit response {}", requestId, e);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
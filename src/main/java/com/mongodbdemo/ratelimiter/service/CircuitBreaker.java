@@ -0,0 +1,131 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+
+/**
+ * Count-based circuit breaker over the last {@code window} MongoDB checks. A check fails when it throws,
+ * misses its deadline or is slower than the slow threshold. The circuit opens once the window is full and
+ * at least {@code failureRate} of it failed; after {@code openMillis} a single probe is let through, and
+ * the circuit closes if it succeeds and reopens otherwise.
+ * <p>
+ * Outcomes are kept in a ring with a running failure count, so recording is a few atomic updates.
+ * Concurrent transitions are resolved with compare-and-set; outcomes recorded by checks that started
+ * before a transition may be dropped, which only delays the next one.
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int window;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final LongConsumer onClose;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicIntegerArray outcomes;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private volatile long openedAtMillis;
+    private volatile long degradedSinceMillis;
+    private volatile long closedAtMillis;
+
+    /**
+     * Creates a closed circuit breaker.
+     *
+     * @param window the number of most recent checks the failure rate is computed over
+     * @param failureRate the failure rate, between 0 and 1, at which the circuit opens
+     * @param openMillis how long the circuit stays open before a probe
+     * @param onClose called with the number of milliseconds the circuit was not closed when it closes again
+     */
+    CircuitBreaker(int window, double failureRate, long openMillis, LongConsumer onClose) {
+        this.window = window;
+        this.failureThreshold = Math.max(1, (int) Math.ceil(window * failureRate));
+        this.openMillis = openMillis;
+        this.onClose = onClose;
+        this.outcomes = new AtomicIntegerArray(window);
+    }
+
+    /**
+     * Decides whether a check may go to MongoDB. While half-open, only one check at a time may, and it
+     * must be followed by {@link #record}.
+     *
+     * @param nowMillis the current time in epoch milliseconds
+     * @return {@code true} if the check may go to MongoDB
+     */
+    boolean tryAcquirePermission(long nowMillis) {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN) {
+            if (nowMillis - openedAtMillis < openMillis) {
+                return false;
+            }
+            state.compareAndSet(State.OPEN, State.HALF_OPEN);
+        }
+        return probing.compareAndSet(false, true);
+    }
+
+    /**
+     * Records the outcome of a check that was let through.
+     *
+     * @param success whether MongoDB answered in time and below the slow threshold
+     * @param nowMillis the current time in epoch milliseconds
+     */
+    void record(boolean success, long nowMillis) {
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            if (success) {
+                close(nowMillis);
+            } else if (state.compareAndSet(State.HALF_OPEN, State.OPEN)) {
+                openedAtMillis = nowMillis;
+            }
+            probing.set(false);
+            return;
+        }
+        if (current == State.OPEN) {
+            return;
+        }
+        int failure = success ? 0 : 1;
+        long call = calls.getAndIncrement();
+        int failed = failures.addAndGet(failure - outcomes.getAndSet((int) (call % window), failure));
+        if (call + 1 >= window && failed >= failureThreshold && state.compareAndSet(State.CLOSED, State.OPEN)) {
+            openedAtMillis = nowMillis;
+            degradedSinceMillis = nowMillis;
+        }
+    }
+
+    private void close(long nowMillis) {
+        if (!state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+            return;
+        }
+        for (int i = 0; i < window; i++) {
+            outcomes.set(i, 0);
+        }
+        failures.set(0);
+        calls.set(0);
+        closedAtMillis = nowMillis;
+        onClose.accept(nowMillis - degradedSinceMillis);
+    }
+
+    State state() {
+        return state.get();
+    }
+
+    /**
+     * Returns when the circuit last closed after being open.
+     *
+     * @return the epoch milliseconds of the last recovery, or {@code 0} if it never opened
+     */
+    long closedAtMillis() {
+        return closedAtMillis;
+    }
+}
@@ -0,0 +1,166 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.cluster.ClusterCounters;
+import com.mongodbdemo.ratelimiter.cluster.GossipNode;
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.entity.ClusterCheckpoint;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.TTL_MONITOR_INTERVAL_SECONDS;
+
+/**
+ * Rate limit strategy where the nodes listed in {@code rate.limiter.cluster.members} count requests in
+ * per-key G-counters and gossip them to each other over UDP, see {@link ClusterCounters} and
+ * {@link GossipNode}. Checks are decided from the node's own view and never wait on the network, so a
+ * key may briefly exceed its threshold by what other nodes allowed within one gossip interval.
+ * Every key counts over the window of {@code rate.limiter.expiration.minutes}, which all members must agree
+ * on; a policy of its own only changes a key's threshold.
+ * <p>
+ * MongoDB is no longer on the request path: every {@code rate.limiter.cluster.checkpoint.millis} each
+ * node writes its own slots that changed since its last checkpoint to the {@code clusterCounters}
+ * collection, and a restarting node reads back the checkpoints of the current windows so it does not
+ * hand out a fresh quota. Failed
+ * checkpoints are only logged; checks go on without them.
+ */
+@Service
+@ConditionalOnProperty(name = "rate.limiter.strategy", havingValue = "cluster")
+public class ClusterRateLimitStrategy implements RateLimitStrategy, SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterRateLimitStrategy.class);
+    private static final RateLimiterResponse ALLOWED = new RateLimiterResponse(true, null);
+    private static final int MAX_NODES = 128;
+
+    private final MongoTemplate mongoTemplate;
+    private final ClusterCounters counters;
+    private final GossipNode gossipNode;
+
+    public ClusterRateLimitStrategy(MongoTemplate mongoTemplate, MeterRegistry meterRegistry,
+                                    @Value("${rate.limiter.cluster.members}") String[] members,
+                                    @Value("${rate.limiter.cluster.node-index}") int nodeIndex,
+                                    @Value("${rate.limiter.expiration.minutes}") int expirationMinutes,
+                                    @Value("${rate.limiter.cluster.gossip.millis:50}") long gossipMillis,
+                                    @Value("${rate.limiter.cluster.anti-entropy.millis:1000}") long antiEntropyMillis,
+                                    @Value("${rate.limiter.cluster.suspect.millis:3000}") long suspectMillis) {
+        if (members.length > MAX_NODES || nodeIndex < 0 || nodeIndex >= members.length) {
+            throw new IllegalArgumentException("rate.limiter.cluster.node-index " + nodeIndex
+                    + " is not one of the " + members.length + " members (at most " + MAX_NODES + ")");
+        }
+        this.mongoTemplate = mongoTemplate;
+        this.counters = new ClusterCounters(nodeIndex, members.length, expirationMinutes * 60_000L, suspectMillis);
+        List<InetSocketAddress> addresses = new ArrayList<>(members.length);
+        for (String member : members) {
+            int separator = member.lastIndexOf(':');
+            addresses.add(new InetSocketAddress(member.substring(0, separator).trim(),
+                    Integer.parseInt(member.substring(separator + 1).trim())));
+        }
+        this.gossipNode = new GossipNode(counters, addresses, gossipMillis, antiEntropyMillis);
+        Gauge.builder("ratelimiter.cluster.peers.reachable", counters,
+                        c -> IntStream.range(0, members.length)
+                                .filter(node -> node != nodeIndex && c.isReachable(node, System.currentTimeMillis()))
+                                .count())
+                .description("Peers heard from within rate.limiter.cluster.suspect.millis")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts the request in this node's slot of the user's counter when the cluster-wide count known
+     * to this node is below the threshold.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param policy the limit applying to the user ID, of which only the threshold is used
+     * @return a {@code RateLimiterResponse} indicating whether the request is allowed
+     */
+    @Override
+    public RateLimiterResponse checkRateLimit(String userId, Policy policy) {
+        long windowEnd = counters.tryAcquire(userId, policy.threshold(), System.currentTimeMillis());
+        if (windowEnd == ClusterCounters.ALLOWED) {
+            return ALLOWED;
+        }
+        return new RateLimiterResponse(false, Instant.ofEpochMilli(windowEnd).minusSeconds(TTL_MONITOR_INTERVAL_SECONDS));
+    }
+
+    /**
+     * Restores the current windows from their checkpoints, then joins the gossip.
+     */
+    @Override
+    public void start() {
+        restore();
+        gossipNode.start();
+    }
+
+    @Override
+    public void stop() {
+        gossipNode.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return gossipNode.isRunning();
+    }
+
+    /**
+     * Writes this node's slots counted since the last checkpoint with one bulk upsert, raising each stored
+     * count to the known one. Slots of other nodes are left to their owners. Slots of a failed checkpoint
+     * are written again by the next one.
+     */
+    @Scheduled(fixedDelayString = "${rate.limiter.cluster.checkpoint.millis:5000}")
+    public void checkpoint() {
+        List<ClusterCounters.Slot> slots = counters.drainUnsaved();
+        if (slots.isEmpty()) {
+            return;
+        }
+        try {
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ClusterCheckpoint.class);
+            for (ClusterCounters.Slot slot : slots) {
+                Instant windowStart = Instant.ofEpochMilli(slot.windowStart());
+                bulkOperations.upsert(new Query(Criteria.where("id").is(slot.key() + "@" + slot.windowStart())), new Update()
+                        .max("counts." + slot.node(), slot.count())
+                        .setOnInsert("key", slot.key())
+                        .setOnInsert("windowStart", windowStart)
+                        .setOnInsert("expirationTime", windowStart.plusMillis(counters.windowMillis())));
+            }
+            bulkOperations.execute();
+        } catch (DataAccessException e) {
+            counters.retainUnsaved(slots);
+            log.warn("Failed to checkpoint {} cluster counters", slots.size(), e);
+        }
+    }
+
+    void restore() {
+        Instant now = Instant.now();
+        try {
+            List<ClusterCheckpoint> checkpoints = mongoTemplate.find(
+                    new Query(Criteria.where("expirationTime").gt(now)), ClusterCheckpoint.class);
+            for (ClusterCheckpoint checkpoint : checkpoints) {
+                for (Map.Entry<String, Long> count : checkpoint.getCounts().entrySet()) {
+                    counters.merge(checkpoint.getKey(), checkpoint.getWindowStart().toEpochMilli(),
+                            Integer.parseInt(count.getKey()), count.getValue());
+                }
+            }
+            log.info("Restored {} cluster counters from checkpoints", checkpoints.size());
+        } catch (DataAccessException e) {
+            log.warn("Failed to restore cluster counters, starting from gossip alone", e);
+        }
+    }
+}
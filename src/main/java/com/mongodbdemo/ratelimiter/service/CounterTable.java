@@ -0,0 +1,294 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-capacity, lock-free table of fixed-window counters keyed by user ID.
+ * <p>
+ * Keys are stored as 64-bit fingerprints and each slot's state packs the window end (epoch seconds,
+ * upper 32 bits) and the request count (lower 32 bits) into one {@code long}, so the table costs
+ * 16 bytes per slot regardless of how many keys it holds and a check allocates nothing.
+ * Slots are spread over independent stripes, each an open-addressing array with a bounded probe.
+ * <p>
+ * Expired slots are never swept eagerly: they keep their key until a new key reclaims them while
+ * probing, which replaces the MongoDB TTL index. Readers always read a slot's state before its key
+ * and only write it with a compare-and-set against that state; a reclaim first parks the state at
+ * {@link #RECLAIMING} and leaves it at a state the previous key never had, so an update meant for
+ * the previous key cannot land on the new one.
+ * <p>
+ * A table created with {@link #open} keeps its slots off-heap in a memory-mapped file, so counters and
+ * window ends survive a restart of the process. Window ends are epoch seconds, so a window carries on
+ * where it stopped. Opening maps the file without reading it: startup time does not depend on the number
+ * of keys, and pages are loaded as checks touch them.
+ */
+public final class CounterTable implements Closeable {
+
+    /**
+     * Returned by {@link #tryAcquire} when the request is allowed.
+     */
+    public static final long ALLOWED = 0L;
+
+    private static final long EMPTY_KEY = 0L;
+    private static final long RECLAIMING = -1L;
+    private static final long RETRY = RECLAIMING;
+    private static final int MAX_PROBES = 16;
+    private static final int STRIPES = 64;
+    // Spins on a slot being reclaimed before assuming its reclaimer is gone, e.g. crashed before a restart
+    private static final int MAX_RECLAIM_SPINS = 1 << 16;
+
+    private static final long FILE_MAGIC = 0x524c4354424c3031L;
+    private static final int HEADER_BYTES = 64;
+
+    private static final Logger log = LoggerFactory.getLogger(CounterTable.class);
+
+    private final LongSlots[] keys = new LongSlots[STRIPES];
+    private final LongSlots[] states = new LongSlots[STRIPES];
+    private final int stripeMask;
+    private final LongAdder overflows = new LongAdder();
+    private final List<MappedByteBuffer> mappings;
+
+    /**
+     * Creates a table able to hold about {@code capacity} keys, on the heap.
+     *
+     * @param capacity the number of slots, rounded up to a power of two per stripe
+     */
+    public CounterTable(int capacity) {
+        int stripeCapacity = stripeCapacity(capacity);
+        for (int i = 0; i < STRIPES; i++) {
+            keys[i] = LongSlots.onHeap(stripeCapacity);
+            states[i] = LongSlots.onHeap(stripeCapacity);
+        }
+        this.stripeMask = stripeCapacity - 1;
+        this.mappings = List.of();
+    }
+
+    private CounterTable(int stripeCapacity, List<MappedByteBuffer> mappings) {
+        for (int i = 0; i < STRIPES; i++) {
+            keys[i] = LongSlots.offHeap(mappings.get(2 * i));
+            states[i] = LongSlots.offHeap(mappings.get(2 * i + 1));
+        }
+        this.stripeMask = stripeCapacity - 1;
+        this.mappings = mappings;
+    }
+
+    /**
+     * Opens a table whose slots are memory-mapped from a file, creating the file if it does not exist.
+     * A file laid out for another capacity is discarded and recreated empty.
+     *
+     * @param file the file holding the table, 16 bytes per slot plus a header
+     * @param capacity the number of slots, rounded up to a power of two per stripe
+     * @return the table, to be closed on shutdown
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public static CounterTable open(Path file, int capacity) throws IOException {
+        int stripeCapacity = stripeCapacity(capacity);
+        long regionBytes = (long) stripeCapacity * Long.BYTES;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+            channel.read(header, 0);
+            if (header.getLong(0) != FILE_MAGIC || header.getInt(8) != STRIPES || header.getInt(12) != stripeCapacity) {
+                if (channel.size() > 0) {
+                    log.warn("Discarding counters in {}, which was created for another capacity", file);
+                }
+                // The header is written last, so a file whose creation was interrupted is recreated as well
+                channel.truncate(0);
+                channel.write(ByteBuffer.allocate(1), HEADER_BYTES + 2 * STRIPES * regionBytes - 1);
+                channel.force(true);
+                header.clear();
+                header.putLong(0, FILE_MAGIC).putInt(8, STRIPES).putInt(12, stripeCapacity);
+                channel.write(header, 0);
+                channel.force(true);
+            }
+            List<MappedByteBuffer> mappings = new ArrayList<>(2 * STRIPES);
+            for (int i = 0; i < 2 * STRIPES; i++) {
+                mappings.add(channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + i * regionBytes, regionBytes));
+            }
+            return new CounterTable(stripeCapacity, mappings);
+        }
+    }
+
+    /**
+     * Writes the counters of a memory-mapped table to its file. Counters written by checks are already
+     * in the page cache and survive the process; this makes them survive the machine as well.
+     */
+    @Override
+    public void close() {
+        mappings.forEach(MappedByteBuffer::force);
+    }
+
+    private static int stripeCapacity(int capacity) {
+        return Integer.highestOneBit(Math.max(MAX_PROBES, capacity / STRIPES - 1) << 1);
+    }
+
+    /**
+     * Counts one request for the key in its current window, starting a new window if the previous
+     * one has ended. When the key cannot be placed because its probe range is full of live keys,
+     * the request is allowed and counted in {@link #overflows()}.
+     *
+     * @param userId the key to count the request against
+     * @param limit the number of requests allowed per window
+     * @param windowSeconds the length of a window in seconds
+     * @param nowSeconds the current time in epoch seconds
+     * @return {@link #ALLOWED}, or the epoch second at which the key's window resets when denied
+     */
+    public long tryAcquire(String userId, int limit, long windowSeconds, long nowSeconds) {
+        return tryAcquire(userId, 1, limit, windowSeconds, nowSeconds);
+    }
+
+    /**
+     * Counts {@code permits} requests for the key in its current window if that many remain, starting a
+     * new window if the previous one has ended. A denied request counts nothing, and a request for more
+     * permits than the limit is denied without touching the table, even as the first of a window.
+     *
+     * @param userId the key to count the requests against
+     * @param permits the number of requests to count
+     * @param limit the number of requests allowed per window
+     * @param windowSeconds the length of a window in seconds
+     * @param nowSeconds the current time in epoch seconds
+     * @return {@link #ALLOWED}, or the epoch second at which the key's window resets when denied
+     */
+    public long tryAcquire(String userId, int permits, int limit, long windowSeconds, long nowSeconds) {
+        if (permits > limit) {
+            // Could never be allowed; the first request of a window is otherwise counted without comparing
+            return nowSeconds + windowSeconds;
+        }
+        long fingerprint = fingerprint(userId);
+        int stripe = (int) (fingerprint >>> 58) & (STRIPES - 1);
+        LongSlots stripeKeys = keys[stripe];
+        LongSlots stripeStates = states[stripe];
+        int home = (int) fingerprint & stripeMask;
+
+        int spins = 0;
+        retry:
+        while (true) {
+            int candidate = -1;
+            long candidateState = 0L;
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                int slot = (home + probe) & stripeMask;
+                long state = stripeStates.get(slot);
+                long key = stripeKeys.get(slot);
+                if (key == fingerprint) {
+                    if (state == RECLAIMING) {
+                        if (++spins < MAX_RECLAIM_SPINS) {
+                            Thread.onSpinWait();
+                            continue retry;
+                        }
+                        // Restarts the key's window; a reclaimer that is merely slow overwrites it with its own
+                        long firstRequest = ((nowSeconds + windowSeconds) << 32) | permits;
+                        if (stripeStates.compareAndSet(slot, RECLAIMING, firstRequest)) {
+                            return ALLOWED;
+                        }
+                        continue retry;
+                    }
+                    long result = update(stripeStates, slot, state, permits, limit, windowSeconds, nowSeconds);
+                    if (result == RETRY) {
+                        continue retry;
+                    }
+                    return result;
+                }
+                if (key == EMPTY_KEY) {
+                    if (candidate < 0) {
+                        candidate = slot;
+                        candidateState = state;
+                    }
+                    break; // Keys are never removed, so the key cannot be further along
+                }
+                if (candidate < 0 && state != RECLAIMING && windowEnd(state) <= nowSeconds) {
+                    candidate = slot;
+                    candidateState = state;
+                }
+            }
+            if (candidate < 0) {
+                overflows.increment();
+                return ALLOWED;
+            }
+            long firstRequest = ((nowSeconds + windowSeconds) << 32) | permits;
+            if (claim(stripeKeys, stripeStates, candidate, candidateState, fingerprint, firstRequest)) {
+                return ALLOWED;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of requests that were allowed without being counted because the table was full.
+     *
+     * @return the number of overflowing requests since the table was created
+     */
+    public long overflows() {
+        return overflows.sum();
+    }
+
+    /**
+     * Takes over an empty or expired slot for a key and counts its first request. The slot's state
+     * goes straight to a window ending in the future, so it can never again equal a state a reader
+     * observed for the previous key.
+     */
+    private static boolean claim(LongSlots stripeKeys, LongSlots stripeStates, int slot,
+                                 long observedState, long fingerprint, long firstRequest) {
+        if (stripeKeys.get(slot) == EMPTY_KEY) {
+            return stripeKeys.compareAndSet(slot, EMPTY_KEY, fingerprint)
+                    && stripeStates.compareAndSet(slot, observedState, firstRequest);
+        }
+        if (!stripeStates.compareAndSet(slot, observedState, RECLAIMING)) {
+            return false;
+        }
+        stripeKeys.set(slot, fingerprint);
+        stripeStates.set(slot, firstRequest);
+        return true;
+    }
+
+    /**
+     * Applies {@code permits} requests to a slot whose key matched after its state was read.
+     *
+     * @return {@link #ALLOWED}, the window end when denied, or {@link #RETRY} when the state changed underneath
+     */
+    private static long update(LongSlots stripeStates, int slot, long state, int permits, int limit,
+                               long windowSeconds, long nowSeconds) {
+        long windowEnd = windowEnd(state);
+        long next;
+        if (windowEnd <= nowSeconds) {
+            next = ((nowSeconds + windowSeconds) << 32) | permits;
+        } else if ((int) state <= limit - permits) {
+            next = state + permits;
+        } else {
+            return windowEnd;
+        }
+        return stripeStates.compareAndSet(slot, state, next) ? ALLOWED : RETRY;
+    }
+
+    private static long windowEnd(long state) {
+        return state >>> 32;
+    }
+
+    /**
+     * Hashes the key to a non-zero 64-bit fingerprint without allocating.
+     */
+    static long fingerprint(String userId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < userId.length(); i++) {
+            hash ^= userId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // Finalizer from MurmurHash3 so that short keys spread over stripes and slots
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY_KEY ? 1L : hash;
+    }
+}
@@ -0,0 +1,179 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.TTL_MONITOR_INTERVAL_SECONDS;
+
+/**
+ * Bounds the time a check may spend on MongoDB, retries and backoff included, to
+ * {@code rate.limiter.deadline.millis}. The MongoDB path runs on a virtual thread; when it has not answered
+ * by the deadline, or when the {@link CircuitBreaker} is open because recent checks were failing or slow,
+ * the check is answered by the key's {@link FallbackMode} instead. A MongoDB check that misses its
+ * deadline still completes in the background, so its permit is counted.
+ * <p>
+ * Every check is also counted in a local {@link CounterTable}, whether MongoDB answers it or not, so the
+ * local limiter already knows the current windows when the service degrades. Once the circuit closes
+ * again, local and MongoDB verdicts are compared for {@code rate.limiter.fallback.agreement.millis}, as
+ * are the late answers of checks that missed their deadline.
+ */
+@Service
+@ConditionalOnProperty(name = "rate.limiter.deadline.enabled", havingValue = "true")
+public class DeadlineGuard {
+
+    private static final RateLimiterResponse ALLOWED = new RateLimiterResponse(true, null);
+
+    private enum Reason {
+        TIMEOUT, ERROR, CIRCUIT_OPEN
+    }
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final CounterTable localCounters;
+    private final CircuitBreaker circuitBreaker;
+    private final Counter[][] fallbacks = new Counter[FallbackMode.values().length][Reason.values().length];
+    private final Counter agreed;
+    private final Counter disagreed;
+    private final long openMillis;
+
+    @Value("${rate.limiter.deadline.millis:20}")
+    private long deadlineMillis;
+
+    @Value("${rate.limiter.circuit.slow.millis:10}")
+    private long slowMillis;
+
+    @Value("${rate.limiter.fallback.mode:local}")
+    private FallbackMode defaultFallback;
+
+    @Value("${rate.limiter.fallback.nodes:1}")
+    private int nodes;
+
+    @Value("${rate.limiter.fallback.agreement.millis:60000}")
+    private long agreementMillis;
+
+    public DeadlineGuard(MeterRegistry meterRegistry,
+                         @Value("${rate.limiter.circuit.window:50}") int window,
+                         @Value("${rate.limiter.circuit.failure-rate:0.5}") double failureRate,
+                         @Value("${rate.limiter.circuit.open.millis:5000}") long openMillis,
+                         @Value("${rate.limiter.fallback.capacity:65536}") int capacity) {
+        this.openMillis = openMillis;
+        Timer degraded = Timer.builder("ratelimiter.degraded")
+                .description("Periods during which checks bypassed MongoDB, recorded when MongoDB recovers")
+                .register(meterRegistry);
+        this.circuitBreaker = new CircuitBreaker(window, failureRate, openMillis,
+                millis -> degraded.record(millis, TimeUnit.MILLISECONDS));
+        this.localCounters = new CounterTable(capacity);
+        for (FallbackMode mode : FallbackMode.values()) {
+            for (Reason reason : Reason.values()) {
+                fallbacks[mode.ordinal()][reason.ordinal()] = Counter.builder("ratelimiter.fallbacks")
+                        .description("Checks answered without MongoDB")
+                        .tag("mode", mode.name().toLowerCase())
+                        .tag("reason", reason.name().toLowerCase())
+                        .register(meterRegistry);
+            }
+        }
+        this.agreed = agreementCounter(meterRegistry, "agree");
+        this.disagreed = agreementCounter(meterRegistry, "disagree");
+        Gauge.builder("ratelimiter.circuit.state", circuitBreaker, breaker -> breaker.state().ordinal())
+                .description("State of the MongoDB circuit breaker: 0 closed, 1 open, 2 half-open")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Answers a check from MongoDB if it can within the deadline, and from the fallback otherwise.
+     *
+     * @param key the key being checked
+     * @param policy the limit of the key
+     * @param mongoCheck the check against MongoDB, run on another thread
+     * @return the verdict of MongoDB or of the fallback
+     */
+    public RateLimiterResponse check(String key, Policy policy, Supplier<RateLimiterResponse> mongoCheck) {
+        return check(key, policy, 1, mongoCheck);
+    }
+
+    /**
+     * Answers a check consuming {@code cost} permits from MongoDB if it can within the deadline, and from
+     * the fallback otherwise. The local counter is charged the same cost.
+     *
+     * @param key the key being checked
+     * @param policy the limit of the key
+     * @param cost the number of permits the check consumes
+     * @param mongoCheck the check against MongoDB, run on another thread
+     * @return the verdict of MongoDB or of the fallback
+     */
+    public RateLimiterResponse check(String key, Policy policy, int cost, Supplier<RateLimiterResponse> mongoCheck) {
+        long now = System.currentTimeMillis();
+        int localLimit = (policy.threshold() + nodes - 1) / nodes;
+        long localWindowEnd = localCounters.tryAcquire(key, cost, localLimit, policy.windowMinutes() * 60L, now / 1000);
+        if (!circuitBreaker.tryAcquirePermission(now)) {
+            return fallback(policy, localWindowEnd, Reason.CIRCUIT_OPEN, now);
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<RateLimiterResponse> future = CompletableFuture.supplyAsync(mongoCheck, executor);
+        try {
+            RateLimiterResponse response = future.get(deadlineMillis, TimeUnit.MILLISECONDS);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            circuitBreaker.record(elapsedMillis <= slowMillis, System.currentTimeMillis());
+            if (now - circuitBreaker.closedAtMillis() < agreementMillis) {
+                recordAgreement(localWindowEnd, response);
+            }
+            return response;
+        } catch (TimeoutException e) {
+            circuitBreaker.record(false, System.currentTimeMillis());
+            future.thenAccept(response -> recordAgreement(localWindowEnd, response));
+            return fallback(policy, localWindowEnd, Reason.TIMEOUT, now);
+        } catch (ExecutionException e) {
+            circuitBreaker.record(false, System.currentTimeMillis());
+            return fallback(policy, localWindowEnd, Reason.ERROR, now);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return fallback(policy, localWindowEnd, Reason.TIMEOUT, now);
+        }
+    }
+
+    private RateLimiterResponse fallback(Policy policy, long localWindowEnd, Reason reason, long now) {
+        FallbackMode mode = policy.fallback() != null ? policy.fallback() : defaultFallback;
+        fallbacks[mode.ordinal()][reason.ordinal()].increment();
+        return switch (mode) {
+            case OPEN -> ALLOWED;
+            // Retry once the circuit may have closed; the offset is the one callers add back
+            case CLOSED -> new RateLimiterResponse(false,
+                    Instant.ofEpochMilli(now + openMillis).minusSeconds(TTL_MONITOR_INTERVAL_SECONDS));
+            case LOCAL -> localWindowEnd == CounterTable.ALLOWED ? ALLOWED
+                    : new RateLimiterResponse(false, Instant.ofEpochSecond(localWindowEnd).minusSeconds(TTL_MONITOR_INTERVAL_SECONDS));
+        };
+    }
+
+    private void recordAgreement(long localWindowEnd, RateLimiterResponse response) {
+        boolean localAllowed = localWindowEnd == CounterTable.ALLOWED;
+        (localAllowed == response.isAllowed() ? agreed : disagreed).increment();
+    }
+
+    @PreDestroy
+    void close() {
+        executor.shutdown();
+    }
+
+    private static Counter agreementCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("ratelimiter.fallback.agreement")
+                .description("Local limiter verdicts compared with MongoDB after it recovers")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
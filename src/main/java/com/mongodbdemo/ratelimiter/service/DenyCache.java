@@ -0,0 +1,81 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * In-process cache of users that are over their limit, keyed by user ID. The first denial is stored,
+ * and until its retry-after instant later checks get the same response, retry-after and counter state
+ * included, instead of costing another round-trip. Entries expire at that instant; the cache is
+ * bounded by {@code rate.limiter.deny-cache.max-size} and evicts by size when full.
+ */
+@Component
+@ConditionalOnProperty(name = "rate.limiter.deny-cache.enabled", havingValue = "true")
+public class DenyCache {
+
+    private final Cache<String, RateLimiterResponse> denials;
+
+    public DenyCache(@Value("${rate.limiter.deny-cache.max-size}") long maxSize, MeterRegistry meterRegistry) {
+        this.denials = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new UntilRetryAfter())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, denials, "rateLimiterDenyCache");
+    }
+
+    /**
+     * Returns the cached denial for the user ID, if the user is still known to be over the limit.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @return a denied {@code RateLimiterResponse}, or {@code null} when the check must go to the strategy
+     */
+    public RateLimiterResponse lookup(String userId) {
+        return denials.getIfPresent(userId);
+    }
+
+    /**
+     * Remembers a denial until its retry-after instant. Allowed responses are ignored, and so are denials
+     * of weighted checks that leave permits for cheaper requests.
+     *
+     * @param userId the ID of the user the response applies to
+     * @param response the verdict reached by the strategy
+     */
+    public void record(String userId, RateLimiterResponse response) {
+        if (!response.isAllowed() && (!response.hasQuota() || response.getRemaining() == 0)
+                && response.getRetryAfter() != null && response.getRetryAfter().isAfter(Instant.now())) {
+            denials.put(userId, response);
+        }
+    }
+
+    /**
+     * Expires each entry at the retry-after instant of the denial it holds.
+     */
+    private static final class UntilRetryAfter implements Expiry<String, RateLimiterResponse> {
+
+        @Override
+        public long expireAfterCreate(String userId, RateLimiterResponse denial, long currentTime) {
+            return Math.max(0, Duration.between(Instant.now(), denial.getRetryAfter()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String userId, RateLimiterResponse denial, long currentTime, long currentDuration) {
+            return expireAfterCreate(userId, denial, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String userId, RateLimiterResponse denial, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.TTL_MONITOR_INTERVAL_SECONDS;
+
+/**
+ * Starts new windows on {@code rateLimiter} documents without relying on the TTL index.
+ * <p>
+ * A document's window ends at {@code expirationTime} plus the TTL monitor interval. The TTL index
+ * normally removes the document before that, but not while the index does not exist yet or the monitor
+ * runs late. Conditional upserts therefore only match documents whose window has not ended, so an ended
+ * one collides with the upsert on its key like a full one, and is then removed so the next attempt
+ * inserts a new window.
+ */
+final class EndedWindows {
+
+    private EndedWindows() {
+
+    }
+
+    /**
+     * Matches documents whose window has not ended at {@code now}.
+     *
+     * @param now the current time
+     * @return the criteria on {@code expirationTime}
+     */
+    static Criteria notEnded(Instant now) {
+        return Criteria.where("expirationTime").gt(Date.from(now.minusSeconds(TTL_MONITOR_INTERVAL_SECONDS)));
+    }
+
+    /**
+     * Returns whether the window of a document has ended at {@code now}.
+     *
+     * @param document the document read back after a duplicate key
+     * @param now the current time
+     * @return {@code true} if the document only waits for the TTL index to remove it
+     */
+    static boolean hasEnded(RateLimiter document, Instant now) {
+        return !document.getExpirationTime().plusSeconds(TTL_MONITOR_INTERVAL_SECONDS).isAfter(now);
+    }
+
+    /**
+     * Removes the documents of the given keys whose window has ended at {@code now}. A document that
+     * another caller has already replaced with a new window is left alone.
+     *
+     * @param mongoTemplate the template of the {@code rateLimiter} collection
+     * @param userIds the keys, or shard keys, whose ended documents are removed
+     * @param now the current time
+     */
+    static void removeEnded(MongoTemplate mongoTemplate, Collection<String> userIds, Instant now) {
+        mongoTemplate.remove(new Query(Criteria.where("userId").in(userIds)
+                .and("expirationTime").lte(Date.from(now.minusSeconds(TTL_MONITOR_INTERVAL_SECONDS)))), RateLimiter.class);
+    }
+}
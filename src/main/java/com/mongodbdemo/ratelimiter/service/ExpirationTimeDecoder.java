@@ -0,0 +1,37 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.codecs.Decoder;
+import org.bson.codecs.DecoderContext;
+
+import java.time.Instant;
+
+/**
+ * Decodes a {@code rateLimiter} document straight to its {@code expirationTime}, skipping every
+ * other field without materializing it. A document without the field decodes to {@code null}.
+ */
+final class ExpirationTimeDecoder implements Decoder<Instant> {
+
+    static final String EXPIRATION_TIME = "expirationTime";
+
+    @Override
+    public Instant decode(BsonReader reader, DecoderContext decoderContext) {
+        Instant expirationTime = null;
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            if (reader.getCurrentBsonType() == BsonType.DATE_TIME) {
+                if (EXPIRATION_TIME.equals(reader.readName())) {
+                    expirationTime = Instant.ofEpochMilli(reader.readDateTime());
+                } else {
+                    reader.skipValue();
+                }
+            } else {
+                reader.skipName();
+                reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        return expirationTime;
+    }
+}
@@ -0,0 +1,22 @@
+package com.mongodbdemo.ratelimiter.service;
+
+/**
+ * How {@link DeadlineGuard} answers a check that MongoDB cannot answer within the deadline.
+ */
+public enum FallbackMode {
+
+    /**
+     * Counts the key in a local table against its limit divided by {@code rate.limiter.fallback.nodes}.
+     */
+    LOCAL,
+
+    /**
+     * Allows every request.
+     */
+    OPEN,
+
+    /**
+     * Denies every request until the circuit is expected to close.
+     */
+    CLOSED
+}
@@ -0,0 +1,122 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.entity.GcraState;
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.TTL_MONITOR_INTERVAL_SECONDS;
+
+/**
+ * Rate limit strategy implementing the generic cell rate algorithm (GCRA).
+ * Each user's state is a single theoretical arrival time (TAT). Requests are spaced by an emission
+ * interval of {@code window / threshold}, rounded up to the millisecond, and up to {@code threshold}
+ * requests may arrive at once. Rounding up keeps a threshold above the window length in milliseconds from
+ * yielding an interval of zero, at the cost of admitting slightly fewer than {@code threshold} requests
+ * per window when the window does not divide evenly.
+ * Unlike the fixed-window counter, this never admits a 2x burst across a window boundary. A threshold
+ * below 1 has no emission interval and denies every request.
+ * <p>
+ * A check is one pipeline {@code findAndModify} that upserts by {@code _id}, which MongoDB retries
+ * on its own when concurrent upserts collide. There is no duplicate-key fallback and no version field.
+ * <p>
+ * A check with a cost advances the TAT by that many emission intervals, and conforms only if all of
+ * them fit within the {@code threshold} intervals of the burst.
+ */
+@Service
+@ConditionalOnProperty(name = "rate.limiter.strategy", havingValue = "gcra")
+public class GcraRateLimitStrategy implements RateLimitStrategy {
+
+    private final MongoTemplate mongoTemplate;
+
+    public GcraRateLimitStrategy(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Advances the user's theoretical arrival time by one emission interval if the request conforms,
+     * and leaves it unchanged otherwise.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param policy the limit applying to the user ID
+     * @return a {@code RateLimiterResponse} indicating whether the request is allowed
+     */
+    @Override
+    public RateLimiterResponse checkRateLimit(String userId, Policy policy) {
+        return checkRateLimit(userId, policy, 1);
+    }
+
+    /**
+     * Advances the user's theoretical arrival time by {@code cost} emission intervals if they all
+     * conform, and leaves it unchanged otherwise.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param policy the limit applying to the user ID
+     * @param cost the number of permits the request consumes
+     * @return a {@code RateLimiterResponse} indicating whether the request is allowed
+     */
+    @Override
+    public RateLimiterResponse checkRateLimit(String userId, Policy policy, int cost) {
+        long now = System.currentTimeMillis();
+        long windowMillis = policy.windowMinutes() * 60_000L;
+        int threshold = policy.threshold();
+        if (threshold < 1) {
+            return new RateLimiterResponse(false, Instant.ofEpochMilli(now + windowMillis).minusSeconds(TTL_MONITOR_INTERVAL_SECONDS));
+        }
+        long emissionInterval = Math.ceilDiv(windowMillis, threshold);
+        long increment = emissionInterval * cost;
+        long tolerance = emissionInterval * (threshold - cost);
+
+        // The previous state is returned so the verdict can be derived from the same inputs as the update
+        GcraState previous = mongoTemplate.findAndModify(
+                new Query(Criteria.where("userId").is(userId)),
+                buildUpdate(now, increment, tolerance),
+                new FindAndModifyOptions().returnNew(false).upsert(true),
+                GcraState.class
+        );
+
+        long tat = previous == null ? now : Math.max(previous.getTheoreticalArrivalTime().toEpochMilli(), now);
+        if (tat - now <= tolerance) {
+            return new RateLimiterResponse(true, null);
+        }
+        Instant retryAt = Instant.ofEpochMilli(tat - tolerance);
+        return new RateLimiterResponse(false, retryAt.minusSeconds(TTL_MONITOR_INTERVAL_SECONDS));
+    }
+
+    @Override
+    public boolean supportsCost() {
+        return true;
+    }
+
+    /**
+     * Builds the pipeline update that sets {@code tat = max(tat, now) + increment} when
+     * {@code max(tat, now) - now <= tolerance}, and {@code tat = max(tat, now)} otherwise.
+     * A missing document behaves like a TAT in the past.
+     *
+     * @param now the current time in epoch milliseconds
+     * @param increment the emission intervals the request consumes, in milliseconds
+     * @param tolerance how far the TAT may run ahead of {@code now} in milliseconds
+     * @return the aggregation pipeline update
+     */
+    AggregationUpdate buildUpdate(long now, long increment, long tolerance) {
+        Date nowDate = new Date(now);
+        Document base = new Document("$max", List.of("$tat", nowDate));
+        Document conforms = new Document("$lte", List.of(new Document("$subtract", List.of("$$base", nowDate)), tolerance));
+        Document newTat = new Document("$cond", List.of(conforms, new Document("$add", List.of("$$base", increment)), "$$base"));
+        Document set = new Document("$set", new Document("tat",
+                new Document("$let", new Document("vars", new Document("base", base)).append("in", newTat))));
+        AggregationOperation stage = context -> set;
+        return AggregationUpdate.from(List.of(stage));
+    }
+}
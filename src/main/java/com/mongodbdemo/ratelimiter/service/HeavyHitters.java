@@ -0,0 +1,261 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.HeavyHitter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Streaming estimate of the keys sending the most requests to this node, in fixed memory and without
+ * locks, so the users driving load can be found without scanning the {@code rateLimiter} collection.
+ * <p>
+ * Requests and denials of every checked key are counted in two count-min sketches of
+ * {@code rate.limiter.heavy-hitters.width} counters per row; a key's estimate is the minimum of its
+ * counters, which never undercounts. The keys worth reporting are kept in a small open-addressed table
+ * of candidates: a key is admitted once its estimate reaches that of the weakest kept candidate, taking
+ * the slot of the lowest candidate in its probe sequence, as in Space-Saving. Every
+ * {@code rate.limiter.heavy-hitters.decay.millis} all counts are halved and the table is trimmed to the
+ * {@code rate.limiter.heavy-hitters.top} heaviest keys, so estimates follow recent traffic.
+ * <p>
+ * A candidate whose estimate reaches {@code rate.limiter.heavy-hitters.hot-threshold} is hot. Only
+ * candidates qualify, since the estimate of a key outside the table may be inflated by colliding keys,
+ * and at most {@code rate.limiter.heavy-hitters.top} keys are hot at once. Listeners registered with
+ * {@link #onHotKey} are told once, when the key becomes hot, on the checking thread.
+ */
+@Component
+@ConditionalOnProperty(name = "rate.limiter.heavy-hitters.enabled", havingValue = "true")
+public final class HeavyHitters {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_PROBES = 8;
+    private static final int CANDIDATES_PER_TOP_KEY = 8;
+
+    private final int width;
+    private final int top;
+    private final long hotThreshold;
+    private final AtomicLongArray requests;
+    private final AtomicLongArray denials;
+    private final AtomicReferenceArray<String> candidates;
+    private final LongAdder totalRequests = new LongAdder();
+    private final Set<String> hotKeys = ConcurrentHashMap.newKeySet();
+    private final List<Consumer<String>> hotKeyListeners = new CopyOnWriteArrayList<>();
+
+    private volatile long admissionFloor = 1;
+
+    public HeavyHitters(MeterRegistry meterRegistry,
+                        @Value("${rate.limiter.heavy-hitters.width:4096}") int width,
+                        @Value("${rate.limiter.heavy-hitters.top:20}") int top,
+                        @Value("${rate.limiter.heavy-hitters.hot-threshold:1000}") long hotThreshold) {
+        this.width = Integer.highestOneBit(Math.max(2, width - 1) << 1);
+        this.top = top;
+        this.hotThreshold = hotThreshold;
+        this.requests = new AtomicLongArray(DEPTH * this.width);
+        this.denials = new AtomicLongArray(DEPTH * this.width);
+        this.candidates = new AtomicReferenceArray<>(Integer.highestOneBit(Math.max(2, top * CANDIDATES_PER_TOP_KEY - 1) << 1));
+        Gauge.builder("ratelimiter.heavyhitters.top.share", this, HeavyHitters::topShare)
+                .description("Share of recent requests sent by the heaviest keys")
+                .register(meterRegistry);
+        Gauge.builder("ratelimiter.heavyhitters.top.requests", this,
+                        heavyHitters -> heavyHitters.heaviest(1).stream().mapToLong(HeavyHitter::requests).findFirst().orElse(0))
+                .description("Estimated recent requests of the heaviest key")
+                .register(meterRegistry);
+        Gauge.builder("ratelimiter.heavyhitters.hot.keys", hotKeys, Set::size)
+                .description("Keys whose estimated recent requests reach rate.limiter.heavy-hitters.hot-threshold")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts one check of a key.
+     *
+     * @param key the key that was checked
+     * @param allowed whether the check was allowed
+     */
+    public void record(String key, boolean allowed) {
+        int h1 = mix(key.hashCode());
+        int h2 = mix(h1) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(row, h1, h2);
+            estimate = Math.min(estimate, requests.incrementAndGet(index));
+            if (!allowed) {
+                denials.incrementAndGet(index);
+            }
+        }
+        totalRequests.increment();
+        if (estimate >= admissionFloor) {
+            admit(key, h1, estimate);
+        }
+        // The size check races with other checks, which can overshoot the bound by at most one key each
+        if (estimate >= hotThreshold && !hotKeys.contains(key) && hotKeys.size() < top
+                && isCandidate(key, h1) && hotKeys.add(key)) {
+            hotKeyListeners.forEach(listener -> listener.accept(key));
+        }
+    }
+
+    /**
+     * Returns whether the key is currently hot.
+     *
+     * @param key the key
+     * @return {@code true} if the key's estimated recent requests reached the hot threshold
+     */
+    public boolean isHot(String key) {
+        return hotKeys.contains(key);
+    }
+
+    /**
+     * Registers a listener told of every key that becomes hot.
+     *
+     * @param listener called with the key, on the thread of the check that made it hot
+     */
+    public void onHotKey(Consumer<String> listener) {
+        hotKeyListeners.add(listener);
+    }
+
+    /**
+     * Returns the heaviest keys by estimated recent requests.
+     *
+     * @param limit the maximum number of keys, at least {@code 1} and capped by {@code rate.limiter.heavy-hitters.top}
+     * @return the keys with their estimated recent requests and denials, heaviest first
+     */
+    public List<HeavyHitter> top(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1, got " + limit);
+        }
+        return heaviest(limit);
+    }
+
+    private List<HeavyHitter> heaviest(int limit) {
+        List<HeavyHitter> ranking = rank();
+        return ranking.subList(0, Math.min(Math.min(limit, top), ranking.size()));
+    }
+
+    /**
+     * Halves every count and keeps only the heaviest keys as candidates.
+     */
+    @Scheduled(fixedDelayString = "${rate.limiter.heavy-hitters.decay.millis:60000}")
+    public void decay() {
+        for (int i = 0; i < requests.length(); i++) {
+            requests.getAndUpdate(i, count -> count >> 1);
+            denials.getAndUpdate(i, count -> count >> 1);
+        }
+        totalRequests.add(-(totalRequests.sum() + 1) / 2);
+
+        List<HeavyHitter> kept = heaviest(top);
+        for (int slot = 0; slot < candidates.length(); slot++) {
+            candidates.set(slot, null);
+        }
+        for (HeavyHitter heavyHitter : kept) {
+            admit(heavyHitter.key(), mix(heavyHitter.key().hashCode()), heavyHitter.requests());
+        }
+        admissionFloor = kept.size() < top ? 1 : Math.max(1, kept.get(kept.size() - 1).requests());
+        hotKeys.removeIf(key -> estimate(requests, key) < hotThreshold || !isCandidate(key, mix(key.hashCode())));
+    }
+
+    /**
+     * Returns whether the key holds a slot in its probe sequence.
+     */
+    private boolean isCandidate(String key, int hash) {
+        int mask = candidates.length() - 1;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            String current = candidates.get((hash + probe) & mask);
+            if (current == null) {
+                return false;
+            }
+            if (key.equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Places the key in its probe sequence: in its own slot or a free one, or else in place of the
+     * lightest candidate probed if that one is lighter than the key.
+     */
+    private void admit(String key, int hash, long estimate) {
+        int mask = candidates.length() - 1;
+        int victim = -1;
+        String victimKey = null;
+        long victimEstimate = estimate;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = (hash + probe) & mask;
+            String current = candidates.get(slot);
+            if (current == null) {
+                if (candidates.compareAndSet(slot, null, key)) {
+                    return;
+                }
+                current = candidates.get(slot);
+            }
+            if (key.equals(current)) {
+                return;
+            }
+            long currentEstimate = estimate(requests, current);
+            if (currentEstimate < victimEstimate) {
+                victim = slot;
+                victimKey = current;
+                victimEstimate = currentEstimate;
+            }
+        }
+        if (victim >= 0) {
+            candidates.compareAndSet(victim, victimKey, key);
+        }
+    }
+
+    private List<HeavyHitter> rank() {
+        Set<String> keys = new HashSet<>();
+        List<HeavyHitter> ranking = new ArrayList<>();
+        for (int slot = 0; slot < candidates.length(); slot++) {
+            String key = candidates.get(slot);
+            if (key != null && keys.add(key)) {
+                ranking.add(new HeavyHitter(key, estimate(requests, key), estimate(denials, key)));
+            }
+        }
+        ranking.sort(Comparator.comparingLong(HeavyHitter::requests).reversed());
+        return ranking;
+    }
+
+    private double topShare() {
+        long total = totalRequests.sum();
+        return total <= 0 ? 0 : Math.min(1, (double) heaviest(top).stream().mapToLong(HeavyHitter::requests).sum() / total);
+    }
+
+    private long estimate(AtomicLongArray sketch, String key) {
+        int h1 = mix(key.hashCode());
+        int h2 = mix(h1) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, sketch.get(index(row, h1, h2)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Derives the row's counter from two hashes (Kirsch-Mitzenmacher), so a key is hashed once per check.
+     */
+    private int index(int row, int h1, int h2) {
+        return row * width + ((h1 + row * h2) & (width - 1));
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+}
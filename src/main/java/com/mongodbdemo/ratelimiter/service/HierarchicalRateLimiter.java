@@ -0,0 +1,281 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodbdemo.ratelimiter.dto.MultiLimitResponse;
+import com.mongodbdemo.ratelimiter.entity.LimitCounter;
+import com.mongodbdemo.ratelimiter.metrics.RateLimiterMetrics;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.TTL_MONITOR_INTERVAL_SECONDS;
+
+/**
+ * Checks a request against every limit that applies to it (global, tenant, user and user on an endpoint).
+ * Each limit has its own {@link LimitCounter} document, so no document grows with the number of users and
+ * only the global limit, when enabled, is shared by every check.
+ * <p>
+ * All counters are incremented in one ordered bulk write of conditional upserts, from the narrowest limit
+ * to the broadest, so a request denied by its own limit never writes the busier counters above it. An
+ * upsert whose counter is full fails on a duplicate key and stops the bulk write; the increments made
+ * before it are then taken back, so a denied request consumes nothing once its check returns. An allowed
+ * check is one round-trip; a denied one adds the compensation and a read of the counters it was denied by.
+ * <p>
+ * The check is all-or-none but not atomic: keeping each limit in its own document rules out a single-document
+ * update, and a multi-document transaction would require a replica set. Until a denied check has taken its
+ * increments back, concurrent checks see them and may be denied although the permits end up unused; no check
+ * is ever allowed past a threshold. If the compensation fails, or the node stops between the two writes, the
+ * increments stay until their windows end, which is counted in {@code ratelimiter.limits.compensations}.
+ */
+@Service
+public class HierarchicalRateLimiter {
+
+    static final String GLOBAL = "global";
+    static final String TENANT = "tenant";
+    static final String USER = "user";
+    static final String ENDPOINT = "endpoint";
+
+    private static final int DUPLICATE_KEY_ERROR_CODE = 11000;
+
+    private final MongoTemplate mongoTemplate;
+    private final RateLimiterMetrics metrics;
+
+    private PolicyStore policyStore;
+
+    @Value("${rate.limiter.limits.global.threshold:0}")
+    private int globalThreshold;
+
+    @Value("${rate.limiter.limits.tenant.threshold:0}")
+    private int tenantThreshold;
+
+    @Value("${rate.limiter.limits.user.threshold:${rate.limiter.threshold}}")
+    private int userThreshold;
+
+    @Value("${rate.limiter.limits.endpoint.threshold:0}")
+    private int endpointThreshold;
+
+    @Value("${rate.limiter.expiration.minutes}")
+    private int expirationMinutes;
+
+    public HierarchicalRateLimiter(MongoTemplate mongoTemplate, RateLimiterMetrics metrics) {
+        this.mongoTemplate = mongoTemplate;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the per-key limits, enabled through {@code rate.limiter.policies.enabled}. A policy matching the
+     * key of a limit replaces its configured threshold and window, and enables it if it was disabled.
+     *
+     * @param policyStore the per-key limit policies
+     */
+    @Autowired(required = false)
+    void setPolicyStore(PolicyStore policyStore) {
+        this.policyStore = policyStore;
+    }
+
+    /**
+     * Checks and consumes one permit of every enabled limit for a request. A limit with a threshold of
+     * {@code 0} is disabled.
+     *
+     * @param tenantId the tenant of the request, or {@code null} when it has none
+     * @param userId the ID of the user making the request
+     * @param endpoint the endpoint being called, or {@code null} when it has no limit of its own
+     * @return the verdict, naming the exceeded limits when denied
+     */
+    public MultiLimitResponse checkRateLimit(String tenantId, String userId, String endpoint) {
+        return checkRateLimit(resolveLimits(tenantId, userId, endpoint));
+    }
+
+    /**
+     * Checks and consumes one permit of each of the given limits, all or none.
+     *
+     * @param limits the limits to check, from the broadest to the narrowest
+     * @return the verdict, naming the exceeded limits and reporting the quota of the one resetting last when
+     *         denied; an allowed verdict does not read the counters back and reports no quota
+     */
+    public MultiLimitResponse checkRateLimit(List<Limit> limits) {
+        if (limits.isEmpty()) {
+            return new MultiLimitResponse(true, null, List.of());
+        }
+        List<Limit> narrowestFirst = limits.reversed();
+        int maxRetries = 3;
+        for (int attempt = 1; ; attempt++) {
+            long now = System.currentTimeMillis();
+            int full = incrementAll(narrowestFirst, now);
+            if (full < 0) {
+                metrics.recordVerdict(true);
+                return new MultiLimitResponse(true, null, List.of());
+            }
+            decrement(narrowestFirst.subList(0, full), now);
+
+            // Only the full counter and the broader ones it kept from being incremented can be exceeded
+            List<Limit> unchecked = narrowestFirst.subList(full, narrowestFirst.size());
+            Map<String, LimitCounter> counters = new HashMap<>();
+            Query query = new Query(Criteria.where("key").in(unchecked.stream().map(Limit::key).toList()));
+            for (LimitCounter counter : mongoTemplate.find(query, LimitCounter.class)) {
+                counters.put(counter.getKey(), counter);
+            }
+            List<String> exceeded = new ArrayList<>();
+            Limit resetsLast = null;
+            long retryAt = 0;
+            for (Limit limit : limits) {
+                LimitCounter counter = counters.get(limit.key());
+                if (unchecked.contains(limit) && counter != null && counter.getWindowEnd().toEpochMilli() > now
+                        && counter.getCount() >= limit.threshold()) {
+                    exceeded.add(limit.dimension());
+                    if (counter.getWindowEnd().toEpochMilli() >= retryAt) {
+                        resetsLast = limit;
+                        retryAt = counter.getWindowEnd().toEpochMilli();
+                    }
+                }
+            }
+            metrics.recordLimitsRecheck(!exceeded.isEmpty());
+            // Otherwise the full counter's window ended between the write and the read
+            if (!exceeded.isEmpty() || attempt >= maxRetries) {
+                if (exceeded.isEmpty()) {
+                    resetsLast = narrowestFirst.get(full);
+                    exceeded.add(resetsLast.dimension());
+                    retryAt = now + resetsLast.windowMillis();
+                }
+                metrics.recordVerdict(false);
+                Instant reset = Instant.ofEpochMilli(retryAt);
+                return new MultiLimitResponse(false, reset.minusSeconds(TTL_MONITOR_INTERVAL_SECONDS),
+                        resetsLast.threshold(), 0, reset, exceeded);
+            }
+        }
+    }
+
+    /**
+     * Lists the enabled limits of a request from the broadest to the narrowest. The keys of narrower
+     * limits extend the keys of broader ones, so a prefix policy such as {@code tenant:acme/*} covers
+     * every user and endpoint of a tenant.
+     */
+    List<Limit> resolveLimits(String tenantId, String userId, String endpoint) {
+        List<Limit> limits = new ArrayList<>(4);
+        addLimit(limits, GLOBAL, GLOBAL, globalThreshold);
+        String userKey = USER + ":" + userId;
+        if (tenantId != null) {
+            String tenantKey = TENANT + ":" + tenantId;
+            addLimit(limits, TENANT, tenantKey, tenantThreshold);
+            userKey = tenantKey + "/" + userKey;
+        }
+        addLimit(limits, USER, userKey, userThreshold);
+        if (endpoint != null) {
+            addLimit(limits, ENDPOINT, userKey + "/" + ENDPOINT + ":" + endpoint, endpointThreshold);
+        }
+        return limits;
+    }
+
+    private void addLimit(List<Limit> limits, String dimension, String key, int defaultThreshold) {
+        Policy policy = policyStore != null ? policyStore.lookup(key) : null;
+        if (policy != null) {
+            limits.add(new Limit(dimension, key, policy.threshold(), policy.windowMinutes() * 60_000L));
+        } else if (defaultThreshold > 0) {
+            limits.add(new Limit(dimension, key, defaultThreshold, expirationMinutes * 60_000L));
+        }
+    }
+
+    /**
+     * Increments the counter of every limit in one ordered bulk write, stopping at the first full counter.
+     *
+     * @param limits the limits to check, in the order they are incremented
+     * @param now the current time in epoch milliseconds
+     * @return the index of the full counter, or {@code -1} if every counter was incremented
+     */
+    private int incrementAll(List<Limit> limits, long now) {
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, LimitCounter.class);
+        for (Limit limit : limits) {
+            bulkOperations.upsert(buildQuery(limit, now), buildUpdate(limit, now));
+        }
+        long start = System.nanoTime();
+        try {
+            bulkOperations.execute();
+            metrics.recordLimitsWrite(start, false, null);
+            return -1;
+        } catch (BulkOperationException e) {
+            BulkWriteError error = e.getErrors().get(0);
+            if (error.getCode() != DUPLICATE_KEY_ERROR_CODE) {
+                metrics.recordLimitsWrite(start, false, e);
+                decrement(limits.subList(0, error.getIndex()), now);
+                throw e;
+            }
+            metrics.recordLimitsWrite(start, true, null);
+            return error.getIndex();
+        } catch (RuntimeException e) {
+            metrics.recordLimitsWrite(start, false, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Takes back one permit of each of the given limits, whose counters were incremented by this check.
+     */
+    private void decrement(List<Limit> limits, long now) {
+        if (limits.isEmpty()) {
+            return;
+        }
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, LimitCounter.class);
+        for (Limit limit : limits) {
+            // A window that ended since the increment has nothing left to take back
+            bulkOperations.updateOne(new Query(Criteria.where("key").is(limit.key())
+                            .and("count").gt(0)
+                            .and("windowEnd").gt(new Date(now))),
+                    new Update().inc("count", -1));
+        }
+        try {
+            bulkOperations.execute();
+            metrics.recordLimitsCompensation(true);
+        } catch (RuntimeException e) {
+            metrics.recordLimitsCompensation(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Builds the filter matching the limit's counter while it is below the threshold or its window has
+     * ended. A full counter does not match, so its upsert fails on a duplicate key.
+     *
+     * @param limit the limit to check
+     * @param now the current time in epoch milliseconds
+     * @return the filter
+     */
+    Query buildQuery(Limit limit, long now) {
+        return new Query(Criteria.where("key").is(limit.key()).orOperator(
+                Criteria.where("count").lt(limit.threshold()),
+                Criteria.where("windowEnd").not().gt(new Date(now))));
+    }
+
+    /**
+     * Builds the pipeline update that increments the counter within its window, and starts a window of the
+     * limit's length at {@code now} with a count of 1 when the window has ended or the counter is new.
+     *
+     * @param limit the limit to check
+     * @param now the current time in epoch milliseconds
+     * @return the aggregation pipeline update
+     */
+    AggregationUpdate buildUpdate(Limit limit, long now) {
+        // A missing windowEnd sorts before any date, so a new counter starts a window
+        Document live = new Document("$gt", List.of("$windowEnd", new Date(now)));
+        Document set = new Document("$set", new Document()
+                .append("count", new Document("$cond", List.of(live, new Document("$add", List.of("$count", 1)), 1)))
+                .append("windowEnd", new Document("$cond", List.of(live, "$windowEnd", new Date(now + limit.windowMillis())))));
+        AggregationOperation stage = context -> set;
+        return AggregationUpdate.from(List.of(stage));
+    }
+}
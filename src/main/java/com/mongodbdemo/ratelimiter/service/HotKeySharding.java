@@ -0,0 +1,311 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import com.mongodbdemo.ratelimiter.metrics.RateLimiterMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits the fixed-window counter of a hot key over several shard documents, so that concurrent checks
+ * on one key no longer serialize on a single {@code rateLimiter} document.
+ * <p>
+ * Shard {@code i} of key {@code k} is the document {@code k#i}, with a quota of
+ * {@code threshold / shards} (the first {@code threshold % shards} shards take one more), so the
+ * quotas sum to the threshold of the key's policy. A check increments a random shard; when that shard is full, one read
+ * of all shards finds those with headroom and the check is retried on them, and the key is denied
+ * only when every shard is full.
+ * <p>
+ * Keys listed in {@code rate.limiter.sharding.keys} are always sharded. Other keys are promoted when
+ * their checks hit {@code rate.limiter.sharding.hot-threshold} retries within one detection interval,
+ * or when {@link HeavyHitters}, if enabled, reports them hot.
+ * A promotion takes effect one window of the key's policy later, and a key is demoted once it has been
+ * idle for a whole such window, so the unsharded and sharded counters of a key are never live at the same time.
+ */
+@Component
+@ConditionalOnProperty(name = "rate.limiter.sharding.enabled", havingValue = "true")
+public class HotKeySharding {
+
+    private static final char SHARD_SEPARATOR = '#';
+    private static final long MAX_PROMOTED_KEYS = 10_000;
+
+    private final MongoTemplate mongoTemplate;
+    private final RateLimiterMetrics metrics;
+    private final Set<String> staticKeys;
+    private final int shards;
+    private final int hotThreshold;
+    private final int expirationMinutes;
+    private final Map<String, AtomicInteger> contention = new ConcurrentHashMap<>();
+    private final Cache<String, Promotion> promotions;
+
+    private PolicyStore policyStore;
+
+    public HotKeySharding(MongoTemplate mongoTemplate,
+                          RateLimiterMetrics metrics,
+                          @Value("${rate.limiter.sharding.keys:}") Set<String> staticKeys,
+                          @Value("${rate.limiter.sharding.shards:8}") int shards,
+                          @Value("${rate.limiter.sharding.hot-threshold:20}") int hotThreshold,
+                          @Value("${rate.limiter.expiration.minutes}") int expirationMinutes) {
+        this.mongoTemplate = mongoTemplate;
+        this.metrics = metrics;
+        this.staticKeys = Set.copyOf(staticKeys);
+        this.shards = shards;
+        this.hotThreshold = hotThreshold;
+        this.expirationMinutes = expirationMinutes;
+        this.promotions = Caffeine.newBuilder()
+                .maximumSize(MAX_PROMOTED_KEYS)
+                .expireAfter(new IdleForWindow())
+                .build();
+    }
+
+    /**
+     * Sets the per-key limits whose windows time promotions and demotions. Without them every key uses
+     * {@code rate.limiter.expiration.minutes}.
+     *
+     * @param policyStore the per-key limit policies
+     */
+    @Autowired(required = false)
+    void setPolicyStore(PolicyStore policyStore) {
+        this.policyStore = policyStore;
+    }
+
+    /**
+     * Promotes the keys that {@link HeavyHitters} reports hot, before their checks start contending.
+     *
+     * @param heavyHitters the sketch of the heaviest keys
+     */
+    @Autowired(required = false)
+    void setHeavyHitters(HeavyHitters heavyHitters) {
+        heavyHitters.onHotKey(this::promote);
+    }
+
+    /**
+     * Returns whether checks for the user ID currently go to its shards.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @return {@code true} if the key is sharded
+     */
+    public boolean isSharded(String userId) {
+        if (staticKeys.contains(userId)) {
+            return true;
+        }
+        Promotion promotion = promotions.getIfPresent(userId);
+        return promotion != null && promotion.from() <= System.currentTimeMillis();
+    }
+
+    /**
+     * Records one contended check of an unsharded key and promotes the key once it is hot.
+     *
+     * @param userId the ID of the user whose check had to be retried
+     */
+    public void recordContention(String userId) {
+        int events = contention.computeIfAbsent(userId, key -> new AtomicInteger()).incrementAndGet();
+        if (events == hotThreshold) {
+            promote(userId);
+        }
+    }
+
+    /**
+     * Shards the key from the next window on, unless it is already sharded or about to be.
+     *
+     * @param userId the ID of the user whose key is hot
+     */
+    public void promote(String userId) {
+        if (staticKeys.contains(userId) || promotions.getIfPresent(userId) != null) {
+            return;
+        }
+        Policy policy = policyStore != null ? policyStore.lookup(userId) : null;
+        long windowMillis = (policy != null ? policy.windowMinutes() : expirationMinutes) * 60_000L;
+        if (promotions.asMap().putIfAbsent(userId, new Promotion(System.currentTimeMillis() + windowMillis, windowMillis)) == null) {
+            metrics.recordShardPromotion();
+        }
+    }
+
+    /**
+     * Starts a new detection interval.
+     */
+    @Scheduled(fixedDelayString = "${rate.limiter.sharding.detection.millis:1000}")
+    public void resetContention() {
+        contention.clear();
+    }
+
+    /**
+     * Counts one request against a random shard of the key, moving on to shards with headroom when
+     * that shard is full.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param policy the limit applying to the user ID
+     * @return a {@code RateLimiterResponse} indicating whether the request is allowed
+     */
+    public RateLimiterResponse checkRateLimit(String userId, Policy policy) {
+        return checkRateLimit(userId, policy, 1);
+    }
+
+    /**
+     * Counts {@code cost} requests against a single shard of the key that has that much headroom, the
+     * same way as {@link #checkRateLimit(String, Policy)}. A cost is never split over shards, so a cost
+     * above the quota of every shard is denied.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param policy the limit applying to the user ID
+     * @param cost the number of permits the request consumes
+     * @return a {@code RateLimiterResponse} indicating whether the request is allowed
+     */
+    public RateLimiterResponse checkRateLimit(String userId, Policy policy, int cost) {
+        int threshold = policy.threshold();
+        Instant expirationTime = Instant.now().plusSeconds(policy.windowMinutes() * 60L - 60L);
+        if (threshold < 1) {
+            return new RateLimiterResponse(false, expirationTime);
+        }
+        int shardCount = Math.min(shards, threshold);
+        // Shard 0 holds the largest quota
+        if (cost > quota(0, shardCount, threshold)) {
+            return new RateLimiterResponse(false, expirationTime);
+        }
+        int first = ThreadLocalRandom.current().nextInt(shardCount);
+        if (tryIncrement(userId, first, shardCount, threshold, cost, expirationTime)) {
+            return new RateLimiterResponse(true, null);
+        }
+
+        // Sum the shards once and only retry those that still had headroom
+        Map<String, RateLimiter> documents = new HashMap<>();
+        for (RateLimiter shard : mongoTemplate.find(new Query(Criteria.where("userId").in(shardIds(userId, shardCount))), RateLimiter.class)) {
+            documents.put(shard.getUserId(), shard);
+        }
+        Instant now = Instant.now();
+        List<String> ended = new ArrayList<>();
+        Instant earliestReset = null;
+        List<Integer> candidates = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            int shard = (first + i) % shardCount;
+            RateLimiter document = documents.get(shardId(userId, shard));
+            if (document != null && EndedWindows.hasEnded(document, now)) {
+                // Left behind by the TTL index; the shard starts a new window once it is removed
+                ended.add(document.getUserId());
+                document = null;
+            }
+            if (document == null ? cost <= quota(shard, shardCount, threshold)
+                    : document.getCounter() <= quota(shard, shardCount, threshold) - cost) {
+                candidates.add(shard);
+            } else if (document != null && (earliestReset == null || document.getExpirationTime().isBefore(earliestReset))) {
+                earliestReset = document.getExpirationTime();
+            }
+        }
+
+        if (!ended.isEmpty()) {
+            EndedWindows.removeEnded(mongoTemplate, ended, now);
+        }
+        for (int shard : candidates) {
+            metrics.recordShardRebalance();
+            if (tryIncrement(userId, shard, shardCount, threshold, cost, expirationTime)) {
+                return new RateLimiterResponse(true, null);
+            }
+        }
+        return new RateLimiterResponse(false, earliestReset != null ? earliestReset : expirationTime);
+    }
+
+    /**
+     * Returns the share of the threshold held by one shard.
+     *
+     * @param shard the index of the shard
+     * @param shardCount the number of shards the key is split over
+     * @param threshold the number of requests allowed per window for the key
+     * @return the number of requests the shard admits per window
+     */
+    static int quota(int shard, int shardCount, int threshold) {
+        return threshold / shardCount + (shard < threshold % shardCount ? 1 : 0);
+    }
+
+    static String shardId(String userId, int shard) {
+        return userId + SHARD_SEPARATOR + shard;
+    }
+
+    private static List<String> shardIds(String userId, int shardCount) {
+        List<String> ids = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            ids.add(shardId(userId, shard));
+        }
+        return ids;
+    }
+
+    private boolean tryIncrement(String userId, int shard, int shardCount, int threshold, int cost, Instant expirationTime) {
+        int quota = quota(shard, shardCount, threshold);
+        if (cost > quota) {
+            // An upsert would create the shard already over its quota
+            return false;
+        }
+        String shardId = shardId(userId, shard);
+        Query query = new Query(Criteria.where("userId").is(shardId)
+                .andOperator(Criteria.where("counter").lt(quota - cost + 1), EndedWindows.notEnded(Instant.now())));
+        Update update = new Update()
+                .inc("counter", cost)
+                .setOnInsert("userId", shardId)
+                .setOnInsert("expirationTime", expirationTime);
+        long start = System.nanoTime();
+        try {
+            RateLimiter rateLimiter = mongoTemplate.findAndModify(
+                    query,
+                    update,
+                    new FindAndModifyOptions().returnNew(true).upsert(true),
+                    RateLimiter.class
+            );
+            metrics.recordFindAndModify(start, null);
+            return rateLimiter != null;
+        } catch (DuplicateKeyException | OptimisticLockingFailureException e) {
+            // The shard is full, or was created concurrently; either way another shard is tried
+            metrics.recordFindAndModify(start, e);
+            return false;
+        }
+    }
+
+    /**
+     * Time from which a promoted key is sharded, and the window of its policy at promotion.
+     */
+    private record Promotion(long from, long windowMillis) {
+    }
+
+    /**
+     * Expires a promotion once its key has not been checked for a whole window of its policy.
+     */
+    private static final class IdleForWindow implements Expiry<String, Promotion> {
+
+        @Override
+        public long expireAfterCreate(String key, Promotion promotion, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(promotion.windowMillis());
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Promotion promotion, long currentTime, long currentDuration) {
+            return TimeUnit.MILLISECONDS.toNanos(promotion.windowMillis());
+        }
+
+        @Override
+        public long expireAfterRead(String key, Promotion promotion, long currentTime, long currentDuration) {
+            return TimeUnit.MILLISECONDS.toNanos(promotion.windowMillis());
+        }
+    }
+}
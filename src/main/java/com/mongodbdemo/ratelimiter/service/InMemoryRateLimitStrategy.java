@@ -0,0 +1,77 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.TTL_MONITOR_INTERVAL_SECONDS;
+
+/**
+ * Rate limit strategy that keeps fixed-window counters in process, for single-node and sidecar
+ * deployments that do not need cross-node accuracy. Counters live in a {@link CounterTable} sized
+ * up front by {@code rate.limiter.memory.capacity}, so heap use does not grow with the number of keys
+ * and allowed checks do not allocate.
+ * <p>
+ * With {@code rate.limiter.memory.file} set, the table is memory-mapped from that file instead of living
+ * on the heap, so windows survive a restart: throttled users do not get a fresh quota and startup does
+ * not depend on the number of keys.
+ */
+@Service
+@ConditionalOnProperty(name = "rate.limiter.strategy", havingValue = "memory")
+public class InMemoryRateLimitStrategy implements RateLimitStrategy {
+
+    private static final RateLimiterResponse ALLOWED = new RateLimiterResponse(true, null);
+
+    private final CounterTable counterTable;
+
+    public InMemoryRateLimitStrategy(@Value("${rate.limiter.memory.capacity}") int capacity,
+                                     @Value("${rate.limiter.memory.file:}") String file) throws IOException {
+        this.counterTable = file.isEmpty() ? new CounterTable(capacity) : CounterTable.open(Path.of(file), capacity);
+    }
+
+    /**
+     * Counts the request against the user's in-process window.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param policy the limit applying to the user ID
+     * @return a {@code RateLimiterResponse} indicating whether the request is allowed
+     */
+    @Override
+    public RateLimiterResponse checkRateLimit(String userId, Policy policy) {
+        return checkRateLimit(userId, policy, 1);
+    }
+
+    /**
+     * Counts {@code cost} requests against the user's in-process window if that many remain.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param policy the limit applying to the user ID
+     * @param cost the number of permits the request consumes
+     * @return a {@code RateLimiterResponse} indicating whether the request is allowed
+     */
+    @Override
+    public RateLimiterResponse checkRateLimit(String userId, Policy policy, int cost) {
+        long windowEnd = counterTable.tryAcquire(userId, cost, policy.threshold(), policy.windowMinutes() * 60L,
+                System.currentTimeMillis() / 1000);
+        if (windowEnd == CounterTable.ALLOWED) {
+            return ALLOWED;
+        }
+        return new RateLimiterResponse(false, Instant.ofEpochSecond(windowEnd).minusSeconds(TTL_MONITOR_INTERVAL_SECONDS));
+    }
+
+    @Override
+    public boolean supportsCost() {
+        return true;
+    }
+
+    @PreDestroy
+    void close() {
+        counterTable.close();
+    }
+}
@@ -0,0 +1,261 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.TTL_MONITOR_INTERVAL_SECONDS;
+
+/**
+ * Rate limit strategy that leases blocks of permits from the shared {@code rateLimiter} document.
+ * A node claims a block with a single {@code $inc} and serves checks from an in-process counter
+ * until the block runs out or the lease expires, at which point unused permits are handed back.
+ * <p>
+ * The strategy never admits more than {@code threshold} requests per window across all nodes; it can
+ * deny early by at most the permits other nodes still hold, which is bounded by the block size. A claim
+ * never raises the counter past {@code threshold}, so every permit handed back can be claimed again.
+ * Block sizes adapt to each key's observed request rate.
+ */
+@Service
+@ConditionalOnProperty(name = "rate.limiter.strategy", havingValue = "lease")
+public class LeaseRateLimitStrategy implements RateLimitStrategy {
+
+    private static final double RATE_SMOOTHING = 0.5;
+
+    private final MongoTemplate mongoTemplate;
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    @Value("${rate.limiter.lease.max-block:50}")
+    private int maxBlockSize;
+
+    @Value("${rate.limiter.lease.duration.millis:2000}")
+    private long leaseDurationMillis;
+
+    public LeaseRateLimitStrategy(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Consumes a permit from the local lease for the user ID, claiming a new block from MongoDB
+     * only when the current lease is exhausted or expired.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param policy the limit applying to the user ID
+     * @return a {@code RateLimiterResponse} indicating whether the request is allowed
+     */
+    @Override
+    public RateLimiterResponse checkRateLimit(String userId, Policy policy) {
+        long now = System.currentTimeMillis();
+        while (true) {
+            Lease lease = leases.computeIfAbsent(userId, key -> new Lease());
+            if (lease.tryConsume(now)) {
+                return new RateLimiterResponse(true, null);
+            }
+
+            lease.lock.lock();
+            try {
+                // The sweeper may have retired the lease while we waited for the lock; permits claimed
+                // into it would never be served, so start over with the lease now in the map
+                if (lease.retired) {
+                    continue;
+                }
+                // Another thread may have refilled the lease while we waited for the lock
+                if (lease.tryConsume(now)) {
+                    return new RateLimiterResponse(true, null);
+                }
+                releaseUnused(userId, lease, now);
+                return claimBlock(userId, lease, policy, now);
+            } finally {
+                lease.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Hands back the unused permits of leases that have expired, so that other nodes can use them
+     * within the current window, and forgets leases of keys that went idle.
+     */
+    @Scheduled(fixedDelayString = "${rate.limiter.lease.sweep.millis:1000}")
+    public void releaseExpiredLeases() {
+        long now = System.currentTimeMillis();
+        leases.forEach((userId, lease) -> {
+            if (lease.validUntil > now || !lease.lock.tryLock()) {
+                return;
+            }
+            try {
+                releaseUnused(userId, lease, now);
+                if (now - lease.lastClaimAt > leaseDurationMillis * 2 && leases.remove(userId, lease)) {
+                    lease.retired = true;
+                }
+            } finally {
+                lease.lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Returns the number of permits the next claim for a key should request, based on the
+     * smoothed request rate observed over previous leases.
+     *
+     * @param lease the lease whose observed rate is used
+     * @param threshold the number of requests allowed per window for the key
+     * @return a block size between 1 and {@code min(maxBlockSize, threshold)}
+     */
+    int nextBlockSize(Lease lease, int threshold) {
+        long block = (long) Math.ceil(lease.ratePerMilli * leaseDurationMillis);
+        return (int) Math.max(1, Math.min(block, Math.min(maxBlockSize, threshold)));
+    }
+
+    private RateLimiterResponse claimBlock(String userId, Lease lease, Policy policy, long now) {
+        int threshold = policy.threshold();
+        int block = nextBlockSize(lease, threshold);
+        Instant expirationTime = Instant.ofEpochMilli(now + policy.windowMinutes() * 60_000L).minusSeconds(TTL_MONITOR_INTERVAL_SECONDS);
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .andOperator(Criteria.where("counter").lt(threshold), EndedWindows.notEnded(Instant.ofEpochMilli(now))));
+        AggregationUpdate update = buildClaimUpdate(block, threshold, expirationTime);
+
+        int maxRetries = 3;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                // The previous state is returned so the permits granted can be derived from the same inputs as the update
+                RateLimiter previous = mongoTemplate.findAndModify(
+                        query,
+                        update,
+                        new FindAndModifyOptions().returnNew(false).upsert(true),
+                        RateLimiter.class
+                );
+                int granted = previous == null ? Math.min(block, threshold) : Math.min(block, threshold - previous.getCounter());
+                Instant windowExpiration = previous == null ? expirationTime : previous.getExpirationTime();
+                lease.refill(granted - 1, windowExpiration, now, leaseDurationMillis, RATE_SMOOTHING);
+                return new RateLimiterResponse(true, null);
+            } catch (DuplicateKeyException e) {
+                RateLimiter existingRateLimiter = mongoTemplate.findById(userId, RateLimiter.class);
+                if (existingRateLimiter != null && EndedWindows.hasEnded(existingRateLimiter, Instant.ofEpochMilli(now))) {
+                    EndedWindows.removeEnded(mongoTemplate, List.of(userId), Instant.ofEpochMilli(now));
+                    continue; // Claim from a new window
+                }
+                if (existingRateLimiter != null) {
+                    return new RateLimiterResponse(false, existingRateLimiter.getExpirationTime());
+                }
+                if (attempt >= maxRetries) {
+                    return new RateLimiterResponse(false, Instant.now().plusSeconds(policy.windowMinutes() * 60L));
+                }
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= maxRetries) {
+                    return new RateLimiterResponse(false, Instant.now().plusSeconds(policy.windowMinutes() * 60L));
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the pipeline update that raises {@code counter} by {@code block} but no further than the
+     * threshold, and starts the window of a new document at {@code expirationTime}.
+     *
+     * @param block the number of permits to claim
+     * @param threshold the number of requests allowed per window for the key
+     * @param expirationTime the expiration time of a new document
+     * @return the aggregation pipeline update
+     */
+    AggregationUpdate buildClaimUpdate(int block, int threshold, Instant expirationTime) {
+        Document counter = new Document("$min", List.of(
+                new Document("$add", List.of(new Document("$ifNull", List.of("$counter", 0)), block)), threshold));
+        Document set = new Document("$set", new Document()
+                .append("counter", counter)
+                .append("expirationTime", new Document("$ifNull", List.of("$expirationTime", Date.from(expirationTime)))));
+        AggregationOperation stage = context -> set;
+        return AggregationUpdate.from(List.of(stage));
+    }
+
+    private void releaseUnused(String userId, Lease lease, long now) {
+        int unused = lease.drain();
+        Instant windowExpiration = lease.windowExpiration;
+        if (unused <= 0 || windowExpiration == null || windowEnd(windowExpiration) <= now) {
+            return;
+        }
+        // Only give permits back to the window they were claimed from
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .andOperator(Criteria.where("expirationTime").is(windowExpiration)));
+        mongoTemplate.updateFirst(query, new Update().inc("counter", -unused), RateLimiter.class);
+    }
+
+    /**
+     * Returns the end of the window of a document, which is stored as {@code expirationTime} ahead of it
+     * by the TTL monitor interval.
+     */
+    static long windowEnd(Instant expirationTime) {
+        return expirationTime.plusSeconds(TTL_MONITOR_INTERVAL_SECONDS).toEpochMilli();
+    }
+
+    /**
+     * Block of permits held locally for one key. The fast path only touches {@code remaining};
+     * everything else is written under {@code lock}. A lease removed from the map is {@code retired}
+     * and is never refilled again.
+     */
+    static final class Lease {
+        final ReentrantLock lock = new ReentrantLock();
+        final AtomicInteger remaining = new AtomicInteger();
+        volatile long validUntil;
+        volatile Instant windowExpiration;
+        boolean retired;
+        long lastClaimAt;
+        int lastGranted;
+        int returned;
+        double ratePerMilli;
+
+        boolean tryConsume(long now) {
+            if (now >= validUntil) {
+                return false;
+            }
+            int current;
+            do {
+                current = remaining.get();
+                if (current <= 0) {
+                    return false;
+                }
+            } while (!remaining.compareAndSet(current, current - 1));
+            return true;
+        }
+
+        int drain() {
+            int unused = remaining.getAndSet(0);
+            returned += unused;
+            return unused;
+        }
+
+        void refill(int permits, Instant expirationTime, long now, long leaseDurationMillis, double smoothing) {
+            if (lastClaimAt > 0) {
+                double observedRate = (double) (lastGranted - returned) / Math.max(1, now - lastClaimAt);
+                ratePerMilli = smoothing * observedRate + (1 - smoothing) * ratePerMilli;
+            }
+            lastClaimAt = now;
+            lastGranted = permits + 1;
+            returned = 0;
+            windowExpiration = expirationTime;
+            // Permits must not outlive the document they were claimed from
+            validUntil = Math.min(now + leaseDurationMillis, windowEnd(expirationTime));
+            remaining.set(permits);
+        }
+    }
+}
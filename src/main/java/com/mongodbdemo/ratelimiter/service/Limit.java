@@ -0,0 +1,12 @@
+package com.mongodbdemo.ratelimiter.service;
+
+/**
+ * One limit applying to a request, such as the limit of its tenant or of its user on an endpoint.
+ *
+ * @param dimension the name reported when this limit is exceeded, e.g. {@code tenant}
+ * @param key the counter key, unique within the scope of the check
+ * @param threshold the number of requests allowed per window
+ * @param windowMillis the length of the window in milliseconds
+ */
+public record Limit(String dimension, String key, int threshold, long windowMillis) {
+}
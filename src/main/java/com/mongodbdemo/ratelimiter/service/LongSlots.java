@@ -0,0 +1,74 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Array of {@code long} slots with volatile reads and writes and compare-and-set, the only operations
+ * {@link CounterTable} needs. Slots live either on the heap or in a direct buffer, typically a region
+ * of a memory-mapped file.
+ */
+interface LongSlots {
+
+    long get(int index);
+
+    void set(int index, long value);
+
+    boolean compareAndSet(int index, long expected, long value);
+
+    static LongSlots onHeap(int length) {
+        return new Heap(new AtomicLongArray(length));
+    }
+
+    /**
+     * Uses a direct buffer as slots, one per 8 bytes. The buffer must be 8-byte aligned.
+     *
+     * @param buffer the direct buffer holding the slots
+     * @return slots backed by the buffer
+     */
+    static LongSlots offHeap(ByteBuffer buffer) {
+        return new OffHeap(buffer);
+    }
+
+    record Heap(AtomicLongArray array) implements LongSlots {
+
+        @Override
+        public long get(int index) {
+            return array.get(index);
+        }
+
+        @Override
+        public void set(int index, long value) {
+            array.set(index, value);
+        }
+
+        @Override
+        public boolean compareAndSet(int index, long expected, long value) {
+            return array.compareAndSet(index, expected, value);
+        }
+    }
+
+    record OffHeap(ByteBuffer buffer) implements LongSlots {
+
+        // Aligned long views of direct buffers support atomic access
+        private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+        @Override
+        public long get(int index) {
+            return (long) LONGS.getVolatile(buffer, index << 3);
+        }
+
+        @Override
+        public void set(int index, long value) {
+            LONGS.setVolatile(buffer, index << 3, value);
+        }
+
+        @Override
+        public boolean compareAndSet(int index, long expected, long value) {
+            return LONGS.compareAndSet(buffer, index << 3, expected, value);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoServerException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.TTL_MONITOR_INTERVAL_SECONDS;
+import static com.mongodbdemo.ratelimiter.service.ExpirationTimeDecoder.EXPIRATION_TIME;
+
+/**
+ * Rate limit strategy with the same fixed-window semantics and documents as the counter built into
+ * {@link RateLimiterService}, executed through the driver's {@link MongoCollection} instead of
+ * {@link MongoTemplate}.
+ * <p>
+ * Nothing goes through Spring Data's query, update or entity mapping. The {@code $lt} condition of the
+ * configured threshold and the {@code $inc} are built once; the update of the configured window only changes
+ * when its {@code $setOnInsert} expiration moves to the next second, so it is shared by every check within
+ * that second. Keys with a policy of their own build their condition and update per check. Results are projected to
+ * {@code expirationTime} and kept as raw BSON: an allowed check decodes nothing and builds no entity, and a
+ * denied one decodes only the expiration, with {@link ExpirationTimeDecoder}.
+ * <p>
+ * Like {@link RateLimiterService}, the filter only matches windows that have not ended, to the second, and a
+ * check that collides with an ended window removes it and starts a new one instead of waiting for the TTL index.
+ */
+@Service
+@ConditionalOnProperty(name = "rate.limiter.strategy", havingValue = "native")
+public class NativeRateLimitStrategy implements RateLimitStrategy {
+
+    private static final RateLimiterResponse ALLOWED = new RateLimiterResponse(true, null);
+    private static final ExpirationTimeDecoder EXPIRATION_TIME_DECODER = new ExpirationTimeDecoder();
+    private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+    private static final BsonDocument INC_COUNTER = new BsonDocument("counter", new BsonInt32(1));
+    private static final BsonDocument EXPIRATION_TIME_ONLY = new BsonDocument("_id", new BsonInt32(0))
+            .append(EXPIRATION_TIME, new BsonInt32(1));
+    private static final FindOneAndUpdateOptions UPSERT_RETURNING_EXPIRATION = new FindOneAndUpdateOptions()
+            .upsert(true)
+            .returnDocument(ReturnDocument.AFTER)
+            .projection(EXPIRATION_TIME_ONLY);
+
+    private final MongoCollection<RawBsonDocument> collection;
+    private final int threshold;
+    private final int expirationMinutes;
+    private final BsonDocument belowThreshold;
+    private volatile PerSecond cachedUpdate = new PerSecond(Long.MIN_VALUE, null);
+    private volatile PerSecond cachedNotEnded = new PerSecond(Long.MIN_VALUE, null);
+
+    public NativeRateLimitStrategy(MongoTemplate mongoTemplate,
+                                   @Value("${rate.limiter.threshold}") int threshold,
+                                   @Value("${rate.limiter.expiration.minutes}") int expirationMinutes) {
+        MongoCollection<Document> rateLimiters = mongoTemplate.getCollection(mongoTemplate.getCollectionName(RateLimiter.class));
+        this.collection = rateLimiters.withDocumentClass(RawBsonDocument.class);
+        this.threshold = threshold;
+        this.expirationMinutes = expirationMinutes;
+        this.belowThreshold = new BsonDocument("$lt", new BsonInt32(threshold));
+    }
+
+    /**
+     * Increments the user's counter unless it already reached the threshold, reading the window's
+     * expiration only when the check is denied.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param policy the limit applying to the user ID
+     * @return a {@code RateLimiterResponse} indicating whether the request is allowed
+     */
+    @Override
+    public RateLimiterResponse checkRateLimit(String userId, Policy policy) {
+        BsonString id = new BsonString(userId);
+        int maxRetries = 3;
+        for (int attempt = 1; ; attempt++) {
+            long nowSeconds = System.currentTimeMillis() / 1000;
+            try {
+                if (collection.findOneAndUpdate(filter(id, nowSeconds, policy), update(nowSeconds, policy), UPSERT_RETURNING_EXPIRATION) == null) {
+                    throw new IllegalStateException("Failed to insert or update rate limiter document.");
+                }
+                return ALLOWED;
+            } catch (MongoServerException e) {
+                if (ErrorCategory.fromErrorCode(e.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+                // The counter reached the threshold, unless the document vanished since the upsert or its window ended
+                RawBsonDocument existing = collection.find(new BsonDocument("_id", id))
+                        .projection(EXPIRATION_TIME_ONLY)
+                        .first();
+                if (existing != null) {
+                    Instant expirationTime = expirationTime(existing);
+                    if (expirationTime == null
+                            || expirationTime.plusSeconds(TTL_MONITOR_INTERVAL_SECONDS).toEpochMilli() > System.currentTimeMillis()) {
+                        return new RateLimiterResponse(false, expirationTime);
+                    }
+                    // The TTL index has not removed the document yet, so the check starts a new window itself
+                    collection.deleteOne(new BsonDocument("_id", id)
+                            .append(EXPIRATION_TIME, new BsonDateTime(expirationTime.toEpochMilli())));
+                    continue;
+                }
+                if (attempt >= maxRetries) {
+                    return new RateLimiterResponse(false, Instant.now().plusSeconds(policy.windowMinutes() * 60L));
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the expiration of a projected {@code rateLimiter} document.
+     *
+     * @param document the document, projected to {@code expirationTime}
+     * @return the expiration, or {@code null} if the document has none
+     */
+    static Instant expirationTime(RawBsonDocument document) {
+        return EXPIRATION_TIME_DECODER.decode(new BsonBinaryReader(document.getByteBuffer().asNIO()), DECODER_CONTEXT);
+    }
+
+    /**
+     * Builds the filter matching the user's document while its counter is below the threshold and its window
+     * has not ended. The condition on the window is built only on the first check of each second.
+     *
+     * @param id the user ID as a BSON value
+     * @param nowSeconds the current time in epoch seconds
+     * @param policy the limit applying to the user ID
+     * @return the filter
+     */
+    BsonDocument filter(BsonString id, long nowSeconds, Policy policy) {
+        BsonDocument condition = policy.threshold() == threshold
+                ? belowThreshold
+                : new BsonDocument("$lt", new BsonInt32(policy.threshold()));
+        PerSecond notEnded = cachedNotEnded;
+        if (notEnded.second != nowSeconds) {
+            notEnded = new PerSecond(nowSeconds,
+                    new BsonDocument("$gt", new BsonDateTime((nowSeconds - TTL_MONITOR_INTERVAL_SECONDS) * 1000)));
+            cachedNotEnded = notEnded;
+        }
+        return new BsonDocument("_id", id).append("counter", condition).append(EXPIRATION_TIME, notEnded.document);
+    }
+
+    /**
+     * Returns the update for checks made within the given second. The update of the configured window is
+     * built only on the first check of that second; other windows are built on every check.
+     *
+     * @param nowSeconds the current time in epoch seconds
+     * @param policy the limit applying to the user ID
+     * @return the {@code $inc} and {@code $setOnInsert} update
+     */
+    BsonDocument update(long nowSeconds, Policy policy) {
+        if (policy.windowMinutes() != expirationMinutes) {
+            return buildUpdate(nowSeconds, policy.windowMinutes());
+        }
+        PerSecond cached = cachedUpdate;
+        if (cached.second != nowSeconds) {
+            cached = new PerSecond(nowSeconds, buildUpdate(nowSeconds, expirationMinutes));
+            cachedUpdate = cached;
+        }
+        return cached.document;
+    }
+
+    private static BsonDocument buildUpdate(long nowSeconds, int windowMinutes) {
+        long expirationSeconds = nowSeconds + windowMinutes * 60L - 60L;
+        BsonDocument setOnInsert = new BsonDocument(EXPIRATION_TIME, new BsonDateTime(expirationSeconds * 1000));
+        return new BsonDocument("$inc", INC_COUNTER).append("$setOnInsert", setOnInsert);
+    }
+
+    /**
+     * Update, or filter condition, shared by all checks within one second. It is never modified once published.
+     */
+    private record PerSecond(long second, BsonDocument document) {
+    }
+}
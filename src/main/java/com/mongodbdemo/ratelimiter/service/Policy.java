@@ -0,0 +1,15 @@
+package com.mongodbdemo.ratelimiter.service;
+
+/**
+ * Limit resolved for a key from the policy store.
+ *
+ * @param threshold the number of requests allowed per window
+ * @param windowMinutes the length of the window in minutes
+ * @param fallback how checks are answered while MongoDB is unavailable, or {@code null} for {@code rate.limiter.fallback.mode}
+ */
+public record Policy(int threshold, int windowMinutes, FallbackMode fallback) {
+
+    public Policy(int threshold, int windowMinutes) {
+        this(threshold, windowMinutes, null);
+    }
+}
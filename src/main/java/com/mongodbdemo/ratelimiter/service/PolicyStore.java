@@ -0,0 +1,72 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.entity.LimitPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Per-key limits stored in the {@code limitPolicies} collection, enabled through
+ * {@code rate.limiter.policies.enabled}. The collection is polled every
+ * {@code rate.limiter.policies.refresh.millis} and compiled into a {@link PolicyTable} that replaces the
+ * current one, so checks look policies up in memory only. Keys without a matching policy, and all keys
+ * until the first load completes, use the configured defaults. Policies with a threshold or window below 1
+ * are logged and ignored.
+ */
+@Service
+@ConditionalOnProperty(name = "rate.limiter.policies.enabled", havingValue = "true")
+public class PolicyStore {
+
+    private static final Logger log = LoggerFactory.getLogger(PolicyStore.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    private volatile List<LimitPolicy> loaded = List.of();
+    private volatile PolicyTable table = PolicyTable.EMPTY;
+
+    public PolicyStore(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Finds the policy of a key in the last loaded table.
+     *
+     * @param key the key being checked
+     * @return the policy of the exact pattern or longest prefix matching the key, or {@code null} if none does
+     */
+    public Policy lookup(String key) {
+        return table.lookup(key);
+    }
+
+    /**
+     * Reads all policies and compiles them into a new table when they differ from the last load.
+     * A failed read keeps the current table.
+     */
+    @Scheduled(fixedDelayString = "${rate.limiter.policies.refresh.millis:5000}")
+    public void reload() {
+        List<LimitPolicy> policies;
+        try {
+            policies = mongoTemplate.findAll(LimitPolicy.class);
+        } catch (DataAccessException e) {
+            log.warn("Failed to reload limit policies, keeping {} loaded policies", table.size(), e);
+            return;
+        }
+        if (!policies.equals(loaded)) {
+            for (LimitPolicy policy : policies) {
+                if (!PolicyTable.isValid(policy)) {
+                    log.warn("Ignoring limit policy '{}' with threshold {} per {} minutes",
+                            policy.getPattern(), policy.getThreshold(), policy.getWindowMinutes());
+                }
+            }
+            table = new PolicyTable(policies);
+            loaded = policies;
+            log.info("Loaded {} limit policies", table.size());
+        }
+    }
+}
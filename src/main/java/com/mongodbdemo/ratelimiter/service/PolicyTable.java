@@ -0,0 +1,139 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.entity.LimitPolicy;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Limit policies compiled for lookup on the check path: exact patterns in a hash map and prefix
+ * patterns in a character trie. A lookup walks the key once without allocating. An exact pattern
+ * wins over any prefix, and a longer prefix wins over a shorter one. Policies with a threshold or window
+ * below 1 are left out, so their keys fall back to a broader pattern or the configured defaults.
+ * <p>
+ * A table is never modified after construction; reloads build a new one.
+ */
+final class PolicyTable {
+
+    static final PolicyTable EMPTY = new PolicyTable(List.of());
+
+    private static final char WILDCARD = '*';
+
+    private final Map<String, Policy> exact = new HashMap<>();
+    private final Node root = new Node();
+    private final int size;
+
+    PolicyTable(List<LimitPolicy> policies) {
+        int accepted = 0;
+        for (LimitPolicy limitPolicy : policies) {
+            if (!isValid(limitPolicy)) {
+                continue;
+            }
+            accepted++;
+            String pattern = limitPolicy.getPattern();
+            Policy policy = new Policy(limitPolicy.getThreshold(), limitPolicy.getWindowMinutes(),
+                    fallbackMode(limitPolicy.getFallback()));
+            if (pattern.isEmpty() || pattern.charAt(pattern.length() - 1) != WILDCARD) {
+                exact.put(pattern, policy);
+                continue;
+            }
+            Node node = root;
+            for (int i = 0; i < pattern.length() - 1; i++) {
+                node = node.childOrAdd(pattern.charAt(i));
+            }
+            node.policy = policy;
+        }
+        this.size = accepted;
+    }
+
+    /**
+     * Returns whether a policy can be enforced: it needs a pattern, a threshold of at least 1 and a
+     * window of at least one minute.
+     *
+     * @param limitPolicy the stored policy
+     * @return {@code true} if the policy is compiled into tables
+     */
+    static boolean isValid(LimitPolicy limitPolicy) {
+        return limitPolicy.getPattern() != null && limitPolicy.getThreshold() >= 1 && limitPolicy.getWindowMinutes() >= 1;
+    }
+
+    /**
+     * Finds the policy of a key.
+     *
+     * @param key the key being checked
+     * @return the policy of the exact pattern or longest prefix matching the key, or {@code null} if none does
+     */
+    Policy lookup(String key) {
+        Policy policy = exact.get(key);
+        if (policy != null) {
+            return policy;
+        }
+        Node node = root;
+        Policy longest = root.policy;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.child(key.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.policy != null) {
+                longest = node.policy;
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Returns the number of policies compiled into the table.
+     */
+    int size() {
+        return size;
+    }
+
+    private static FallbackMode fallbackMode(String fallback) {
+        if (fallback == null) {
+            return null;
+        }
+        for (FallbackMode mode : FallbackMode.values()) {
+            if (mode.name().equalsIgnoreCase(fallback)) {
+                return mode;
+            }
+        }
+        return null; // Unknown modes get the configured default rather than failing the whole reload
+    }
+
+    /**
+     * Trie node with its children sorted by label for binary search.
+     */
+    private static final class Node {
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+        private Policy policy;
+
+        Node child(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node childOrAdd(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertAt = -index - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(labels, insertAt, newLabels, insertAt + 1, labels.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            Node child = new Node();
+            newLabels[insertAt] = label;
+            newChildren[insertAt] = child;
+            labels = newLabels;
+            children = newChildren;
+            return child;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Strategy used by {@link RateLimiterService} to reach a rate limit verdict for a user ID.
+ * The active strategy is chosen through the {@code rate.limiter.strategy} property; when no
+ * strategy bean is present the service falls back to its built-in fixed-window counter.
+ * <p>
+ * The service resolves the limit of each user ID, from the {@link PolicyStore} or the configured
+ * threshold and window, and passes it with every check.
+ */
+public interface RateLimitStrategy {
+
+    /**
+     * Checks and consumes one permit for the given user ID.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param policy the limit applying to the user ID
+     * @return a {@code RateLimiterResponse} indicating whether the request is allowed
+     */
+    RateLimiterResponse checkRateLimit(String userId, Policy policy);
+
+    /**
+     * Checks and consumes {@code cost} permits for the given user ID at once, or none if fewer remain.
+     * Only strategies that {@linkplain #supportsCost() support costs} accept a cost above 1; the
+     * service never passes a cost above the policy's threshold.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param policy the limit applying to the user ID
+     * @param cost the number of permits the request consumes, at least {@code 1}
+     * @return a {@code RateLimiterResponse} indicating whether the request is allowed
+     * @throws UnsupportedOperationException if the cost is above 1 and the strategy cannot charge it
+     */
+    default RateLimiterResponse checkRateLimit(String userId, Policy policy, int cost) {
+        if (cost != 1) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot charge a cost above 1");
+        }
+        return checkRateLimit(userId, policy);
+    }
+
+    /**
+     * Returns whether {@link #checkRateLimit(String, Policy, int)} can charge a cost above 1. Strategies
+     * that hand out or count permits one at a time away from the shared counter do not.
+     *
+     * @return {@code true} if weighted checks are supported
+     */
+    default boolean supportsCost() {
+        return false;
+    }
+
+    /**
+     * Checks and consumes one permit for each entry of the given user IDs. A user ID listed more
+     * than once consumes one permit per occurrence. Strategies without a batched round-trip
+     * check each entry in turn.
+     *
+     * @param userIds the IDs of the users for whom the rate limit is being checked
+     * @param policies the limit applying to each user ID, in the same order as {@code userIds}
+     * @return the responses in the same order as {@code userIds}
+     */
+    default List<RateLimiterResponse> checkRateLimits(List<String> userIds, List<Policy> policies) {
+        List<RateLimiterResponse> responses = new ArrayList<>(userIds.size());
+        for (int i = 0; i < userIds.size(); i++) {
+            responses.add(checkRateLimit(userIds.get(i), policies.get(i)));
+        }
+        return responses;
+    }
+}
@@ -2,9 +2,14 @@ package com.mongodbdemo.ratelimiter.service;
 
 import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
 import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import com.mongodbdemo.ratelimiter.metrics.RateLimiterMetrics;
+import com.mongodb.bulk.BulkWriteError;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
@@ -13,6 +18,16 @@ import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.TTL_MONITOR_INTERVAL_SECONDS;
 
 /**
  * Service class for managing rate limiting functionality.
@@ -21,51 +36,434 @@ import java.time.Instant;
 @Service
 public class RateLimiterService {
 
+    private static final int DUPLICATE_KEY_ERROR_CODE = 11000;
+
     private final MongoTemplate mongoTemplate;
 
+    private RateLimitStrategy rateLimitStrategy;
+
+    private RateLimiterMetrics metrics = RateLimiterMetrics.noop();
+
+    private DenyCache denyCache;
+
+    private HotKeySharding hotKeySharding;
+
+    private PolicyStore policyStore;
+
+    private DeadlineGuard deadlineGuard;
+
+    private HeavyHitters heavyHitters;
+
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer();
+
     @Value("${rate.limiter.threshold}")
     private int threshold;
 
     @Value("${rate.limiter.expiration.minutes}")
     private int expirationMinutes;
 
+    @Value("${rate.limiter.coalescing.enabled:false}")
+    private boolean coalescingEnabled;
+
     public RateLimiterService(MongoTemplate mongoTemplate) {
         this.mongoTemplate = mongoTemplate;
     }
 
+    /**
+     * Sets the strategy configured through {@code rate.limiter.strategy}. When none is set,
+     * the fixed-window counter implemented by this service is used.
+     *
+     * @param rateLimitStrategy the strategy to delegate rate limit checks to
+     */
+    @Autowired(required = false)
+    void setRateLimitStrategy(RateLimitStrategy rateLimitStrategy) {
+        this.rateLimitStrategy = rateLimitStrategy;
+    }
+
+    /**
+     * Sets the meters recorded on the check path. Without them nothing is recorded.
+     *
+     * @param metrics the rate limiter meters
+     */
+    @Autowired(required = false)
+    void setMetrics(RateLimiterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the cache of users known to be over their limit, enabled through
+     * {@code rate.limiter.deny-cache.enabled}. Without it every check reaches the strategy.
+     *
+     * @param denyCache the cache of recent denials
+     */
+    @Autowired(required = false)
+    void setDenyCache(DenyCache denyCache) {
+        this.denyCache = denyCache;
+    }
+
+    /**
+     * Sets the sharded counters for hot keys, enabled through {@code rate.limiter.sharding.enabled}.
+     * Without them every key of the fixed-window counter is a single document.
+     *
+     * @param hotKeySharding the sharded counters for hot keys
+     */
+    @Autowired(required = false)
+    void setHotKeySharding(HotKeySharding hotKeySharding) {
+        this.hotKeySharding = hotKeySharding;
+    }
+
+    /**
+     * Sets the per-key limits, enabled through {@code rate.limiter.policies.enabled}. Without them every
+     * key of the fixed-window counter gets {@code rate.limiter.threshold} per {@code rate.limiter.expiration.minutes}.
+     *
+     * @param policyStore the per-key limit policies
+     */
+    @Autowired(required = false)
+    void setPolicyStore(PolicyStore policyStore) {
+        this.policyStore = policyStore;
+    }
+
+    /**
+     * Sets the deadline and fallback of single checks, enabled through {@code rate.limiter.deadline.enabled}.
+     * Without it a check takes as long as MongoDB and the retries take.
+     *
+     * @param deadlineGuard the deadline and fallback of single checks
+     */
+    @Autowired(required = false)
+    void setDeadlineGuard(DeadlineGuard deadlineGuard) {
+        this.deadlineGuard = deadlineGuard;
+    }
+
+    /**
+     * Sets the sketch of the heaviest keys, enabled through {@code rate.limiter.heavy-hitters.enabled}.
+     * Without it checks are not tracked per key.
+     *
+     * @param heavyHitters the sketch of the heaviest keys
+     */
+    @Autowired(required = false)
+    void setHeavyHitters(HeavyHitters heavyHitters) {
+        this.heavyHitters = heavyHitters;
+    }
+
     public RateLimiterResponse checkRateLimit(String userId) {
+        return check(userId, null);
+    }
+
+    /**
+     * Checks and consumes one permit for a key with a limit of its own, such as one set through
+     * {@code @RateLimited}. The limit applies per {@code rate.limiter.expiration.minutes} and is enforced by
+     * the fixed-window counter whatever strategy is configured.
+     *
+     * @param key the key being checked
+     * @param limit the number of requests allowed per window for the key
+     * @return a {@code RateLimiterResponse} indicating whether the request is allowed
+     */
+    public RateLimiterResponse checkRateLimit(String key, int limit) {
+        return check(key, new Policy(limit, expirationMinutes));
+    }
+
+    /**
+     * Checks and consumes {@code cost} permits of the user's limit in one round-trip, for requests that
+     * are more expensive than others. The whole cost is consumed only if that many permits remain, so a
+     * request that does not fit is denied without consuming any; cheaper requests may still be allowed in
+     * the same window. A cost above the limit is always denied.
+     * <p>
+     * Weighted checks go to the configured strategy, or to the fixed-window counter when there is none,
+     * charging a single shard of a sharded hot key, and are not coalesced. Strategies that cannot charge a
+     * cost are rejected up front, see {@link #supportsWeightedChecks()}.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param cost the number of permits the request consumes, at least {@code 1}
+     * @return a {@code RateLimiterResponse} indicating whether the request is allowed
+     * @throws UnsupportedOperationException if the cost is above 1 and the strategy cannot charge it
+     */
+    public RateLimiterResponse checkWeightedRateLimit(String userId, int cost) {
+        if (cost < 1) {
+            throw new IllegalArgumentException("Cost must be at least 1, got " + cost);
+        }
+        if (cost > 1 && !supportsWeightedChecks()) {
+            throw new UnsupportedOperationException("Strategy " + rateLimitStrategy.getClass().getSimpleName()
+                    + " cannot charge a cost above 1");
+        }
+        Policy policy = policyFor(userId);
+        if (cost > policy.threshold()) {
+            // Can never fit, and not cached since cheaper requests of the user still may
+            RateLimiterResponse response = new RateLimiterResponse(false, Instant.now().plusSeconds(policy.windowMinutes() * 60L));
+            recordVerdict(userId, response);
+            return response;
+        }
+        RateLimiterResponse response = denyCache != null ? denyCache.lookup(userId) : null;
+        if (response == null) {
+            if (deadlineGuard != null) {
+                response = deadlineGuard.check(userId, policy, cost, () -> charge(userId, policy, cost));
+            } else {
+                response = charge(userId, policy, cost);
+            }
+            if (denyCache != null) {
+                denyCache.record(userId, response);
+            }
+        }
+        recordVerdict(userId, response);
+        return response;
+    }
+
+    /**
+     * Returns whether {@link #checkWeightedRateLimit} can charge a cost above 1: always with the built-in
+     * fixed-window counter, and otherwise when the configured strategy supports costs.
+     *
+     * @return {@code true} if weighted checks are supported
+     */
+    public boolean supportsWeightedChecks() {
+        return rateLimitStrategy == null || rateLimitStrategy.supportsCost();
+    }
+
+    private RateLimiterResponse charge(String userId, Policy policy, int cost) {
+        if (rateLimitStrategy != null) {
+            return rateLimitStrategy.checkRateLimit(userId, policy, cost);
+        }
+        // The base document of a sharded key must stay unused until it is demoted
+        if (hotKeySharding != null && hotKeySharding.isSharded(userId)) {
+            return hotKeySharding.checkRateLimit(userId, policy, cost);
+        }
+        return tryRateLimitCheck(userId, policy, cost, 3);
+    }
+
+    private RateLimiterResponse check(String userId, Policy policy) {
+        RateLimiterResponse response = denyCache != null ? denyCache.lookup(userId) : null;
+        if (response == null) {
+            Policy resolved = policy != null ? policy : policyFor(userId);
+            if (deadlineGuard != null) {
+                response = deadlineGuard.check(userId, resolved,
+                        () -> policy != null ? evaluate(userId, policy) : dispatch(userId, resolved));
+            } else {
+                response = policy != null ? evaluate(userId, policy) : dispatch(userId, resolved);
+            }
+            if (denyCache != null) {
+                denyCache.record(userId, response);
+            }
+        }
+        recordVerdict(userId, response);
+        return response;
+    }
+
+    private void recordVerdict(String userId, RateLimiterResponse response) {
+        metrics.recordVerdict(response.isAllowed());
+        if (heavyHitters != null) {
+            heavyHitters.record(userId, response.isAllowed());
+        }
+    }
+
+    /**
+     * Checks the user ID under its resolved policy with the configured strategy, its shards when it is a
+     * hot key, or the fixed-window counter otherwise.
+     */
+    private RateLimiterResponse dispatch(String userId, Policy policy) {
+        if (rateLimitStrategy != null) {
+            return rateLimitStrategy.checkRateLimit(userId, policy);
+        }
+        if (hotKeySharding != null && hotKeySharding.isSharded(userId)) {
+            return hotKeySharding.checkRateLimit(userId, policy);
+        }
+        return evaluate(userId, policy);
+    }
+
+    private RateLimiterResponse evaluate(String userId, Policy policy) {
+        int maxRetries = 3;
+        if (coalescingEnabled) {
+            return requestCoalescer.check(userId, permits -> tryCoalescedIncrement(userId, permits, policy, maxRetries));
+        }
+        return tryRateLimitCheck(userId, policy, 1, maxRetries);
+    }
+
+    /**
+     * Checks the rate limit for many user IDs with one bulk write and one read per attempt.
+     * Occurrences of the same user ID are merged into a single {@code $inc} and the resulting
+     * counter is split back into verdicts in request order. User IDs whose upsert collides with a
+     * concurrently created document are retried on their own, with the same backoff as single checks.
+     *
+     * @param userIds the IDs of the users for whom the rate limit is being checked
+     * @return the responses in the same order as {@code userIds}
+     */
+    public List<RateLimiterResponse> checkRateLimits(List<String> userIds) {
+        List<RateLimiterResponse> responses = new ArrayList<>(userIds.size());
+        List<String> uncachedUserIds = new ArrayList<>(userIds.size());
+        for (String userId : userIds) {
+            RateLimiterResponse cached = denyCache != null ? denyCache.lookup(userId) : null;
+            responses.add(cached);
+            if (cached == null) {
+                uncachedUserIds.add(userId);
+            }
+        }
+
+        if (!uncachedUserIds.isEmpty()) {
+            List<RateLimiterResponse> evaluated = rateLimitStrategy != null
+                    ? rateLimitStrategy.checkRateLimits(uncachedUserIds, uncachedUserIds.stream().map(this::policyFor).toList())
+                    : checkRateLimitsInBulk(uncachedUserIds);
+            int next = 0;
+            for (int i = 0; i < responses.size(); i++) {
+                if (responses.get(i) == null) {
+                    RateLimiterResponse response = evaluated.get(next++);
+                    responses.set(i, response);
+                    if (denyCache != null) {
+                        denyCache.record(userIds.get(i), response);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < responses.size(); i++) {
+            recordVerdict(userIds.get(i), responses.get(i));
+        }
+        return responses;
+    }
+
+    private List<RateLimiterResponse> checkRateLimitsInBulk(List<String> userIds) {
+        Map<String, Integer> pending = new LinkedHashMap<>();
+        Map<String, BatchVerdict> verdicts = new HashMap<>();
+        for (String userId : userIds) {
+            if (hotKeySharding != null && hotKeySharding.isSharded(userId)) {
+                verdicts.computeIfAbsent(userId, key -> new BatchVerdict()).add(hotKeySharding.checkRateLimit(userId, policyFor(userId)));
+            } else {
+                pending.merge(userId, 1, Integer::sum);
+            }
+        }
+
         int maxRetries = 3;
-        return tryRateLimitCheck(userId, maxRetries);
+        int retryCount = 0;
+        int backoff = 100; // Initial backoff in milliseconds
+        while (!pending.isEmpty()) {
+            attemptBatchIncrement(pending, verdicts);
+            if (pending.isEmpty()) {
+                break;
+            }
+            retryCount++;
+            if (retryCount >= maxRetries) {
+                pending.keySet().forEach(userId -> {
+                    Policy policy = policyFor(userId);
+                    verdicts.put(userId, new BatchVerdict(0, Instant.now().plusSeconds(policy.windowMinutes() * 60L),
+                            policy.threshold(), policy.threshold()));
+                });
+                break;
+            }
+            sleepWithBackoff(jitteredBackoff(backoff));
+            backoff *= 2;  // Exponential backoff
+        }
+
+        List<RateLimiterResponse> responses = new ArrayList<>(userIds.size());
+        for (String userId : userIds) {
+            responses.add(verdicts.get(userId).next());
+        }
+        return responses;
+    }
+
+    /**
+     * Applies one bulk upsert for all pending user IDs and reads the resulting documents back.
+     * Every user ID that reached a verdict is moved from {@code pending} to {@code verdicts};
+     * user IDs whose upsert hit a duplicate key without a surviving document stay pending.
+     *
+     * @param pending the number of permits requested per user ID still awaiting a verdict
+     * @param verdicts the verdicts reached so far, keyed by user ID
+     */
+    void attemptBatchIncrement(Map<String, Integer> pending, Map<String, BatchVerdict> verdicts) {
+        List<String> keys = new ArrayList<>(pending.keySet());
+        Map<String, Policy> policies = new HashMap<>();
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RateLimiter.class);
+        for (String userId : keys) {
+            Policy policy = policyFor(userId);
+            policies.put(userId, policy);
+            bulkOperations.upsert(buildQuery(userId, policy), buildUpdate(userId, calculateExpirationTime(policy), pending.get(userId)));
+        }
+
+        Set<String> duplicateKeys = new HashSet<>();
+        try {
+            bulkOperations.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY_ERROR_CODE) {
+                    throw e;
+                }
+                duplicateKeys.add(keys.get(error.getIndex()));
+            }
+        }
+
+        Map<String, RateLimiter> documents = new HashMap<>();
+        for (RateLimiter rateLimiter : mongoTemplate.find(new Query(Criteria.where("userId").in(keys)), RateLimiter.class)) {
+            documents.put(rateLimiter.getUserId(), rateLimiter);
+        }
+
+        Instant now = Instant.now();
+        List<String> ended = new ArrayList<>();
+        for (String userId : keys) {
+            int requested = pending.get(userId);
+            RateLimiter rateLimiter = documents.get(userId);
+            int threshold = policies.get(userId).threshold();
+            if (duplicateKeys.contains(userId)) {
+                metrics.recordDuplicateKeyFallback(rateLimiter != null);
+                if (rateLimiter == null) {
+                    if (hotKeySharding != null) {
+                        hotKeySharding.recordContention(userId);
+                    }
+                    continue; // Retry otherwise
+                }
+                if (EndedWindows.hasEnded(rateLimiter, now)) {
+                    ended.add(userId);
+                    continue; // Retry in a new window
+                }
+                verdicts.put(userId, new BatchVerdict(0, rateLimiter.getExpirationTime(), threshold, threshold));
+            } else if (rateLimiter == null) {
+                // The window expired right after the increment, so none of the permits were contended by other
+                // callers, but no more than the threshold fit in it
+                verdicts.put(userId, new BatchVerdict(Math.min(requested, threshold),
+                        calculateExpirationTime(policies.get(userId)), threshold, 0));
+            } else {
+                // Increments from other callers between the write and the read can only lower this value
+                int counted = rateLimiter.getCounter() - requested;
+                int allowed = Math.max(0, Math.min(requested, threshold - counted));
+                verdicts.put(userId, new BatchVerdict(allowed, rateLimiter.getExpirationTime(), threshold, counted));
+            }
+            pending.remove(userId);
+        }
+        if (!ended.isEmpty()) {
+            EndedWindows.removeEnded(mongoTemplate, ended, now);
+        }
     }
 
     /**
      * Attempts to check and update the rate limit counter in MongoDB.
      * This is wrapped in retry logic for better concurrency handling.
      *
+     * The returned response reports the counter read back from the updated document.
+     *
      * @param query the query to find the rate limiter document
      * @param update the update to apply to the rate limiter document
+     * @param policy the limit applying to the document
      * @return a {@code RateLimiterResponse} indicating whether the operation succeeded or rate limit is exceeded
      */
-    RateLimiterResponse attemptRateLimitIncrement(Query query, Update update) {
+    RateLimiterResponse attemptRateLimitIncrement(Query query, Update update, Policy policy) {
         try {
-            RateLimiter rateLimiter = mongoTemplate.findAndModify(
-                    query,
-                    update,
-                    new FindAndModifyOptions().returnNew(true).upsert(true),
-                    RateLimiter.class
-            );
+            RateLimiter rateLimiter = findAndModify(query, update);
             if (rateLimiter == null) {
                 throw new IllegalStateException("Failed to insert or update rate limiter document.");
             }
-            return new RateLimiterResponse(true, null);
+            return new RateLimiterResponse(true, null, policy.threshold(),
+                    Math.max(0, policy.threshold() - rateLimiter.getCounter()), windowEnd(rateLimiter.getExpirationTime()));
 
         } catch (DuplicateKeyException e) {
             Object userId = query.getQueryObject().get("userId");
             // Handle DuplicateKeyException based on the presence of the document
             // If document exists, return failure response
             RateLimiter existingRateLimiter = mongoTemplate.findById(userId, RateLimiter.class);
+            metrics.recordDuplicateKeyFallback(existingRateLimiter != null);
+            Instant now = Instant.now();
+            if (existingRateLimiter != null && EndedWindows.hasEnded(existingRateLimiter, now)) {
+                // The TTL index has not removed the document yet, so the check starts a new window itself
+                EndedWindows.removeEnded(mongoTemplate, List.of((String) userId), now);
+                return attemptRateLimitIncrement(query, update, policy);
+            }
             if (existingRateLimiter != null) {
-                return new RateLimiterResponse(false, existingRateLimiter.getExpirationTime());
+                // Permits are left when a weighted check did not fit
+                return new RateLimiterResponse(false, existingRateLimiter.getExpirationTime(), policy.threshold(),
+                        Math.max(0, policy.threshold() - existingRateLimiter.getCounter()),
+                        windowEnd(existingRateLimiter.getExpirationTime()));
             }
             throw e; // Retry otherwise
         } catch (OptimisticLockingFailureException e) {
@@ -74,63 +472,248 @@ public class RateLimiterService {
         }
     }
 
+    private RateLimiter findAndModify(Query query, Update update) {
+        long start = System.nanoTime();
+        try {
+            RateLimiter rateLimiter = mongoTemplate.findAndModify(
+                    query,
+                    update,
+                    new FindAndModifyOptions().returnNew(true).upsert(true),
+                    RateLimiter.class
+            );
+            metrics.recordFindAndModify(start, null);
+            return rateLimiter;
+        } catch (RuntimeException e) {
+            metrics.recordFindAndModify(start, e);
+            throw e;
+        }
+    }
+
     /**
      * Handles the retry logic with exponential backoff when encountering duplicate key or optimistic locking exceptions.
      *
      * @param userId the user ID for whom the rate limit is being checked
+     * @param policy the limit applying to the user ID
+     * @param cost the number of permits to consume, all or none
      * @param maxRetries the maximum number of retries allowed
      * @return a {@code RateLimiterResponse} indicating success or failure
      */
-    private RateLimiterResponse tryRateLimitCheck(String userId, int maxRetries) {
-        Instant expirationTime = calculateExpirationTime();
-        Query query = buildQuery(userId);
-        Update update = buildUpdate(userId, expirationTime);
+    private RateLimiterResponse tryRateLimitCheck(String userId, Policy policy, int cost, int maxRetries) {
+        Instant expirationTime = calculateExpirationTime(policy);
+        Query query = buildQuery(userId, policy, cost);
+        Update update = buildUpdate(userId, expirationTime, cost);
 
         int retryCount = 0;
         int backoff = 100; // Initial backoff in milliseconds
 
         while (true) {
             try {
-                return attemptRateLimitIncrement(query, update);
+                return attemptRateLimitIncrement(query, update, policy);
             } catch (DuplicateKeyException | OptimisticLockingFailureException e) {
+                if (hotKeySharding != null) {
+                    hotKeySharding.recordContention(userId);
+                }
                 retryCount++;
                 if (retryCount >= maxRetries) {
-                    return new RateLimiterResponse(false, Instant.now().plusSeconds(expirationMinutes * 60L));
+                    return denied(Instant.now().plusSeconds(policy.windowMinutes() * 60L), policy);
                 }
+                metrics.recordRetry(e);
                 // Backoff before retrying
-                sleepWithBackoff(backoff);
+                sleepWithBackoff(jitteredBackoff(backoff));
                 backoff *= 2;  // Exponential backoff
             }
         }
     }
 
+    /**
+     * Increments the rate limit counter by the number of concurrent checks merged by the
+     * {@link RequestCoalescer}, with the same retry logic as a single check.
+     *
+     * @param userId the user ID for whom the rate limit is being checked
+     * @param permits the number of checks merged into this increment
+     * @param maxRetries the maximum number of retries allowed
+     * @return the number of allowed checks, and the window expiration for the denied ones
+     */
+    BatchVerdict tryCoalescedIncrement(String userId, int permits, int maxRetries) {
+        return tryCoalescedIncrement(userId, permits, policyFor(userId), maxRetries);
+    }
+
+    private BatchVerdict tryCoalescedIncrement(String userId, int permits, Policy policy, int maxRetries) {
+        Instant expirationTime = calculateExpirationTime(policy);
+        Query query = buildQuery(userId, policy);
+        Update update = buildUpdate(userId, expirationTime, permits);
+
+        int retryCount = 0;
+        int backoff = 100; // Initial backoff in milliseconds
+
+        while (true) {
+            RuntimeException failure;
+            try {
+                RateLimiter rateLimiter = findAndModify(query, update);
+                if (rateLimiter == null) {
+                    throw new IllegalStateException("Failed to insert or update rate limiter document.");
+                }
+                // Permits beyond the threshold were counted by the $inc but are denied
+                int counted = rateLimiter.getCounter() - permits;
+                int allowed = Math.max(0, Math.min(permits, policy.threshold() - counted));
+                return new BatchVerdict(allowed, rateLimiter.getExpirationTime(), policy.threshold(), counted);
+            } catch (DuplicateKeyException e) {
+                RateLimiter existingRateLimiter = mongoTemplate.findById(userId, RateLimiter.class);
+                metrics.recordDuplicateKeyFallback(existingRateLimiter != null);
+                Instant now = Instant.now();
+                if (existingRateLimiter != null && EndedWindows.hasEnded(existingRateLimiter, now)) {
+                    EndedWindows.removeEnded(mongoTemplate, List.of(userId), now);
+                    continue; // Retry in a new window
+                }
+                if (existingRateLimiter != null) {
+                    return new BatchVerdict(0, existingRateLimiter.getExpirationTime(), policy.threshold(), policy.threshold());
+                }
+                failure = e;
+            } catch (OptimisticLockingFailureException e) {
+                failure = e;
+            }
+            if (hotKeySharding != null) {
+                hotKeySharding.recordContention(userId);
+            }
+            retryCount++;
+            if (retryCount >= maxRetries) {
+                return new BatchVerdict(0, Instant.now().plusSeconds(policy.windowMinutes() * 60L), policy.threshold(), policy.threshold());
+            }
+            metrics.recordRetry(failure);
+            sleepWithBackoff(jitteredBackoff(backoff));
+            backoff *= 2;  // Exponential backoff
+        }
+    }
+
+    /**
+     * Spreads a backoff duration over its upper half so that callers contending on the same key
+     * do not retry in lockstep.
+     *
+     * @param backoff the nominal backoff duration in milliseconds
+     * @return a duration between {@code backoff / 2} and {@code backoff} milliseconds
+     */
+    int jitteredBackoff(int backoff) {
+        int half = backoff / 2;
+        return half + ThreadLocalRandom.current().nextInt(backoff - half + 1);
+    }
+
     /**
      * Introduces a delay with the specified backoff duration.
+     * Requests are served on virtual threads, so sleeping unmounts the caller from its carrier
+     * thread instead of holding a platform thread for the duration of the backoff.
      *
      * @param backoff the backoff duration in milliseconds
      */
     void sleepWithBackoff(int backoff) {
+        long start = System.nanoTime();
         try {
             Thread.sleep(backoff);
         } catch (InterruptedException interruptedException) {
             Thread.currentThread().interrupt();  // Restore interrupted status
+        } finally {
+            metrics.recordBackoff(start);
         }
     }
 
-    private Query buildQuery(String userId) {
+    /**
+     * Resolves the limit of a key from the policy store, falling back to the configured threshold and window.
+     *
+     * @param userId the user ID for whom the rate limit is being checked
+     * @return the limit applying to the user ID
+     */
+    private Policy policyFor(String userId) {
+        Policy policy = policyStore != null ? policyStore.lookup(userId) : null;
+        return policy != null ? policy : new Policy(threshold, expirationMinutes);
+    }
+
+    private Query buildQuery(String userId, Policy policy) {
+        return buildQuery(userId, policy, 1);
+    }
+
+    /**
+     * Matches the user's document only while {@code cost} more permits fit under the threshold and its window
+     * has not ended. When it does not match, the upsert's insert collides with the existing document, and the
+     * check is denied, or retried in a new window if the old one has ended.
+     */
+    private Query buildQuery(String userId, Policy policy, int cost) {
         return new Query(Criteria.where("userId").is(userId)
-                .andOperator(Criteria.where("counter").lt(threshold)));
+                .andOperator(Criteria.where("counter").lt(policy.threshold() - cost + 1), EndedWindows.notEnded(Instant.now())));
     }
 
-    private Update buildUpdate(String userId, Instant expirationTime) {
+    private Update buildUpdate(String userId, Instant expirationTime, int permits) {
         return new Update()
-                .inc("counter", 1)
+                .inc("counter", permits)
                 .setOnInsert("userId", userId)
                 .setOnInsert("expirationTime", expirationTime);
     }
 
-    private Instant calculateExpirationTime() {
+    private Instant calculateExpirationTime(Policy policy) {
         Instant now = Instant.now();
-        return now.plusSeconds(expirationMinutes * 60L - 60L);
+        return now.plusSeconds(policy.windowMinutes() * 60L - 60L);
+    }
+
+    /**
+     * Returns the end of the window of a counter document, which the TTL monitor may take up to a minute to remove.
+     */
+    private static Instant windowEnd(Instant expirationTime) {
+        return expirationTime.plusSeconds(TTL_MONITOR_INTERVAL_SECONDS);
+    }
+
+    private static RateLimiterResponse denied(Instant retryAfter, Policy policy) {
+        return new RateLimiterResponse(false, retryAfter, policy.threshold(), 0, windowEnd(retryAfter));
+    }
+
+    /**
+     * Verdict reached for one user ID of a batch, handed out to its occurrences in request order.
+     * When built from a counter document it also knows the limit and the count before the batch,
+     * so each occurrence reports the quota left after it.
+     */
+    static final class BatchVerdict {
+        private int allowedRemaining;
+        private Instant retryAfter;
+        private int limit = RateLimiterResponse.UNKNOWN;
+        private int counted;
+        private int position;
+
+        BatchVerdict() {
+        }
+
+        BatchVerdict(int allowed, Instant retryAfter) {
+            this.allowedRemaining = allowed;
+            this.retryAfter = retryAfter;
+        }
+
+        BatchVerdict(int allowed, Instant retryAfter, int limit, int counted) {
+            this(allowed, retryAfter);
+            this.limit = limit;
+            this.counted = counted;
+        }
+
+        void add(RateLimiterResponse response) {
+            if (response.isAllowed()) {
+                allowedRemaining++;
+            } else {
+                retryAfter = response.getRetryAfter();
+            }
+        }
+
+        /**
+         * Returns the response for the occurrence at the given position, without consuming it.
+         */
+        RateLimiterResponse at(int position) {
+            boolean allowed = position < allowedRemaining;
+            if (limit == RateLimiterResponse.UNKNOWN || retryAfter == null) {
+                return new RateLimiterResponse(allowed, allowed ? null : retryAfter);
+            }
+            int remaining = allowed ? Math.max(0, limit - (counted + position + 1)) : 0;
+            return new RateLimiterResponse(allowed, allowed ? null : retryAfter, limit, remaining, windowEnd(retryAfter));
+        }
+
+        /**
+         * Returns the response for the next occurrence in request order.
+         */
+        RateLimiterResponse next() {
+            return at(position++);
+        }
     }
 }
@@ -0,0 +1,76 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * Merges concurrent checks of the same key into one increment of as many permits.
+ * <p>
+ * The first check of a key leads a batch and the checks arriving after it join that batch in arrival
+ * order. A leader waits for the previous batch of its key to finish before closing its own, so at most
+ * one round-trip per key is in flight on this node and every check arriving during it is merged into the
+ * next one. A check for an idle key runs at once without waiting. Once the increment returns, the
+ * first {@code allowed} checks of the batch are allowed and the rest are denied.
+ */
+final class RequestCoalescer {
+
+    private final Map<String, Batch> open = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<RateLimiterService.BatchVerdict>> running = new ConcurrentHashMap<>();
+
+    /**
+     * Joins the open batch of the key, leading a new one if there is none, and waits for its verdict.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param increment applies an increment of the given number of permits and returns its verdict
+     * @return the response for this check's position in the batch
+     */
+    RateLimiterResponse check(String userId, IntFunction<RateLimiterService.BatchVerdict> increment) {
+        int[] position = new int[1];
+        Batch batch = open.compute(userId, (key, current) -> {
+            Batch joined = current != null ? current : new Batch();
+            position[0] = joined.size++;
+            return joined;
+        });
+        if (position[0] == 0) {
+            lead(userId, batch, increment);
+        }
+        try {
+            return batch.verdict.join().at(position[0]);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void lead(String userId, Batch batch, IntFunction<RateLimiterService.BatchVerdict> increment) {
+        CompletableFuture<RateLimiterService.BatchVerdict> previous = running.put(userId, batch.verdict);
+        if (previous != null) {
+            // Checks arriving meanwhile join this batch
+            previous.exceptionally(e -> null).join();
+        }
+        open.remove(userId, batch);
+        try {
+            batch.verdict.complete(increment.apply(batch.size));
+        } catch (RuntimeException e) {
+            batch.verdict.completeExceptionally(e);
+        } finally {
+            running.remove(userId, batch.verdict);
+        }
+    }
+
+    /**
+     * Checks of one key merged into a single increment. {@code size} only changes inside
+     * {@code open.compute}, and stops changing once the batch is removed from {@code open}.
+     */
+    private static final class Batch {
+        final CompletableFuture<RateLimiterService.BatchVerdict> verdict = new CompletableFuture<>();
+        volatile int size;
+    }
+}
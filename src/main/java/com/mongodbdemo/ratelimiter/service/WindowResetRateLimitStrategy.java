@@ -0,0 +1,131 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import com.mongodbdemo.ratelimiter.metrics.RateLimiterMetrics;
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.TTL_MONITOR_INTERVAL_SECONDS;
+
+/**
+ * Fixed-window counter that resets, increments and evaluates a window in one pipeline
+ * {@code findAndModify}, on the same {@code rateLimiter} documents as {@code fixed-window}.
+ * <p>
+ * The filter matches on {@code _id} only, so a document always matches, whether the user is over the
+ * limit or not, and concurrent upserts are retried by MongoDB itself: there is no duplicate-key path
+ * and no second round-trip. A window whose {@code expirationTime} has passed restarts at {@code now}
+ * inside the update, so {@code expirationTime} is the exact end of the window and the TTL index only
+ * removes documents of idle users.
+ * <p>
+ * A check with a cost adds it to the counter only if that many permits remain in the window. A cost
+ * above the threshold, including any cost under a threshold of 0, can never fit and is denied without
+ * a round-trip, even when it would be the first request of a window.
+ */
+@Service
+@ConditionalOnProperty(name = "rate.limiter.strategy", havingValue = "window-reset")
+public class WindowResetRateLimitStrategy implements RateLimitStrategy {
+
+    private final MongoTemplate mongoTemplate;
+    private final RateLimiterMetrics metrics;
+
+    public WindowResetRateLimitStrategy(MongoTemplate mongoTemplate, RateLimiterMetrics metrics) {
+        this.mongoTemplate = mongoTemplate;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Consumes one permit of the user's current window, starting a new window if the previous one
+     * has ended, and leaves the counter unchanged once it reaches the threshold.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param policy the limit applying to the user ID
+     * @return a {@code RateLimiterResponse} indicating whether the request is allowed
+     */
+    @Override
+    public RateLimiterResponse checkRateLimit(String userId, Policy policy) {
+        return checkRateLimit(userId, policy, 1);
+    }
+
+    /**
+     * Consumes {@code cost} permits of the user's current window if that many remain, starting a new
+     * window if the previous one has ended, and leaves the counter unchanged otherwise.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param policy the limit applying to the user ID
+     * @param cost the number of permits the request consumes
+     * @return a {@code RateLimiterResponse} indicating whether the request is allowed
+     */
+    @Override
+    public RateLimiterResponse checkRateLimit(String userId, Policy policy, int cost) {
+        long now = System.currentTimeMillis();
+        if (cost > policy.threshold()) {
+            return new RateLimiterResponse(false,
+                    Instant.ofEpochMilli(now + policy.windowMinutes() * 60_000L).minusSeconds(TTL_MONITOR_INTERVAL_SECONDS));
+        }
+        long start = System.nanoTime();
+        RateLimiter previous;
+        try {
+            // The previous state is returned so the verdict can be derived from the same inputs as the update
+            previous = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("userId").is(userId)),
+                    buildUpdate(now, policy, cost),
+                    new FindAndModifyOptions().returnNew(false).upsert(true),
+                    RateLimiter.class
+            );
+            metrics.recordFindAndModify(start, null);
+        } catch (RuntimeException e) {
+            metrics.recordFindAndModify(start, e);
+            throw e;
+        }
+
+        if (previous == null || previous.getExpirationTime() == null
+                || previous.getExpirationTime().toEpochMilli() <= now || previous.getCounter() <= policy.threshold() - cost) {
+            return new RateLimiterResponse(true, null);
+        }
+        // The window ends exactly at expirationTime; the offset is the one callers add back
+        return new RateLimiterResponse(false, previous.getExpirationTime().minusSeconds(TTL_MONITOR_INTERVAL_SECONDS));
+    }
+
+    @Override
+    public boolean supportsCost() {
+        return true;
+    }
+
+    /**
+     * Builds the pipeline update that sets {@code counter = cost} and {@code expirationTime = now + window}
+     * when the window has ended or the document is new, and otherwise adds {@code cost} to {@code counter}
+     * while that many permits remain below the threshold. A cost above the threshold starts a new window
+     * at {@code counter = 0}.
+     *
+     * @param now the current time in epoch milliseconds
+     * @param policy the limit applying to the document
+     * @param cost the number of permits the request consumes
+     * @return the aggregation pipeline update
+     */
+    AggregationUpdate buildUpdate(long now, Policy policy, int cost) {
+        Date nowDate = new Date(now);
+        // A missing expirationTime sorts before any date, so a new document starts a window
+        Document live = new Document("$gt", List.of("$expirationTime", nowDate));
+        int firstCount = cost <= policy.threshold() ? cost : 0;
+        Document increment = new Document("$cond", List.of(
+                new Document("$lte", List.of("$counter", policy.threshold() - cost)), new Document("$add", List.of("$counter", cost)), "$counter"));
+        Document set = new Document("$set", new Document()
+                .append("counter", new Document("$cond", List.of(live, increment, firstCount)))
+                .append("expirationTime", new Document("$cond", List.of(live, "$expirationTime",
+                        new Date(now + policy.windowMinutes() * 60_000L)))));
+        AggregationOperation stage = context -> set;
+        return AggregationUpdate.from(List.of(stage));
+    }
+}
@@ -0,0 +1,231 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.TTL_MONITOR_INTERVAL_SECONDS;
+
+/**
+ * Approximate rate limit strategy that never waits on MongoDB. Each node decides from its own view of a
+ * key's count, buffers the increments it allowed and writes them to the {@code rateLimiter} collection
+ * every {@code rate.limiter.write-behind.flush.millis} in one bulk upsert. The documents read back
+ * after each flush replace the node's view of the count.
+ * <p>
+ * A node holds at most {@code rate.limiter.write-behind.max-pending} unflushed permits per key and denies
+ * beyond that, so each other node can only be missing from this node's view the permits it allowed
+ * since its own last flush and the ones it flushed after this node's last refresh. A key therefore
+ * overshoots its threshold by at most about {@code 2 * max-pending} per other node, and its count in
+ * MongoDB lags by at most one flush interval.
+ */
+@Service
+@ConditionalOnProperty(name = "rate.limiter.strategy", havingValue = "write-behind")
+public class WriteBehindRateLimitStrategy implements RateLimitStrategy {
+
+    private static final RateLimiterResponse ALLOWED = new RateLimiterResponse(true, null);
+    private static final int DUPLICATE_KEY_ERROR_CODE = 11000;
+
+    private final MongoTemplate mongoTemplate;
+    private final Map<String, KeyView> views = new ConcurrentHashMap<>();
+    private final AtomicLong bufferedPermits = new AtomicLong();
+    private final Timer flushTimer;
+
+    @Value("${rate.limiter.write-behind.max-pending:10}")
+    private int maxPending;
+
+    @Value("${rate.limiter.write-behind.flush.millis:100}")
+    private long flushMillis;
+
+    public WriteBehindRateLimitStrategy(MongoTemplate mongoTemplate, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.flushTimer = Timer.builder("ratelimiter.writebehind.flush")
+                .description("Time spent writing buffered increments and reading back the counts")
+                .register(meterRegistry);
+        Gauge.builder("ratelimiter.writebehind.buffer.permits", bufferedPermits, AtomicLong::get)
+                .description("Permits allowed locally and not yet written to MongoDB")
+                .register(meterRegistry);
+        Gauge.builder("ratelimiter.writebehind.buffer.keys", views, Map::size)
+                .description("Keys with a local view of their count")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Allows the request when the last known count plus the unflushed permits of this node stay below
+     * the threshold, and buffers the permit.
+     *
+     * @param userId the ID of the user for whom the rate limit is being checked
+     * @param policy the limit applying to the user ID
+     * @return a {@code RateLimiterResponse} indicating whether the request is allowed
+     */
+    @Override
+    public RateLimiterResponse checkRateLimit(String userId, Policy policy) {
+        long now = System.currentTimeMillis();
+        KeyView view = views.computeIfAbsent(userId, key -> new KeyView(policy.windowMinutes()));
+        view.windowMinutes = policy.windowMinutes();
+        Window window = view.window.get();
+        if (window.endMillis() != 0 && now >= window.endMillis()) {
+            // The document is gone along with its count
+            view.window.compareAndSet(window, Window.UNKNOWN);
+            window = Window.UNKNOWN;
+        }
+
+        int pending;
+        do {
+            pending = view.pending.get();
+            if (pending >= maxPending) {
+                // Allowed again once the next flush has emptied the buffer
+                return new RateLimiterResponse(false, Instant.ofEpochMilli(now + flushMillis).minusSeconds(TTL_MONITOR_INTERVAL_SECONDS));
+            }
+            if (window.count() + pending >= policy.threshold()) {
+                long retryAt = window.endMillis() != 0 ? window.endMillis() : now + flushMillis;
+                return new RateLimiterResponse(false, Instant.ofEpochMilli(retryAt).minusSeconds(TTL_MONITOR_INTERVAL_SECONDS));
+            }
+        } while (!view.pending.compareAndSet(pending, pending + 1));
+        bufferedPermits.incrementAndGet();
+        return ALLOWED;
+    }
+
+    /**
+     * Writes the buffered permits of every key with one bulk upsert and refreshes the view of their
+     * counts from the written documents. Permits whose write failed stay buffered for the next flush.
+     */
+    @Scheduled(fixedDelayString = "${rate.limiter.write-behind.flush.millis:100}")
+    public void flush() {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        Map<String, Integer> drained = new LinkedHashMap<>();
+        Map<String, Integer> windowMinutes = new HashMap<>();
+        views.forEach((userId, view) -> {
+            int pending = view.pending.getAndSet(0);
+            if (pending > 0) {
+                drained.put(userId, pending);
+                windowMinutes.put(userId, view.windowMinutes);
+            } else if (now >= view.window.get().endMillis() + view.windowMinutes * 60_000L) {
+                // A check racing with this removal may lose its permit, which the overshoot bound absorbs
+                views.remove(userId, view);
+            }
+        });
+        if (drained.isEmpty()) {
+            return;
+        }
+        bufferedPermits.addAndGet(-drained.values().stream().mapToLong(Integer::longValue).sum());
+
+        BulkOperationException failure = null;
+        List<String> duplicateKeys = new ArrayList<>();
+        try {
+            try {
+                List<String> keys = new ArrayList<>(drained.keySet());
+                BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RateLimiter.class);
+                for (String userId : keys) {
+                    Instant expirationTime = Instant.ofEpochMilli(now)
+                            .plusSeconds(windowMinutes.get(userId) * 60L - TTL_MONITOR_INTERVAL_SECONDS);
+                    bulkOperations.upsert(new Query(Criteria.where("userId").is(userId)
+                            .andOperator(EndedWindows.notEnded(Instant.ofEpochMilli(now)))), new Update()
+                            .inc("counter", drained.get(userId))
+                            .setOnInsert("userId", userId)
+                            .setOnInsert("expirationTime", expirationTime));
+                }
+                try {
+                    bulkOperations.execute();
+                } catch (BulkOperationException e) {
+                    // The write is unordered, so every operation without an error was applied
+                    for (BulkWriteError error : e.getErrors()) {
+                        String userId = keys.get(error.getIndex());
+                        if (error.getCode() != DUPLICATE_KEY_ERROR_CODE) {
+                            failure = e;
+                        } else {
+                            duplicateKeys.add(userId);
+                        }
+                        rebuffer(userId, drained.remove(userId), windowMinutes.get(userId));
+                    }
+                }
+            } catch (DataAccessException e) {
+                // No operation is known to have been applied
+                drained.forEach((userId, permits) -> rebuffer(userId, permits, windowMinutes.get(userId)));
+                throw e;
+            }
+            // The remaining permits are written, so a failed read-back must not buffer them again
+            refresh(drained.keySet());
+            // A duplicate key means another node created the document concurrently, or its window ended before
+            // the TTL index removed it; the next flush increments the document or starts a new window
+            if (!duplicateKeys.isEmpty()) {
+                EndedWindows.removeEnded(mongoTemplate, duplicateKeys, Instant.ofEpochMilli(now));
+            }
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void refresh(Iterable<String> keys) {
+        List<String> userIds = new ArrayList<>();
+        keys.forEach(userIds::add);
+        if (userIds.isEmpty()) {
+            return;
+        }
+        for (RateLimiter rateLimiter : mongoTemplate.find(new Query(Criteria.where("userId").in(userIds)), RateLimiter.class)) {
+            KeyView view = views.get(rateLimiter.getUserId());
+            if (view != null) {
+                view.window.set(new Window(rateLimiter.getCounter(),
+                        rateLimiter.getExpirationTime().plusSeconds(TTL_MONITOR_INTERVAL_SECONDS).toEpochMilli()));
+            }
+        }
+    }
+
+    private void rebuffer(String userId, Integer permits, int windowMinutes) {
+        if (permits == null) {
+            return;
+        }
+        views.computeIfAbsent(userId, key -> new KeyView(windowMinutes)).pending.addAndGet(permits);
+        bufferedPermits.addAndGet(permits);
+    }
+
+    /**
+     * This node's view of one key: the window last read from MongoDB, the permits allowed since the
+     * last flush and the window length of the key's policy at its last check.
+     */
+    static final class KeyView {
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicReference<Window> window = new AtomicReference<>(Window.UNKNOWN);
+        volatile int windowMinutes;
+
+        KeyView(int windowMinutes) {
+            this.windowMinutes = windowMinutes;
+        }
+    }
+
+    /**
+     * Count of a key's document and the end of its window, {@code 0} when no document is known.
+     */
+    record Window(int count, long endMillis) {
+        static final Window UNKNOWN = new Window(0, 0L);
+    }
+}
@@ -0,0 +1,88 @@
+package com.mongodbdemo.ratelimiter.web;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsed {@link RateLimited#key()} template. Resolving a key reads the URI template variables Spring MVC
+ * has already extracted and the referenced headers, and concatenates them with the literal parts.
+ */
+final class KeyTemplate {
+
+    private static final String HEADER_PREFIX = "header:";
+
+    private final List<Part> parts;
+
+    private KeyTemplate(List<Part> parts) {
+        this.parts = parts;
+    }
+
+    /**
+     * Parses a key template.
+     *
+     * @param template the template, with {@code {name}} and {@code {header:Name}} placeholders
+     * @return the parsed template
+     * @throws IllegalArgumentException if a placeholder is not closed
+     */
+    static KeyTemplate parse(String template) {
+        List<Part> parts = new ArrayList<>();
+        int position = 0;
+        while (position < template.length()) {
+            int open = template.indexOf('{', position);
+            if (open < 0) {
+                parts.add(new Part(Source.LITERAL, template.substring(position)));
+                break;
+            }
+            int close = template.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder in rate limit key: " + template);
+            }
+            if (open > position) {
+                parts.add(new Part(Source.LITERAL, template.substring(position, open)));
+            }
+            String name = template.substring(open + 1, close);
+            parts.add(name.startsWith(HEADER_PREFIX)
+                    ? new Part(Source.HEADER, name.substring(HEADER_PREFIX.length()))
+                    : new Part(Source.PATH_VARIABLE, name));
+            position = close + 1;
+        }
+        return new KeyTemplate(List.copyOf(parts));
+    }
+
+    /**
+     * Builds the key of a request.
+     *
+     * @param request the request being handled
+     * @return the rate limit key
+     */
+    String resolve(HttpServletRequest request) {
+        if (parts.size() == 1 && parts.get(0).source() == Source.LITERAL) {
+            return parts.get(0).value();
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, String> pathVariables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        StringBuilder key = new StringBuilder(64);
+        for (Part part : parts) {
+            String value = switch (part.source()) {
+                case LITERAL -> part.value();
+                case PATH_VARIABLE -> pathVariables != null ? pathVariables.get(part.value()) : null;
+                case HEADER -> request.getHeader(part.value());
+            };
+            if (value != null) {
+                key.append(value);
+            }
+        }
+        return key.toString();
+    }
+
+    private enum Source {
+        LITERAL, PATH_VARIABLE, HEADER
+    }
+
+    private record Part(Source source, String value) {
+    }
+}
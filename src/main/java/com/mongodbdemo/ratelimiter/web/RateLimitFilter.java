@@ -0,0 +1,40 @@
+package com.mongodbdemo.ratelimiter.web;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.service.RateLimiterService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Rate limits every request matched by {@code rate.limiter.filter.url-patterns}, before it reaches any
+ * handler, keyed by the {@code rate.limiter.filter.key-header} request header or the client address
+ * when the header is absent. Use {@link RateLimited} instead for limits that depend on the handler.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimiterService rateLimiterService;
+    private final String keyHeader;
+
+    public RateLimitFilter(RateLimiterService rateLimiterService, String keyHeader) {
+        this.rateLimiterService = rateLimiterService;
+        this.keyHeader = keyHeader;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String key = request.getHeader(keyHeader);
+        RateLimiterResponse verdict = rateLimiterService.checkRateLimit(key != null ? key : request.getRemoteAddr());
+        if (verdict.isAllowed()) {
+            RateLimitResponses.setRateLimitHeaders(response, verdict);
+            filterChain.doFilter(request, response);
+        } else {
+            RateLimitResponses.writeTooManyRequests(response, verdict);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.mongodbdemo.ratelimiter.web;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.service.RateLimiterService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Enforces {@link RateLimited} on handler methods in process, against the same counters as the rate
+ * limit endpoints. The annotation of each handler method is looked up and its key template parsed once;
+ * later requests only resolve the key.
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private static final Rule UNLIMITED = new Rule(null, 0);
+
+    private final RateLimiterService rateLimiterService;
+    private final Map<Method, Rule> rules = new ConcurrentHashMap<>();
+
+    public RateLimitInterceptor(RateLimiterService rateLimiterService) {
+        this.rateLimiterService = rateLimiterService;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+        Rule rule = rules.computeIfAbsent(handlerMethod.getMethod(), method -> ruleOf(handlerMethod));
+        if (rule == UNLIMITED) {
+            return true;
+        }
+        String key = rule.key().resolve(request);
+        RateLimiterResponse verdict = rule.limit() > 0
+                ? rateLimiterService.checkRateLimit(key, rule.limit())
+                : rateLimiterService.checkRateLimit(key);
+        if (verdict.isAllowed()) {
+            RateLimitResponses.setRateLimitHeaders(response, verdict);
+            return true;
+        }
+        RateLimitResponses.writeTooManyRequests(response, verdict);
+        return false;
+    }
+
+    private static Rule ruleOf(HandlerMethod handlerMethod) {
+        RateLimited rateLimited = AnnotatedElementUtils.findMergedAnnotation(handlerMethod.getMethod(), RateLimited.class);
+        if (rateLimited == null) {
+            rateLimited = AnnotatedElementUtils.findMergedAnnotation(handlerMethod.getBeanType(), RateLimited.class);
+        }
+        return rateLimited == null ? UNLIMITED : new Rule(KeyTemplate.parse(rateLimited.key()), rateLimited.limit());
+    }
+
+    private record Rule(KeyTemplate key, int limit) {
+    }
+}
@@ -0,0 +1,102 @@
+package com.mongodbdemo.ratelimiter.web;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.TTL_MONITOR_INTERVAL_SECONDS;
+
+/**
+ * The headers and 429 response shared by the rate limit endpoints, {@link RateLimitInterceptor} and
+ * {@link RateLimitFilter}.
+ * <p>
+ * Responses whose counter state is known carry the {@code RateLimit-Limit}, {@code RateLimit-Remaining}
+ * and {@code RateLimit-Reset} headers of the IETF RateLimit header fields draft, so clients can pace
+ * themselves instead of waiting for a 429. {@code RateLimit-Reset} is the number of seconds until the
+ * window ends.
+ */
+public final class RateLimitResponses {
+
+    public static final String LIMIT_HEADER = "RateLimit-Limit";
+    public static final String REMAINING_HEADER = "RateLimit-Remaining";
+    public static final String RESET_HEADER = "RateLimit-Reset";
+
+    static final String TOO_MANY_REQUESTS_BODY = "{\"message\":\"Too many requests please try again\"}";
+
+    private RateLimitResponses() {
+
+    }
+
+    /**
+     * Converts the retry-after instant of a denied check into the seconds sent in the {@code retry-after} header.
+     *
+     * @param retryAfter the retry-after instant of a {@code RateLimiterResponse}
+     * @return the number of seconds until the user can retry
+     */
+    public static long retryAfterSeconds(Instant retryAfter) {
+        Instant docExpirationTime = retryAfter.plusSeconds(TTL_MONITOR_INTERVAL_SECONDS);
+        return Duration.between(Instant.now(), docExpirationTime).toSeconds();
+    }
+
+    /**
+     * Returns the {@code RateLimit-*} headers of a response, empty when its counter state is unknown.
+     *
+     * @param response the verdict of the check
+     * @return the headers to add to the HTTP response
+     */
+    public static HttpHeaders rateLimitHeaders(RateLimiterResponse response) {
+        HttpHeaders httpHeaders = new HttpHeaders();
+        if (response.hasQuota()) {
+            httpHeaders.add(LIMIT_HEADER, String.valueOf(response.getLimit()));
+            httpHeaders.add(REMAINING_HEADER, String.valueOf(response.getRemaining()));
+            httpHeaders.add(RESET_HEADER, String.valueOf(resetSeconds(response.getReset())));
+        }
+        return httpHeaders;
+    }
+
+    /**
+     * Sets the {@code RateLimit-*} headers of a response, if its counter state is known.
+     *
+     * @param response the response to write to
+     * @param verdict the verdict of the check
+     */
+    static void setRateLimitHeaders(HttpServletResponse response, RateLimiterResponse verdict) {
+        if (verdict.hasQuota()) {
+            response.setHeader(LIMIT_HEADER, String.valueOf(verdict.getLimit()));
+            response.setHeader(REMAINING_HEADER, String.valueOf(verdict.getRemaining()));
+            response.setHeader(RESET_HEADER, String.valueOf(resetSeconds(verdict.getReset())));
+        }
+    }
+
+    /**
+     * Writes a 429 Too Many Requests response with {@code retry-after} and {@code RateLimit-*} headers
+     * and the same body as {@code PUT /api/rate-limit/{userId}}.
+     *
+     * @param response the response to write to
+     * @param verdict the denied check
+     * @throws IOException if the body cannot be written
+     */
+    static void writeTooManyRequests(HttpServletResponse response, RateLimiterResponse verdict) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader("retry-after", String.valueOf(retryAfterSeconds(verdict.getRetryAfter())));
+        setRateLimitHeaders(response, verdict);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write(TOO_MANY_REQUESTS_BODY);
+    }
+
+    /**
+     * Converts the end of a window into the seconds sent in the {@code RateLimit-Reset} header.
+     *
+     * @param reset the reset instant of a {@code RateLimiterResponse}
+     * @return the number of seconds until the window ends, rounded up
+     */
+    public static long resetSeconds(Instant reset) {
+        return Math.max(0, Math.ceilDiv(reset.toEpochMilli() - System.currentTimeMillis(), 1000L));
+    }
+}
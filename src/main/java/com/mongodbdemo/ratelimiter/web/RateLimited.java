@@ -0,0 +1,40 @@
+package com.mongodbdemo.ratelimiter.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Rate limits a handler method, or every handler method of a controller, in process through
+ * {@link RateLimitInterceptor}. A denied request gets the same 429 response and {@code retry-after}
+ * header as {@code PUT /api/rate-limit/{userId}}.
+ * <pre>
+ * &#64;RateLimited(key = "orders:{userId}", limit = 100)
+ * &#64;GetMapping("/users/{userId}/orders")
+ * public List&lt;Order&gt; orders(&#64;PathVariable String userId) { ... }
+ * </pre>
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RateLimited {
+
+    /**
+     * Template of the rate limit key. {@code {name}} is replaced by the URI template variable {@code name}
+     * and {@code {header:Name}} by the request header {@code Name}; a missing value is replaced by an
+     * empty string. The template is parsed once per handler method.
+     *
+     * @return the key template
+     */
+    String key();
+
+    /**
+     * Number of requests allowed per {@code rate.limiter.expiration.minutes} for each key. With the
+     * default of {@code 0} the key gets the configured threshold, or the limit of its policy.
+     *
+     * @return the limit per window
+     */
+    int limit() default 0;
+}
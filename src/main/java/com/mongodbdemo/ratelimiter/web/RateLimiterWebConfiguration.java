@@ -0,0 +1,42 @@
+package com.mongodbdemo.ratelimiter.web;
+
+import com.mongodbdemo.ratelimiter.service.RateLimiterService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Registers {@link RateLimitInterceptor} for {@link RateLimited} handlers and, with
+ * {@code rate.limiter.filter.enabled=true}, {@link RateLimitFilter}.
+ */
+@Configuration(proxyBeanMethods = false)
+public class RateLimiterWebConfiguration implements WebMvcConfigurer {
+
+    private final RateLimiterService rateLimiterService;
+
+    public RateLimiterWebConfiguration(RateLimiterService rateLimiterService) {
+        this.rateLimiterService = rateLimiterService;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RateLimitInterceptor(rateLimiterService));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rate.limiter.filter.enabled", havingValue = "true")
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilter(
+            @Value("${rate.limiter.filter.key-header:X-User-Id}") String keyHeader,
+            @Value("${rate.limiter.filter.url-patterns:/*}") List<String> urlPatterns) {
+        FilterRegistrationBean<RateLimitFilter> registration =
+                new FilterRegistrationBean<>(new RateLimitFilter(rateLimiterService, keyHeader));
+        registration.setUrlPatterns(urlPatterns);
+        return registration;
+    }
+}
@@ -0,0 +1,26 @@
+package com.mongodbdemo.ratelimiter;
+
+import com.mongodbdemo.ratelimiter.dto.ApiResponse;
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterRuntimeHintsTest {
+
+    @Test
+    void testEntityAndResponsesAreRegisteredForReflection() {
+        RuntimeHints hints = new RuntimeHints();
+        new RateLimiterRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        for (Class<?> type : new Class<?>[]{RateLimiter.class, ApiResponse.class, RateLimiterResponse.class}) {
+            assertTrue(RuntimeHintsPredicates.reflection().onType(type)
+                    .withMemberCategories(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.DECLARED_FIELDS)
+                    .test(hints), type.getName());
+        }
+    }
+}
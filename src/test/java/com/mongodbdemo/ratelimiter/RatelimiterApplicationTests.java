@@ -4,21 +4,22 @@ import org.junit.jupiter.api.Test;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.test.context.SpringBootTest;
 
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.mockStatic;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.verify;
 
 @SpringBootTest
 class RatelimiterApplicationTests {
 
 	@Test
 	void contextLoads() {
-		try (var mockedSpringApplication = mockStatic(SpringApplication.class)) {
-			mockedSpringApplication.when(() -> SpringApplication.run(any(Class.class), any(String[].class)))
-					.thenReturn(null);
-
+		try (var mockedSpringApplication = mockConstruction(SpringApplication.class)) {
 			RatelimiterApplication.main(new String[]{});
 
-			mockedSpringApplication.verify(() -> SpringApplication.run(RatelimiterApplication.class, new String[]{}));
+			assertEquals(1, mockedSpringApplication.constructed().size());
+			SpringApplication application = mockedSpringApplication.constructed().get(0);
+			verify(application).setAdditionalProfiles(RatelimiterApplication.STANDALONE_PROFILE);
+			verify(application).run();
 		}
 	}
 
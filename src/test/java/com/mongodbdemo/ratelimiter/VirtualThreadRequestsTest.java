@@ -0,0 +1,38 @@
+package com.mongodbdemo.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles(RatelimiterApplication.STANDALONE_PROFILE)
+class VirtualThreadRequestsTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    void testRequestsRunOnVirtualThreads() {
+        assertEquals("true", restTemplate.getForObject("/test/thread/virtual", String.class));
+    }
+
+    @TestConfiguration
+    static class ThreadConfiguration {
+
+        @RestController
+        static class ThreadController {
+
+            @GetMapping("/test/thread/virtual")
+            String isVirtual() {
+                return String.valueOf(Thread.currentThread().isVirtual());
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.mongodbdemo.ratelimiter.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterCountersTest {
+
+    private static final long WINDOW_MILLIS = 60_000;
+
+    @Test
+    void testAllowsUpToLimitThenReturnsWindowEnd() {
+        ClusterCounters counters = new ClusterCounters(0, 3, WINDOW_MILLIS, 60_000);
+        long now = 120_500;
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(ClusterCounters.ALLOWED, counters.tryAcquire("user123", 3, now));
+        }
+
+        assertEquals(180_000, counters.tryAcquire("user123", 3, now));
+        assertEquals(ClusterCounters.ALLOWED, counters.tryAcquire("user123", 3, 180_000));
+    }
+
+    @Test
+    void testMergeKeepsMaximumOfEachSlot() {
+        ClusterCounters counters = new ClusterCounters(0, 3, WINDOW_MILLIS, 60_000);
+        long now = 120_500;
+        counters.tryAcquire("user123", 10, now);
+
+        counters.merge("user123", 120_000, 1, 4);
+        counters.merge("user123", 120_000, 1, 2); // Reordered older delta
+        counters.merge("user123", 120_000, 1, 4); // Duplicate
+        counters.merge("user123", 60_000, 2, 7);  // Delta of a past window
+
+        assertEquals(5, counters.total("user123", now));
+    }
+
+    @Test
+    void testDeltaOfNewerWindowReplacesCurrentOne() {
+        ClusterCounters counters = new ClusterCounters(0, 2, WINDOW_MILLIS, 60_000);
+        counters.tryAcquire("user123", 10, 120_500);
+
+        counters.merge("user123", 180_000, 1, 3);
+
+        assertEquals(3, counters.total("user123", 180_500));
+        assertEquals(List.of(new ClusterCounters.Slot("user123", 180_000, 1, 3)), counters.snapshot());
+    }
+
+    @Test
+    void testUnreachablePeerCountsAsItsShare() {
+        ClusterCounters counters = new ClusterCounters(0, 2, WINDOW_MILLIS, 1_000);
+        long now = System.currentTimeMillis() + 5_000;
+        counters.merge("user123", now - Math.floorMod(now, WINDOW_MILLIS), 1, 2);
+
+        int allowed = 0;
+        while (counters.tryAcquire("user123", 10, now) == ClusterCounters.ALLOWED) {
+            allowed++;
+        }
+        assertEquals(5, allowed);
+
+        counters.heard(1, now);
+        assertEquals(ClusterCounters.ALLOWED, counters.tryAcquire("user123", 10, now));
+    }
+
+    @Test
+    void testChangesAreDrainedOnce() {
+        ClusterCounters counters = new ClusterCounters(1, 2, WINDOW_MILLIS, 60_000);
+        counters.tryAcquire("user123", 10, 120_500);
+        counters.tryAcquire("user123", 10, 120_600);
+        counters.merge("user456", 120_000, 0, 1);
+
+        assertEquals(List.of(new ClusterCounters.Slot("user123", 120_000, 1, 2)), counters.drainChanges());
+        assertTrue(counters.drainChanges().isEmpty());
+    }
+
+    @Test
+    void testCheckpointChangesAreTrackedApartFromGossip() {
+        ClusterCounters counters = new ClusterCounters(1, 2, WINDOW_MILLIS, 60_000);
+        counters.tryAcquire("user123", 10, 120_500);
+        counters.merge("user456", 120_000, 0, 1);
+        counters.drainChanges();
+
+        List<ClusterCounters.Slot> unsaved = counters.drainUnsaved();
+        assertEquals(List.of(new ClusterCounters.Slot("user123", 120_000, 1, 1)), unsaved);
+        assertTrue(counters.drainUnsaved().isEmpty());
+
+        counters.retainUnsaved(unsaved);
+        assertEquals(unsaved, counters.drainUnsaved());
+    }
+}
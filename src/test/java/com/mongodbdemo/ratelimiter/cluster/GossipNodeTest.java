@@ -0,0 +1,129 @@
+package com.mongodbdemo.ratelimiter.cluster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs several nodes gossiping over UDP on localhost.
+ */
+class GossipNodeTest {
+
+    private static final int NODES = 3;
+    private static final int LIMIT = 30;
+    private static final long WINDOW_MILLIS = 86_400_000;
+    private static final long GOSSIP_MILLIS = 10;
+    private static final long ANTI_ENTROPY_MILLIS = 100;
+    private static final long SUSPECT_MILLIS = 300;
+    private static final long MAX_CONVERGENCE_MILLIS = 100 * GOSSIP_MILLIS;
+    // Each side keeps to its share of the limit; only the nodes of one side racing within a gossip round overshoot
+    private static final int MAX_PARTITION_OVERSHOOT = 2 * (NODES - 1);
+
+    private final List<ClusterCounters> counters = new ArrayList<>();
+    private final List<GossipNode> nodes = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        List<InetSocketAddress> members = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+                members.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort()));
+            }
+        }
+        for (int i = 0; i < NODES; i++) {
+            ClusterCounters nodeCounters = new ClusterCounters(i, NODES, WINDOW_MILLIS, SUSPECT_MILLIS);
+            counters.add(nodeCounters);
+            nodes.add(new GossipNode(nodeCounters, members, GOSSIP_MILLIS, ANTI_ENTROPY_MILLIS));
+        }
+        nodes.forEach(GossipNode::start);
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(GossipNode::stop);
+    }
+
+    @Test
+    void testCountsConvergeWithinFewGossipRounds() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(ClusterCounters.ALLOWED, counters.get(0).tryAcquire("user123", LIMIT, System.currentTimeMillis()));
+        }
+
+        awaitConvergence("user123", 10);
+
+        long convergenceMillis = System.currentTimeMillis() - start;
+        assertTrue(convergenceMillis <= MAX_CONVERGENCE_MILLIS,
+                "Converged across " + NODES + " nodes in " + convergenceMillis + " ms, bound " + MAX_CONVERGENCE_MILLIS + " ms");
+        assertEquals(ClusterCounters.ALLOWED, counters.get(1).tryAcquire("user123", LIMIT, System.currentTimeMillis()));
+    }
+
+    @Test
+    void testOvershootDuringPartitionIsBounded() throws InterruptedException {
+        // Node 2 is cut off from nodes 0 and 1
+        nodes.get(0).setLinkFilter(peer -> peer != 2);
+        nodes.get(1).setLinkFilter(peer -> peer != 2);
+        nodes.get(2).setLinkFilter(peer -> false);
+        Thread.sleep(SUSPECT_MILLIS + 100);
+
+        int allowed = 0;
+        for (int round = 0; round < 60; round++) {
+            for (int node = 0; node < NODES; node++) {
+                if (counters.get(node).tryAcquire("user123", LIMIT, System.currentTimeMillis()) == ClusterCounters.ALLOWED) {
+                    allowed++;
+                }
+            }
+            Thread.sleep(GOSSIP_MILLIS);
+        }
+        int overshoot = allowed - LIMIT;
+        assertTrue(overshoot <= MAX_PARTITION_OVERSHOOT,
+                "Allowed " + allowed + " of limit " + LIMIT + ", overshoot bound " + MAX_PARTITION_OVERSHOOT);
+        assertTrue(overshoot >= -1, "Allowed " + allowed + " of limit " + LIMIT);
+
+        nodes.forEach(node -> node.setLinkFilter(peer -> true));
+        awaitConvergence("user123", allowed);
+    }
+
+    @Test
+    void testNodeWithoutPeersEvictsEndedWindows() throws IOException, InterruptedException {
+        InetSocketAddress address;
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+        }
+        ClusterCounters single = new ClusterCounters(0, 1, 50, SUSPECT_MILLIS);
+        GossipNode node = new GossipNode(single, List.of(address), GOSSIP_MILLIS, ANTI_ENTROPY_MILLIS);
+        node.start();
+        try {
+            single.tryAcquire("user123", LIMIT, System.currentTimeMillis());
+            assertFalse(single.snapshot().isEmpty());
+
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (!single.snapshot().isEmpty()) {
+                assertTrue(System.currentTimeMillis() < deadline, "Ended window was not evicted");
+                Thread.sleep(10);
+            }
+        } finally {
+            node.stop();
+        }
+    }
+
+    private void awaitConvergence(String key, long expected) throws InterruptedException {
+        BooleanSupplier converged = () -> counters.stream()
+                .allMatch(nodeCounters -> nodeCounters.total(key, System.currentTimeMillis()) == expected);
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!converged.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Counts did not converge to " + expected);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.mongodbdemo.ratelimiter.controller;
+
+import com.mongodbdemo.ratelimiter.dto.HeavyHitter;
+import com.mongodbdemo.ratelimiter.service.HeavyHitters;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HeavyHittersControllerTest {
+
+    private HeavyHitters heavyHitters;
+    private HeavyHittersController heavyHittersController;
+
+    @BeforeEach
+    public void setUp() {
+        heavyHitters = new HeavyHitters(new SimpleMeterRegistry(), 1024, 3, 500);
+        heavyHittersController = new HeavyHittersController(heavyHitters);
+    }
+
+    @Test
+    public void testTopKeysReturnsHeaviestFirst() {
+        // Given
+        heavyHitters.record("heavy", true);
+        heavyHitters.record("heavy", false);
+        heavyHitters.record("light", true);
+
+        // When
+        ResponseEntity<List<HeavyHitter>> result = heavyHittersController.topKeys(1);
+
+        // Then
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(List.of(new HeavyHitter("heavy", 2, 1)), result.getBody());
+    }
+
+    @Test
+    public void testTopKeysRejectsLimitBelowOne() {
+        // When
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> heavyHittersController.topKeys(-1));
+
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+    }
+}
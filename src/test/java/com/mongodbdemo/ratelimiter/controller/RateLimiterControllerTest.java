@@ -1,8 +1,12 @@
 package com.mongodbdemo.ratelimiter.controller;
 
 import com.mongodbdemo.ratelimiter.dto.ApiResponse;
+import com.mongodbdemo.ratelimiter.dto.MultiLimitResponse;
+import com.mongodbdemo.ratelimiter.dto.RateLimitVerdict;
 import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.service.HierarchicalRateLimiter;
 import com.mongodbdemo.ratelimiter.service.RateLimiterService;
+import com.mongodbdemo.ratelimiter.web.RateLimitResponses;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
@@ -10,13 +14,26 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class RateLimiterControllerTest {
@@ -27,8 +44,12 @@ public class RateLimiterControllerTest {
     @Mock
     private RateLimiterService rateLimiterService;
 
+    @Mock
+    private HierarchicalRateLimiter hierarchicalRateLimiter;
+
     public RateLimiterControllerTest() {
         MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(rateLimiterController, "maxBatchSize", 10);
     }
 
     @Test
@@ -39,13 +60,31 @@ public class RateLimiterControllerTest {
         when(rateLimiterService.checkRateLimit(userId)).thenReturn(response);
 
         // When
-        ResponseEntity<?> result = rateLimiterController.checkRateLimit(userId);
+        ResponseEntity<?> result = rateLimiterController.checkRateLimit(userId, 1);
 
         // Then
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals(new ApiResponse("Request allowed"), result.getBody());
     }
 
+    @Test
+    public void testCheckRateLimitReportsQuotaHeaders() {
+        // Given
+        String userId = "testUser";
+        RateLimiterResponse response = new RateLimiterResponse(true, null, 5, 3, Instant.now().plusSeconds(30));
+        when(rateLimiterService.checkRateLimit(userId)).thenReturn(response);
+
+        // When
+        ResponseEntity<?> result = rateLimiterController.checkRateLimit(userId, 1);
+
+        // Then
+        HttpHeaders headers = result.getHeaders();
+        assertEquals("5", headers.getFirst("RateLimit-Limit"));
+        assertEquals("3", headers.getFirst("RateLimit-Remaining"));
+        assertEquals("30", headers.getFirst("RateLimit-Reset"));
+        assertNull(headers.getFirst("retry-after"));
+    }
+
     @Test
     public void testCheckRateLimitNotAllowed() {
         // Given
@@ -59,7 +98,7 @@ public class RateLimiterControllerTest {
         long retryAfterSeconds = Duration.between(currTime, docExpirationTime).toSeconds();
 
         // When
-        ResponseEntity<?> result = rateLimiterController.checkRateLimit(userId);
+        ResponseEntity<?> result = rateLimiterController.checkRateLimit(userId, 1);
 
         // Then
         assertEquals(HttpStatus.TOO_MANY_REQUESTS, result.getStatusCode());
@@ -67,4 +106,124 @@ public class RateLimiterControllerTest {
         HttpHeaders headers = result.getHeaders();
         assertEquals(String.valueOf(retryAfterSeconds), headers.getFirst("retry-after"));
     }
+
+    @Test
+    public void testCheckRateLimitWithCostConsumesPermitsAtOnce() {
+        // Given
+        String userId = "testUser";
+        when(rateLimiterService.supportsWeightedChecks()).thenReturn(true);
+        when(rateLimiterService.checkWeightedRateLimit(userId, 50)).thenReturn(new RateLimiterResponse(true, null));
+
+        // When
+        ResponseEntity<?> result = rateLimiterController.checkRateLimit(userId, 50);
+
+        // Then
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        verify(rateLimiterService, never()).checkRateLimit(userId);
+        assertThrows(ResponseStatusException.class, () -> rateLimiterController.checkRateLimit(userId, 0));
+    }
+
+    @Test
+    public void testCheckRateLimitWithCostIsRejectedWhenStrategyCannotChargeIt() {
+        // Given
+        when(rateLimiterService.supportsWeightedChecks()).thenReturn(false);
+
+        // When
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> rateLimiterController.checkRateLimit("testUser", 50));
+
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        verify(rateLimiterService, never()).checkWeightedRateLimit(anyString(), anyInt());
+    }
+
+    @Test
+    public void testCheckRateLimitsReturnsVerdictPerUser() {
+        // Given
+        List<String> userIds = List.of("allowedUser", "deniedUser");
+        Instant retryAfter = Instant.now().plus(Duration.ofMinutes(1));
+        when(rateLimiterService.checkRateLimits(userIds)).thenReturn(List.of(
+                new RateLimiterResponse(true, null),
+                new RateLimiterResponse(false, retryAfter)));
+
+        // When
+        ResponseEntity<List<RateLimitVerdict>> result = rateLimiterController.checkRateLimits(userIds);
+
+        // Then
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        List<RateLimitVerdict> verdicts = result.getBody();
+        assertEquals("allowedUser", verdicts.get(0).userId());
+        assertTrue(verdicts.get(0).allowed());
+        assertNull(verdicts.get(0).retryAfter());
+        assertEquals("deniedUser", verdicts.get(1).userId());
+        assertFalse(verdicts.get(1).allowed());
+        assertTrue(verdicts.get(1).retryAfter() > 60);
+    }
+
+    @Test
+    public void testCheckRateLimitsReportsQuotaPerUser() {
+        // Given
+        List<String> userIds = List.of("reportedUser", "unreportedUser");
+        Instant reset = Instant.now().plus(Duration.ofMinutes(1));
+        when(rateLimiterService.checkRateLimits(userIds)).thenReturn(List.of(
+                new RateLimiterResponse(true, null, 5, 3, reset),
+                new RateLimiterResponse(true, null)));
+
+        // When
+        List<RateLimitVerdict> verdicts = rateLimiterController.checkRateLimits(userIds).getBody();
+
+        // Then
+        assertEquals(5, verdicts.get(0).limit());
+        assertEquals(3, verdicts.get(0).remaining());
+        assertTrue(verdicts.get(0).reset() >= 59 && verdicts.get(0).reset() <= 60);
+        assertNull(verdicts.get(1).limit());
+        assertNull(verdicts.get(1).remaining());
+        assertNull(verdicts.get(1).reset());
+    }
+
+    @Test
+    public void testCheckRateLimitsRejectsOversizedBatch() {
+        // Given
+        List<String> userIds = Collections.nCopies(11, "testUser");
+
+        // When
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> rateLimiterController.checkRateLimits(userIds));
+
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+    }
+
+    @Test
+    public void testCheckLimitsNamesExceededLimits() {
+        // Given
+        Instant retryAfter = Instant.now().plus(Duration.ofMinutes(1));
+        when(hierarchicalRateLimiter.checkRateLimit("acme", "testUser", "/orders"))
+                .thenReturn(new MultiLimitResponse(false, retryAfter, List.of("tenant", "endpoint")));
+
+        // When
+        ResponseEntity<ApiResponse> result = rateLimiterController.checkLimits("testUser", "acme", "/orders");
+
+        // Then
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, result.getStatusCode());
+        assertEquals("tenant,endpoint", result.getHeaders().getFirst("ratelimit-exceeded"));
+        assertTrue(Long.parseLong(result.getHeaders().getFirst("retry-after")) > 60);
+    }
+
+    @Test
+    public void testCheckLimitsReportsQuotaOfLimitResettingLast() {
+        // Given
+        Instant reset = Instant.now().plus(Duration.ofMinutes(2));
+        when(hierarchicalRateLimiter.checkRateLimit("acme", "testUser", null))
+                .thenReturn(new MultiLimitResponse(false, reset.minusSeconds(60), 100, 0, reset, List.of("tenant")));
+
+        // When
+        ResponseEntity<ApiResponse> result = rateLimiterController.checkLimits("testUser", "acme", null);
+
+        // Then
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, result.getStatusCode());
+        assertEquals("100", result.getHeaders().getFirst(RateLimitResponses.LIMIT_HEADER));
+        assertEquals("0", result.getHeaders().getFirst(RateLimitResponses.REMAINING_HEADER));
+        assertNotNull(result.getHeaders().getFirst(RateLimitResponses.RESET_HEADER));
+    }
 }
@@ -0,0 +1,72 @@
+package com.mongodbdemo.ratelimiter.repository;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MongoIndexInitializerTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private IndexOperations indexOperations;
+
+    @Mock
+    private IndexOperations rateLimiterIndexOperations;
+
+    private MongoIndexInitializer mongoIndexInitializer;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(new MongoCustomConversions(List.of()).getSimpleTypeHolder());
+        mappingContext.initialize();
+        when(mongoTemplate.indexOps(any(String.class))).thenReturn(indexOperations);
+        when(mongoTemplate.indexOps("rateLimiter")).thenReturn(rateLimiterIndexOperations);
+        mongoIndexInitializer = new MongoIndexInitializer(mongoTemplate, mappingContext);
+    }
+
+    @Test
+    void testCreatesTtlIndexOfRateLimiterCollection() {
+        assertTrue(mongoIndexInitializer.createIndexes());
+
+        verify(mongoTemplate).indexOps("rateLimiter");
+        verify(rateLimiterIndexOperations).ensureIndex(argThat((IndexDefinition index) ->
+                new Document("expirationTime", 1).equals(index.getIndexKeys())
+                        && Long.valueOf(0).equals(((Number) index.getIndexOptions().get("expireAfterSeconds")).longValue())));
+    }
+
+    @Test
+    void testCreatesIndexesOfEntitiesUnknownToTheMappingContext() {
+        assertTrue(mongoIndexInitializer.createIndexes());
+
+        verify(mongoTemplate).indexOps("gcraRateLimiter");
+        verify(mongoTemplate).indexOps("limitCounters");
+        verify(mongoTemplate).indexOps("clusterCounters");
+        verify(indexOperations).ensureIndex(argThat((IndexDefinition index) ->
+                new Document("windowEnd", 1).equals(index.getIndexKeys())));
+    }
+
+    @Test
+    void testFailureIsReportedForRetry() {
+        when(indexOperations.ensureIndex(any(IndexDefinition.class))).thenThrow(new DataAccessResourceFailureException("down"));
+
+        assertFalse(mongoIndexInitializer.createIndexes());
+    }
+}
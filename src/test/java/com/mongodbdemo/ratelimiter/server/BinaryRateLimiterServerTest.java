@@ -0,0 +1,125 @@
+package com.mongodbdemo.ratelimiter.server;
+
+import com.mongodbdemo.ratelimiter.client.RateLimiterClient;
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.service.RateLimiterService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+class BinaryRateLimiterServerTest {
+
+    @Mock
+    private RateLimiterService rateLimiterService;
+
+    private BinaryRateLimiterServer server;
+    private RateLimiterClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        server = new BinaryRateLimiterServer(rateLimiterService, 0, 1024);
+        server.start();
+        client = RateLimiterClient.connect("localhost", server.getPort());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    void testAllowedAndDeniedVerdicts() {
+        when(rateLimiterService.checkRateLimit("allowedUser")).thenReturn(new RateLimiterResponse(true, null));
+        // The controller adds the TTL monitor interval to the document's expiration time
+        when(rateLimiterService.checkRateLimit("deniedUser"))
+                .thenReturn(new RateLimiterResponse(false, Instant.now().minusSeconds(60).plusSeconds(31)));
+
+        RateLimiterClient.Verdict allowed = client.check("allowedUser").join();
+        RateLimiterClient.Verdict denied = client.check("deniedUser").join();
+
+        assertTrue(allowed.allowed());
+        assertFalse(denied.allowed());
+        assertTrue(denied.retryAfterSeconds() > 0 && denied.retryAfterSeconds() <= 31);
+    }
+
+    @Test
+    void testPipelinedResponsesAreMatchedByRequestId() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(rateLimiterService.checkRateLimit("slowUser")).thenAnswer(invocation -> {
+            release.await();
+            return new RateLimiterResponse(false, Instant.now().plusSeconds(10));
+        });
+        when(rateLimiterService.checkRateLimit("fastUser")).thenReturn(new RateLimiterResponse(true, null));
+
+        CompletableFuture<RateLimiterClient.Verdict> slow = client.check("slowUser");
+        RateLimiterClient.Verdict fast = client.check("fastUser").get(5, TimeUnit.SECONDS);
+
+        assertTrue(fast.allowed());
+        assertFalse(slow.isDone());
+        release.countDown();
+        assertFalse(slow.get(5, TimeUnit.SECONDS).allowed());
+    }
+
+    @Test
+    void testManyConcurrentChecksShareOneConnection() {
+        when(rateLimiterService.checkRateLimit(anyString())).thenAnswer(invocation -> {
+            String userId = invocation.getArgument(0);
+            boolean allowed = Integer.parseInt(userId.substring(4)) % 2 == 0;
+            return new RateLimiterResponse(allowed, allowed ? null : Instant.now().plusSeconds(10));
+        });
+
+        List<CompletableFuture<RateLimiterClient.Verdict>> futures = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            futures.add(client.check("user" + i));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(i % 2 == 0, futures.get(i).join().allowed());
+        }
+    }
+
+    @Test
+    void testFailedCheckCompletesExceptionallyAndKeepsConnection() {
+        when(rateLimiterService.checkRateLimit("user123")).thenThrow(new IllegalStateException("MongoDB unavailable"));
+        when(rateLimiterService.checkRateLimit("otherUser")).thenReturn(new RateLimiterResponse(true, null));
+
+        CompletableFuture<RateLimiterClient.Verdict> verdict = client.check("user123");
+
+        assertThrows(CompletionException.class, verdict::join);
+        assertTrue(client.check("otherUser").join().allowed());
+    }
+
+    @Test
+    void testOversizedUserIdFailsWithoutBlockingOtherChecks() {
+        when(rateLimiterService.checkRateLimit("user123")).thenReturn(new RateLimiterResponse(true, null));
+
+        CompletableFuture<RateLimiterClient.Verdict> oversized = client.check("u".repeat(2048));
+
+        CompletionException e = assertThrows(CompletionException.class, oversized::join);
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        assertTrue(client.check("user123").orTimeout(5, TimeUnit.SECONDS).join().allowed());
+    }
+
+    @Test
+    void testPendingChecksFailWhenServerStops() {
+        server.stop();
+
+        assertThrows(CompletionException.class, () -> client.check("user123").join());
+    }
+}
@@ -0,0 +1,70 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    void testOpensOnceWindowReachesFailureRate() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(4, 0.5, 1_000, millis -> { });
+        circuitBreaker.record(false, NOW);
+        circuitBreaker.record(false, NOW);
+        circuitBreaker.record(true, NOW);
+
+        // The window is not full yet
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+
+        circuitBreaker.record(true, NOW);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+        assertFalse(circuitBreaker.tryAcquirePermission(NOW + 999));
+    }
+
+    @Test
+    void testOldFailuresLeaveTheWindow() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(4, 0.5, 1_000, millis -> { });
+        circuitBreaker.record(false, NOW);
+        for (int i = 0; i < 10; i++) {
+            circuitBreaker.record(true, NOW);
+        }
+        circuitBreaker.record(false, NOW);
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+    }
+
+    @Test
+    void testSingleProbeClosesCircuitAndReportsDegradedTime() {
+        AtomicLong degradedMillis = new AtomicLong();
+        CircuitBreaker circuitBreaker = new CircuitBreaker(2, 0.5, 1_000, degradedMillis::set);
+        circuitBreaker.record(false, NOW);
+        circuitBreaker.record(false, NOW);
+
+        assertTrue(circuitBreaker.tryAcquirePermission(NOW + 1_000));
+        assertFalse(circuitBreaker.tryAcquirePermission(NOW + 1_000));
+        circuitBreaker.record(true, NOW + 1_500);
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+        assertEquals(1_500, degradedMillis.get());
+        assertEquals(NOW + 1_500, circuitBreaker.closedAtMillis());
+    }
+
+    @Test
+    void testFailedProbeReopensCircuit() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(2, 0.5, 1_000, millis -> { });
+        circuitBreaker.record(false, NOW);
+        circuitBreaker.record(false, NOW);
+
+        assertTrue(circuitBreaker.tryAcquirePermission(NOW + 1_000));
+        circuitBreaker.record(false, NOW + 1_100);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+        assertFalse(circuitBreaker.tryAcquirePermission(NOW + 2_000));
+        assertTrue(circuitBreaker.tryAcquirePermission(NOW + 2_100));
+    }
+}
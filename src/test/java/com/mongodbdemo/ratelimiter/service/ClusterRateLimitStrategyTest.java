@@ -0,0 +1,127 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.entity.ClusterCheckpoint;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.TTL_MONITOR_INTERVAL_SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ClusterRateLimitStrategyTest {
+
+    private static final Policy POLICY = new Policy(5, 1);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    private ClusterRateLimitStrategy clusterRateLimitStrategy;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        clusterRateLimitStrategy = new ClusterRateLimitStrategy(mongoTemplate, new SimpleMeterRegistry(),
+                new String[]{"localhost:0", "localhost:0"}, 0, 1, 50, 1000, 3000);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ClusterCheckpoint.class)).thenReturn(bulkOperations);
+    }
+
+    @Test
+    void testChecksAreDecidedWithoutMongo() {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(clusterRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+        }
+
+        RateLimiterResponse response = clusterRateLimitStrategy.checkRateLimit("user123", POLICY);
+
+        assertFalse(response.isAllowed());
+        long windowEnd = response.getRetryAfter().plusSeconds(TTL_MONITOR_INTERVAL_SECONDS).toEpochMilli();
+        assertEquals(0, windowEnd % 60_000);
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testCheckpointRaisesStoredCounts() {
+        clusterRateLimitStrategy.checkRateLimit("user123", POLICY);
+        clusterRateLimitStrategy.checkRateLimit("user123", POLICY);
+
+        clusterRateLimitStrategy.checkpoint();
+
+        verify(bulkOperations).upsert(argThat((Query query) -> query.getQueryObject().getString("id").startsWith("user123@")),
+                argThat((Update update) -> update.getUpdateObject().get("$max", org.bson.Document.class).get("counts.0").equals(2L)));
+        verify(bulkOperations).execute();
+    }
+
+    @Test
+    void testCheckpointWritesOnlyOwnSlotsChangedSinceTheLastOne() {
+        long now = System.currentTimeMillis();
+        Instant windowStart = Instant.ofEpochMilli(now - now % 60_000);
+        when(mongoTemplate.find(any(Query.class), eq(ClusterCheckpoint.class))).thenReturn(List.of(
+                new ClusterCheckpoint("user456@" + windowStart.toEpochMilli(), "user456", windowStart,
+                        Map.of("1", 3L), windowStart.plusSeconds(60))));
+        clusterRateLimitStrategy.restore();
+        clusterRateLimitStrategy.checkRateLimit("user123", POLICY);
+
+        clusterRateLimitStrategy.checkpoint();
+        clusterRateLimitStrategy.checkpoint();
+
+        // The peer's slot of user456 is its own to checkpoint, and nothing changed before the second checkpoint
+        verify(bulkOperations, times(1)).upsert(any(Query.class), any(Update.class));
+        verify(bulkOperations).upsert(argThat((Query query) -> query.getQueryObject().getString("id").startsWith("user123@")),
+                any(Update.class));
+        verify(bulkOperations, times(1)).execute();
+    }
+
+    @Test
+    void testRestoreMergesLiveCheckpoints() {
+        long now = System.currentTimeMillis();
+        Instant windowStart = Instant.ofEpochMilli(now - now % 60_000);
+        when(mongoTemplate.find(any(Query.class), eq(ClusterCheckpoint.class))).thenReturn(List.of(
+                new ClusterCheckpoint("user123@" + windowStart.toEpochMilli(), "user123", windowStart,
+                        Map.of("0", 2L, "1", 3L), windowStart.plusSeconds(60))));
+
+        clusterRateLimitStrategy.restore();
+
+        assertFalse(clusterRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+    }
+
+    @Test
+    void testFailedCheckpointDoesNotAffectChecks() {
+        clusterRateLimitStrategy.checkRateLimit("user123", POLICY);
+        when(bulkOperations.execute()).thenThrow(new DataAccessResourceFailureException("MongoDB unavailable"));
+
+        clusterRateLimitStrategy.checkpoint();
+
+        assertTrue(clusterRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+    }
+
+    @Test
+    void testFailedCheckpointIsWrittenByTheNextOne() {
+        clusterRateLimitStrategy.checkRateLimit("user123", POLICY);
+        when(bulkOperations.execute()).thenThrow(new DataAccessResourceFailureException("MongoDB unavailable")).thenReturn(null);
+
+        clusterRateLimitStrategy.checkpoint();
+        clusterRateLimitStrategy.checkpoint();
+
+        verify(bulkOperations, times(2)).upsert(argThat((Query query) -> query.getQueryObject().getString("id").startsWith("user123@")),
+                any(Update.class));
+    }
+}
@@ -0,0 +1,137 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CounterTableTest {
+
+    private static final long NOW = 1_700_000_000L;
+
+    @Test
+    void testAllowsUpToLimitThenDeniesUntilWindowEnd() {
+        CounterTable counterTable = new CounterTable(1024);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(CounterTable.ALLOWED, counterTable.tryAcquire("user123", 5, 60, NOW));
+        }
+
+        assertEquals(NOW + 60, counterTable.tryAcquire("user123", 5, 60, NOW + 30));
+    }
+
+    @Test
+    void testPermitsAreCountedAllOrNone() {
+        CounterTable counterTable = new CounterTable(1024);
+
+        assertEquals(CounterTable.ALLOWED, counterTable.tryAcquire("user123", 3, 5, 60, NOW));
+        assertEquals(NOW + 60, counterTable.tryAcquire("user123", 3, 5, 60, NOW + 1));
+        // The denied request consumed nothing, so the last two permits remain
+        assertEquals(CounterTable.ALLOWED, counterTable.tryAcquire("user123", 2, 5, 60, NOW + 2));
+        assertEquals(NOW + 60, counterTable.tryAcquire("user123", 5, 60, NOW + 3));
+    }
+
+    @Test
+    void testPermitsAboveLimitAreDeniedEvenInNewOrEndedWindow() {
+        CounterTable counterTable = new CounterTable(1024);
+
+        assertEquals(NOW + 60, counterTable.tryAcquire("user123", 0, 60, NOW));
+        assertEquals(NOW + 60, counterTable.tryAcquire("user456", 6, 5, 60, NOW));
+        assertEquals(CounterTable.ALLOWED, counterTable.tryAcquire("user456", 5, 5, 60, NOW));
+        assertEquals(NOW + 120, counterTable.tryAcquire("user456", 6, 5, 60, NOW + 60));
+    }
+
+    @Test
+    void testNewWindowStartsAfterExpiry() {
+        CounterTable counterTable = new CounterTable(1024);
+        counterTable.tryAcquire("user123", 1, 60, NOW);
+
+        assertEquals(CounterTable.ALLOWED, counterTable.tryAcquire("user123", 1, 60, NOW + 60));
+        assertEquals(NOW + 120, counterTable.tryAcquire("user123", 1, 60, NOW + 61));
+    }
+
+    @Test
+    void testKeysAreCountedIndependently() {
+        CounterTable counterTable = new CounterTable(1024);
+        counterTable.tryAcquire("userA", 1, 60, NOW);
+
+        assertEquals(CounterTable.ALLOWED, counterTable.tryAcquire("userB", 1, 60, NOW));
+        assertNotEquals(CounterTable.ALLOWED, counterTable.tryAcquire("userA", 1, 60, NOW));
+    }
+
+    @Test
+    void testExpiredSlotsAreReclaimedByNewKeys() {
+        // The smallest table holds 16 slots per stripe, so 10,000 keys only fit if expired slots are reused
+        CounterTable counterTable = new CounterTable(1);
+        for (int i = 0; i < 10_000; i++) {
+            counterTable.tryAcquire("user" + i, 1, 60, NOW + i * 60L);
+        }
+
+        assertEquals(0, counterTable.overflows());
+        assertEquals(NOW + 10_000 * 60L, counterTable.tryAcquire("user9999", 1, 60, NOW + 9_999 * 60L));
+    }
+
+    @Test
+    void testFullTableAllowsAndCountsOverflow() {
+        CounterTable counterTable = new CounterTable(1);
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(CounterTable.ALLOWED, counterTable.tryAcquire("user" + i, 1, 60, NOW));
+        }
+
+        assertTrue(counterTable.overflows() > 0);
+    }
+
+    @Test
+    void testConcurrentChecksOnHotKeyAdmitExactlyLimit() throws Exception {
+        CounterTable counterTable = new CounterTable(1024);
+        List<Future<Long>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 10_000; i++) {
+                futures.add(executor.submit(() -> counterTable.tryAcquire("hotKey", 1_000, 60, NOW)));
+            }
+        }
+
+        long allowed = 0;
+        for (Future<Long> future : futures) {
+            if (future.get() == CounterTable.ALLOWED) {
+                allowed++;
+            }
+        }
+        assertEquals(1_000, allowed);
+    }
+
+    @Test
+    void testMappedTableKeepsWindowsAcrossReopen(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("counters.table");
+        try (CounterTable counterTable = CounterTable.open(file, 1024)) {
+            counterTable.tryAcquire("user123", 2, 60, NOW);
+            counterTable.tryAcquire("user123", 2, 60, NOW);
+        }
+
+        try (CounterTable counterTable = CounterTable.open(file, 1024)) {
+            assertEquals(NOW + 60, counterTable.tryAcquire("user123", 2, 60, NOW + 30));
+            assertEquals(CounterTable.ALLOWED, counterTable.tryAcquire("user123", 2, 60, NOW + 60));
+        }
+    }
+
+    @Test
+    void testMappedTableOfOtherCapacityStartsEmpty(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("counters.table");
+        try (CounterTable counterTable = CounterTable.open(file, 1024)) {
+            counterTable.tryAcquire("user123", 1, 60, NOW);
+        }
+
+        try (CounterTable counterTable = CounterTable.open(file, 1 << 16)) {
+            assertEquals(CounterTable.ALLOWED, counterTable.tryAcquire("user123", 1, 60, NOW));
+        }
+        assertEquals(64 + 16L * (1 << 16), Files.size(file));
+    }
+}
@@ -0,0 +1,129 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeadlineGuardTest {
+
+    private static final Policy POLICY = new Policy(2, 1);
+
+    private SimpleMeterRegistry meterRegistry;
+    private DeadlineGuard deadlineGuard;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        deadlineGuard = new DeadlineGuard(meterRegistry, 2, 0.5, 60_000, 1024);
+        ReflectionTestUtils.setField(deadlineGuard, "deadlineMillis", 50L);
+        ReflectionTestUtils.setField(deadlineGuard, "slowMillis", 50L);
+        ReflectionTestUtils.setField(deadlineGuard, "defaultFallback", FallbackMode.LOCAL);
+        ReflectionTestUtils.setField(deadlineGuard, "nodes", 1);
+        ReflectionTestUtils.setField(deadlineGuard, "agreementMillis", 60_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        deadlineGuard.close();
+    }
+
+    @Test
+    void testMongoVerdictWithinDeadlineIsReturned() {
+        RateLimiterResponse denied = new RateLimiterResponse(false, Instant.now());
+
+        assertSame(denied, deadlineGuard.check("user123", POLICY, () -> denied));
+        assertEquals(0, fallbacks("local", "timeout"));
+    }
+
+    @Test
+    void testSlowMongoFallsBackToLocalLimiter() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RateLimiterResponse late = new RateLimiterResponse(true, null);
+
+        assertTrue(deadlineGuard.check("user123", POLICY, () -> await(release, late)).isAllowed());
+        assertTrue(deadlineGuard.check("user123", POLICY, () -> await(release, late)).isAllowed());
+        // Both checks failed, so the circuit is open and the third one does not reach MongoDB
+        AtomicInteger mongoChecks = new AtomicInteger();
+        RateLimiterResponse response = deadlineGuard.check("user123", POLICY, () -> {
+            mongoChecks.incrementAndGet();
+            return late;
+        });
+
+        assertFalse(response.isAllowed());
+        assertEquals(0, mongoChecks.get());
+        assertEquals(2, fallbacks("local", "timeout"));
+        assertEquals(1, fallbacks("local", "circuit_open"));
+
+        // Late answers are compared with what the local limiter said
+        release.countDown();
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            while (meterRegistry.counter("ratelimiter.fallback.agreement", "result", "agree").count() < 2) {
+                TimeUnit.MILLISECONDS.sleep(5);
+            }
+        });
+    }
+
+    @Test
+    void testLocalFallbackIsChargedTheCost() {
+        Policy policy = new Policy(5, 1);
+
+        RateLimiterResponse first = deadlineGuard.check("user123", policy, 3, () -> {
+            throw new IllegalStateException("MongoDB unavailable");
+        });
+        RateLimiterResponse second = deadlineGuard.check("user123", policy, 3, () -> {
+            throw new IllegalStateException("MongoDB unavailable");
+        });
+
+        assertTrue(first.isAllowed());
+        // Three of five permits are gone, so a second cost of three does not fit
+        assertFalse(second.isAllowed());
+    }
+
+    @Test
+    void testLocalFallbackDeniesZeroThreshold() {
+        RateLimiterResponse response = deadlineGuard.check("user123", new Policy(0, 1), () -> {
+            throw new IllegalStateException("MongoDB unavailable");
+        });
+
+        assertFalse(response.isAllowed());
+    }
+
+    @Test
+    void testPolicyChoosesFailOpenOrFailClosed() {
+        RateLimiterResponse open = deadlineGuard.check("user123", new Policy(2, 1, FallbackMode.OPEN), () -> {
+            throw new IllegalStateException("MongoDB unavailable");
+        });
+        RateLimiterResponse closed = deadlineGuard.check("user456", new Policy(2, 1, FallbackMode.CLOSED), () -> {
+            throw new IllegalStateException("MongoDB unavailable");
+        });
+
+        assertTrue(open.isAllowed());
+        assertFalse(closed.isAllowed());
+        assertEquals(1, fallbacks("open", "error"));
+        assertEquals(1, fallbacks("closed", "error"));
+    }
+
+    private double fallbacks(String mode, String reason) {
+        return meterRegistry.counter("ratelimiter.fallbacks", "mode", mode, "reason", reason).count();
+    }
+
+    private static RateLimiterResponse await(CountDownLatch latch, RateLimiterResponse response) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return response;
+    }
+}
@@ -0,0 +1,69 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DenyCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private DenyCache denyCache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        denyCache = new DenyCache(100, meterRegistry);
+    }
+
+    @Test
+    void testDenialIsServedFromCacheWithSameRetryAfter() {
+        Instant retryAfter = Instant.now().plusSeconds(30);
+        denyCache.record("user123", new RateLimiterResponse(false, retryAfter));
+
+        RateLimiterResponse cached = denyCache.lookup("user123");
+
+        assertNotNull(cached);
+        assertFalse(cached.isAllowed());
+        assertEquals(retryAfter, cached.getRetryAfter());
+    }
+
+    @Test
+    void testAllowedResponsesAreNotCached() {
+        denyCache.record("user123", new RateLimiterResponse(true, null));
+
+        assertNull(denyCache.lookup("user123"));
+    }
+
+    @Test
+    void testDenialsLeavingPermitsAreNotCached() {
+        Instant retryAfter = Instant.now().plusSeconds(30);
+        denyCache.record("user123", new RateLimiterResponse(false, retryAfter, 10, 2, retryAfter.plusSeconds(60)));
+
+        assertNull(denyCache.lookup("user123"));
+    }
+
+    @Test
+    void testDenialsThatAlreadyExpiredAreNotCached() {
+        denyCache.record("user123", new RateLimiterResponse(false, Instant.now().minusSeconds(1)));
+
+        assertNull(denyCache.lookup("user123"));
+    }
+
+    @Test
+    void testHitsAndMissesAreRecorded() {
+        denyCache.record("user123", new RateLimiterResponse(false, Instant.now().plusSeconds(30)));
+
+        denyCache.lookup("user123");
+        denyCache.lookup("otherUser");
+
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "rateLimiterDenyCache").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "rateLimiterDenyCache").tag("result", "miss")
+                .functionCounter().count());
+    }
+}
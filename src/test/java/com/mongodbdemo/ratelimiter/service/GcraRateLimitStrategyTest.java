@@ -0,0 +1,167 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.entity.GcraState;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class GcraRateLimitStrategyTest {
+
+    private static final Policy POLICY = new Policy(5, 1);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @InjectMocks
+    private GcraRateLimitStrategy gcraRateLimitStrategy;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testZeroThresholdDeniesWithoutRoundTrip() {
+        RateLimiterResponse response = gcraRateLimitStrategy.checkRateLimit("user123", new Policy(0, 1));
+
+        assertFalse(response.isAllowed());
+        assertNotNull(response.getRetryAfter());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testFirstRequestIsAllowed() {
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class),
+                eq(GcraState.class))
+        ).thenReturn(null);
+
+        RateLimiterResponse response = gcraRateLimitStrategy.checkRateLimit("user123", POLICY);
+
+        assertTrue(response.isAllowed());
+        assertNull(response.getRetryAfter());
+    }
+
+    @Test
+    void testRequestWithinBurstToleranceIsAllowed() {
+        // Four requests already spaced 12 seconds apart: the TAT is 48 seconds ahead, the tolerance is 48 seconds
+        Instant tat = Instant.now().plusSeconds(47);
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class),
+                eq(GcraState.class))
+        ).thenReturn(new GcraState("user123", tat));
+
+        assertTrue(gcraRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+    }
+
+    @Test
+    void testRequestBeyondBurstToleranceIsDeniedUntilTatMinusTolerance() {
+        Instant tat = Instant.ofEpochMilli(System.currentTimeMillis()).plusSeconds(60);
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class),
+                eq(GcraState.class))
+        ).thenReturn(new GcraState("user123", tat));
+
+        RateLimiterResponse response = gcraRateLimitStrategy.checkRateLimit("user123", POLICY);
+
+        assertFalse(response.isAllowed());
+        // The retry instant is reported with the TTL monitor offset the controller adds back
+        assertEquals(tat.minus(Duration.ofSeconds(48)).minusSeconds(60), response.getRetryAfter());
+    }
+
+    @Test
+    void testCostConformsOnlyIfAllItsIntervalsFitTheWindow() {
+        // Three intervals of 12 seconds leave a tolerance of 24 seconds
+        Instant tat = Instant.ofEpochMilli(System.currentTimeMillis()).plusSeconds(30);
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class),
+                eq(GcraState.class))
+        ).thenReturn(new GcraState("user123", tat));
+
+        RateLimiterResponse response = gcraRateLimitStrategy.checkRateLimit("user123", POLICY, 3);
+
+        assertFalse(response.isAllowed());
+        assertEquals(tat.minus(Duration.ofSeconds(24)).minusSeconds(60), response.getRetryAfter());
+        assertTrue(gcraRateLimitStrategy.checkRateLimit("user123", POLICY, 2).isAllowed());
+        assertTrue(gcraRateLimitStrategy.supportsCost());
+    }
+
+    @Test
+    void testThresholdAboveWindowMillisStillAdvancesTat() {
+        GcraRateLimitStrategy strategy = spy(gcraRateLimitStrategy);
+
+        strategy.checkRateLimit("user123", new Policy(120_000, 1));
+        strategy.checkRateLimit("user123", new Policy(120_000, 1), 3);
+
+        verify(strategy).buildUpdate(anyLong(), eq(1L), eq(119_999L));
+        verify(strategy).buildUpdate(anyLong(), eq(3L), eq(119_997L));
+    }
+
+    @Test
+    void testEmissionIntervalIsRoundedUpAndBurstStillAdmitsThreshold() {
+        // 60 seconds over 7 requests is an interval of 8572 ms, so the seventh request of a burst sees a TAT 51432 ms ahead
+        Policy policy = new Policy(7, 1);
+        Instant tat = Instant.ofEpochMilli(System.currentTimeMillis()).plusMillis(6 * 8_572L);
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class),
+                eq(GcraState.class))
+        ).thenReturn(new GcraState("user123", tat));
+        GcraRateLimitStrategy strategy = spy(gcraRateLimitStrategy);
+
+        assertTrue(strategy.checkRateLimit("user123", policy).isAllowed());
+        verify(strategy).buildUpdate(anyLong(), eq(8_572L), eq(6 * 8_572L));
+    }
+
+    @Test
+    void testCheckIsSingleConditionalUpsertWithoutFallback() {
+        gcraRateLimitStrategy.checkRateLimit("user123", POLICY);
+
+        verify(mongoTemplate).findAndModify(
+                any(Query.class),
+                any(UpdateDefinition.class),
+                argThat((FindAndModifyOptions options) -> options.isUpsert() && !options.isReturnNew()),
+                eq(GcraState.class));
+        verifyNoMoreInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testUpdateIsSinglePipelineStageOnTat() {
+        AggregationUpdate update = gcraRateLimitStrategy.buildUpdate(1_000L, 12_000L, 48_000L);
+
+        List<Document> pipeline = update.toPipeline(Aggregation.DEFAULT_CONTEXT);
+
+        assertEquals(1, pipeline.size());
+        Document set = pipeline.get(0).get("$set", Document.class);
+        assertEquals(List.of("tat"), List.copyOf(set.keySet()));
+    }
+}
@@ -0,0 +1,103 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.HeavyHitter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeavyHittersTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private HeavyHitters heavyHitters;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        heavyHitters = new HeavyHitters(meterRegistry, 1024, 3, 500);
+    }
+
+    @Test
+    void testHeaviestKeysStandOutFromLongTail() {
+        for (int i = 0; i < 20_000; i++) {
+            heavyHitters.record("user" + i, true); // Long tail filling the candidates first
+        }
+        for (int i = 0; i < 300; i++) {
+            heavyHitters.record("heavy", i < 200);
+            if (i % 2 == 0) {
+                heavyHitters.record("medium", true);
+            }
+        }
+
+        List<HeavyHitter> top = heavyHitters.top(2);
+
+        assertEquals("heavy", top.get(0).key());
+        assertTrue(top.get(0).requests() >= 300);
+        assertTrue(top.get(0).denials() >= 100);
+        assertEquals("medium", top.get(1).key());
+        assertEquals(top.get(0).requests(), meterRegistry.get("ratelimiter.heavyhitters.top.requests").gauge().value());
+    }
+
+    @Test
+    void testDecayHalvesCountsAndTrimsCandidates() {
+        for (int i = 0; i < 100; i++) {
+            heavyHitters.record("heavy", true);
+        }
+        for (int i = 0; i < 10; i++) {
+            heavyHitters.record("user" + i, true);
+        }
+
+        heavyHitters.decay();
+
+        List<HeavyHitter> top = heavyHitters.top(10);
+        assertEquals(3, top.size());
+        assertEquals(new HeavyHitter("heavy", 50, 0), top.get(0));
+    }
+
+    @Test
+    void testHotKeyListenersAreToldOnce() {
+        List<String> hotKeys = new ArrayList<>();
+        heavyHitters.onHotKey(hotKeys::add);
+
+        for (int i = 0; i < 1_000; i++) {
+            heavyHitters.record("heavy", true);
+        }
+
+        assertEquals(List.of("heavy"), hotKeys);
+        assertTrue(heavyHitters.isHot("heavy"));
+        assertEquals(1.0, meterRegistry.get("ratelimiter.heavyhitters.hot.keys").gauge().value());
+
+        heavyHitters.decay();
+        heavyHitters.decay();
+
+        assertFalse(heavyHitters.isHot("heavy"));
+    }
+
+    @Test
+    void testOnlyCandidatesBecomeHotAndHotKeysAreBounded() {
+        // A four-counter sketch inflates the estimate of every key past the hot threshold
+        HeavyHitters saturated = new HeavyHitters(meterRegistry, 4, 1, 500);
+        List<String> hotKeys = new ArrayList<>();
+        saturated.onHotKey(hotKeys::add);
+
+        for (int i = 0; i < 20_000; i++) {
+            saturated.record("user" + i, true);
+        }
+
+        assertTrue(hotKeys.size() <= 1);
+        hotKeys.forEach(key -> assertTrue(saturated.isHot(key)));
+    }
+
+    @Test
+    void testTopRejectsLimitBelowOne() {
+        heavyHitters.record("heavy", true);
+
+        assertThrows(IllegalArgumentException.class, () -> heavyHitters.top(0));
+        assertThrows(IllegalArgumentException.class, () -> heavyHitters.top(-1));
+        assertEquals(1, heavyHitters.top(1).size());
+    }
+}
@@ -0,0 +1,204 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodbdemo.ratelimiter.dto.MultiLimitResponse;
+import com.mongodbdemo.ratelimiter.entity.LimitCounter;
+import com.mongodbdemo.ratelimiter.metrics.RateLimiterMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class HierarchicalRateLimiterTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations increments;
+
+    @Mock
+    private BulkOperations decrements;
+
+    private HierarchicalRateLimiter hierarchicalRateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, LimitCounter.class)).thenReturn(increments);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, LimitCounter.class)).thenReturn(decrements);
+        hierarchicalRateLimiter = new HierarchicalRateLimiter(mongoTemplate, RateLimiterMetrics.noop());
+        ReflectionTestUtils.setField(hierarchicalRateLimiter, "tenantThreshold", 100);
+        ReflectionTestUtils.setField(hierarchicalRateLimiter, "userThreshold", 10);
+        ReflectionTestUtils.setField(hierarchicalRateLimiter, "endpointThreshold", 2);
+        ReflectionTestUtils.setField(hierarchicalRateLimiter, "expirationMinutes", 1);
+    }
+
+    @Test
+    void testLimitsAreListedFromBroadestToNarrowest() {
+        ReflectionTestUtils.setField(hierarchicalRateLimiter, "globalThreshold", 1000);
+
+        List<Limit> limits = hierarchicalRateLimiter.resolveLimits("acme", "user123", "/orders");
+
+        assertEquals(List.of("global", "tenant", "user", "endpoint"), limits.stream().map(Limit::dimension).toList());
+        assertEquals(List.of("global", "tenant:acme", "tenant:acme/user:user123", "tenant:acme/user:user123/endpoint:/orders"),
+                limits.stream().map(Limit::key).toList());
+    }
+
+    @Test
+    void testUserLimitAloneWithoutTenantOrEndpoint() {
+        List<Limit> limits = hierarchicalRateLimiter.resolveLimits(null, "user123", null);
+
+        assertEquals(1, limits.size());
+        assertEquals("user:user123", limits.get(0).key());
+    }
+
+    @Test
+    void testPolicyReplacesDefaultAndEnablesDisabledLimit() {
+        ReflectionTestUtils.setField(hierarchicalRateLimiter, "tenantThreshold", 0);
+        PolicyStore policyStore = mock(PolicyStore.class);
+        when(policyStore.lookup("tenant:acme")).thenReturn(new Policy(500, 1));
+        when(policyStore.lookup("tenant:acme/user:user123")).thenReturn(new Policy(50, 5));
+        hierarchicalRateLimiter.setPolicyStore(policyStore);
+
+        List<Limit> limits = hierarchicalRateLimiter.resolveLimits("acme", "user123", null);
+
+        assertEquals(List.of(new Limit("tenant", "tenant:acme", 500, 60_000L), new Limit("user", "tenant:acme/user:user123", 50, 300_000L)), limits);
+    }
+
+    @Test
+    void testAllowedCheckIncrementsEveryLimitFromNarrowestInOneBulkWrite() {
+        MultiLimitResponse response = hierarchicalRateLimiter.checkRateLimit("acme", "user123", "/orders");
+
+        assertTrue(response.isAllowed());
+        assertTrue(response.getExceededLimits().isEmpty());
+        InOrder inOrder = inOrder(increments);
+        for (String key : List.of("tenant:acme/user:user123/endpoint:/orders", "tenant:acme/user:user123", "tenant:acme")) {
+            inOrder.verify(increments).upsert(argThat((Query query) -> key.equals(query.getQueryObject().get("key"))), any(UpdateDefinition.class));
+        }
+        inOrder.verify(increments).execute();
+        verify(mongoTemplate).bulkOps(BulkOperations.BulkMode.ORDERED, LimitCounter.class);
+        verifyNoMoreInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testDeniedCheckTakesBackIncrementsAndReportsExceededLimits() {
+        ReflectionTestUtils.setField(hierarchicalRateLimiter, "globalThreshold", 1000);
+        Instant tenantReset = Instant.now().plusSeconds(40).truncatedTo(ChronoUnit.MILLIS);
+        Instant globalReset = Instant.now().plusSeconds(10).truncatedTo(ChronoUnit.MILLIS);
+        // The tenant counter, third from the narrowest, is full
+        when(increments.execute()).thenThrow(duplicateKeyAt(2));
+        when(mongoTemplate.find(any(Query.class), eq(LimitCounter.class))).thenReturn(List.of(
+                new LimitCounter("tenant:acme", 100, tenantReset),
+                new LimitCounter("global", 1000, globalReset)));
+
+        MultiLimitResponse response = hierarchicalRateLimiter.checkRateLimit("acme", "user123", "/orders");
+
+        assertFalse(response.isAllowed());
+        assertEquals(List.of("global", "tenant"), response.getExceededLimits());
+        // The retry instant is reported with the TTL monitor offset the controller adds back
+        assertEquals(tenantReset.minusSeconds(60), response.getRetryAfter());
+        // The quota reported is the tenant's, whose window ends last
+        assertEquals(100, response.getLimit());
+        assertEquals(0, response.getRemaining());
+        assertEquals(tenantReset, response.getReset());
+        verify(decrements).updateOne(argThat((Query query) -> "tenant:acme/user:user123/endpoint:/orders".equals(query.getQueryObject().get("key"))),
+                eq(new Update().inc("count", -1)));
+        verify(decrements).updateOne(argThat((Query query) -> "tenant:acme/user:user123".equals(query.getQueryObject().get("key"))),
+                eq(new Update().inc("count", -1)));
+        verify(decrements).execute();
+        verifyNoMoreInteractions(decrements);
+    }
+
+    @Test
+    void testMultiLimitChecksHaveTheirOwnMeters() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        HierarchicalRateLimiter metered = new HierarchicalRateLimiter(mongoTemplate, new RateLimiterMetrics(meterRegistry));
+        ReflectionTestUtils.setField(metered, "userThreshold", 10);
+        ReflectionTestUtils.setField(metered, "endpointThreshold", 2);
+        ReflectionTestUtils.setField(metered, "expirationMinutes", 1);
+        when(increments.execute()).thenThrow(duplicateKeyAt(1));
+        when(mongoTemplate.find(any(Query.class), eq(LimitCounter.class))).thenReturn(List.of(
+                new LimitCounter("user:user123", 10, Instant.now().plusSeconds(30))));
+        when(decrements.execute()).thenThrow(new DataAccessResourceFailureException("MongoDB unavailable"));
+
+        assertThrows(DataAccessResourceFailureException.class, () -> metered.checkRateLimit(null, "user123", "/orders"));
+
+        assertEquals(1, meterRegistry.get("ratelimiter.limits.bulkwrite").tag("outcome", "full").timer().count());
+        assertEquals(1, meterRegistry.get("ratelimiter.limits.compensations").tag("result", "error").counter().count());
+        // The rateLimiter findAndModify and duplicate-key meters are left to single-key checks
+        assertEquals(0, meterRegistry.get("ratelimiter.mongo.findandmodify").timers().stream().mapToLong(Timer::count).sum());
+        assertEquals(0, meterRegistry.get("ratelimiter.duplicatekey.fallbacks").counters().stream().mapToDouble(Counter::count).sum());
+    }
+
+    @Test
+    void testCounterWhoseWindowEndedBeforeTheReadIsRetried() {
+        Instant ended = Instant.now().minusSeconds(1);
+        when(increments.execute()).thenThrow(duplicateKeyAt(0)).thenReturn(null);
+        when(mongoTemplate.find(any(Query.class), eq(LimitCounter.class)))
+                .thenReturn(List.of(new LimitCounter("user:user123", 10, ended)));
+
+        assertTrue(hierarchicalRateLimiter.checkRateLimit(null, "user123", null).isAllowed());
+        verify(increments, times(2)).execute();
+        verifyNoInteractions(decrements);
+    }
+
+    @Test
+    void testQueryMatchesCounterBelowThresholdOrWithEndedWindow() {
+        Limit limit = new Limit("user", "tenant:acme/user:u.1", 10, 60_000L);
+
+        Document query = hierarchicalRateLimiter.buildQuery(limit, 1_000L).getQueryObject();
+
+        assertEquals("tenant:acme/user:u.1", query.get("key"));
+        assertEquals(List.of(new Document("count", new Document("$lt", 10)),
+                new Document("windowEnd", new Document("$not", new Document("$gt", new Date(1_000L))))), query.get("$or"));
+    }
+
+    @Test
+    void testUpdateIncrementsWithinWindowAndRestartsEndedWindow() {
+        Limit limit = new Limit("user", "tenant:acme/user:u.1", 10, 60_000L);
+
+        List<Document> pipeline = hierarchicalRateLimiter.buildUpdate(limit, 1_000L).toPipeline(Aggregation.DEFAULT_CONTEXT);
+
+        Document live = new Document("$gt", List.of("$windowEnd", new Date(1_000L)));
+        assertEquals(List.of(new Document("$set", new Document()
+                .append("count", new Document("$cond", List.of(live, new Document("$add", List.of("$count", 1)), 1)))
+                .append("windowEnd", new Document("$cond", List.of(live, "$windowEnd", new Date(61_000L)))))), pipeline);
+    }
+
+    private static BulkOperationException duplicateKeyAt(int index) {
+        BulkWriteError error = new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), index);
+        MongoBulkWriteException cause = new MongoBulkWriteException(BulkWriteResult.unacknowledged(), List.of(error),
+                null, new ServerAddress(), Set.of());
+        return new BulkOperationException("Bulk write failed", cause);
+    }
+}
@@ -0,0 +1,223 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import com.mongodbdemo.ratelimiter.metrics.RateLimiterMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class HotKeyShardingTest {
+
+    private static final Policy POLICY = new Policy(10, 1);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private HotKeySharding hotKeySharding;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        hotKeySharding = new HotKeySharding(mongoTemplate, new RateLimiterMetrics(meterRegistry),
+                Set.of("global"), 4, 3, 1);
+    }
+
+    @Test
+    void testShardQuotasSumToThreshold() {
+        int total = 0;
+        for (int shard = 0; shard < 4; shard++) {
+            total += HotKeySharding.quota(shard, 4, 10);
+        }
+
+        assertEquals(10, total);
+        assertEquals(3, HotKeySharding.quota(0, 4, 10));
+        assertEquals(2, HotKeySharding.quota(3, 4, 10));
+    }
+
+    @Test
+    void testCheckIncrementsOneShard() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(RateLimiter.class)))
+                .thenAnswer(invocation -> new RateLimiter(shardOf(invocation.getArgument(0)), 1, Instant.now().plusSeconds(60), 1L));
+
+        RateLimiterResponse response = hotKeySharding.checkRateLimit("global", POLICY);
+
+        assertTrue(response.isAllowed());
+        verify(mongoTemplate, times(1)).findAndModify(
+                argThat((Query query) -> shardOf(query).startsWith("global#")),
+                any(Update.class), any(FindAndModifyOptions.class), eq(RateLimiter.class));
+        verify(mongoTemplate, never()).find(any(Query.class), eq(RateLimiter.class));
+    }
+
+    @Test
+    void testCostIsChargedToOneShardWithEnoughHeadroom() {
+        Instant reset = Instant.now().plusSeconds(30);
+        // Quotas are 3, 3, 2 and 2: only shard 1 has room for a cost of 2
+        when(mongoTemplate.find(any(Query.class), eq(RateLimiter.class))).thenReturn(List.of(
+                new RateLimiter("global#0", 2, reset, 1L),
+                new RateLimiter("global#1", 1, reset, 1L),
+                new RateLimiter("global#2", 1, reset, 1L),
+                new RateLimiter("global#3", 2, reset, 1L)));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(RateLimiter.class)))
+                .thenAnswer(invocation -> {
+                    String shardId = shardOf(invocation.getArgument(0));
+                    if (!shardId.equals("global#1")) {
+                        throw new DuplicateKeyException("Shard is full");
+                    }
+                    return new RateLimiter(shardId, 3, reset, 1L);
+                });
+
+        assertTrue(hotKeySharding.checkRateLimit("global", POLICY, 2).isAllowed());
+        verify(mongoTemplate, atLeastOnce()).findAndModify(
+                argThat((Query query) -> shardOf(query).equals("global#1")
+                        && query.getQueryObject().toJson().contains("\"$lt\": 2")),
+                argThat((Update update) -> update.getUpdateObject().get("$inc", Document.class).get("counter").equals(2)),
+                any(FindAndModifyOptions.class), eq(RateLimiter.class));
+    }
+
+    @Test
+    void testCostAboveEveryShardQuotaIsDeniedWithoutRoundTrip() {
+        assertFalse(hotKeySharding.checkRateLimit("global", POLICY, 4).isAllowed());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testShardsOfEndedWindowLeftByTtlIndexAreRemovedAndRestarted() {
+        Instant ended = Instant.now().minusSeconds(61);
+        List<RateLimiter> shards = new ArrayList<>();
+        for (int shard = 0; shard < 4; shard++) {
+            shards.add(new RateLimiter("global#" + shard, HotKeySharding.quota(shard, 4, 10), ended, 1L));
+        }
+        when(mongoTemplate.find(any(Query.class), eq(RateLimiter.class))).thenReturn(shards);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(RateLimiter.class)))
+                .thenThrow(new DuplicateKeyException("Shard window ended"))
+                .thenAnswer(invocation -> new RateLimiter(shardOf(invocation.getArgument(0)), 1, Instant.now(), 1L));
+
+        assertTrue(hotKeySharding.checkRateLimit("global", POLICY).isAllowed());
+        verify(mongoTemplate).remove(argThat((Query query) -> query.getQueryObject().toJson().contains("global#3")),
+                eq(RateLimiter.class));
+    }
+
+    @Test
+    void testFullShardMovesToShardWithHeadroom() {
+        Instant reset = Instant.now().plusSeconds(30);
+        List<RateLimiter> shards = new ArrayList<>();
+        for (int shard = 0; shard < 3; shard++) {
+            shards.add(new RateLimiter("global#" + shard, HotKeySharding.quota(shard, 4, 10), reset, 1L));
+        }
+        shards.add(new RateLimiter("global#3", 1, reset, 1L));
+        when(mongoTemplate.find(any(Query.class), eq(RateLimiter.class))).thenReturn(shards);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(RateLimiter.class)))
+                .thenAnswer(invocation -> {
+                    String shardId = shardOf(invocation.getArgument(0));
+                    if (!shardId.equals("global#3")) {
+                        throw new DuplicateKeyException("Shard is full");
+                    }
+                    return new RateLimiter(shardId, 2, reset, 1L);
+                });
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(hotKeySharding.checkRateLimit("global", POLICY).isAllowed());
+        }
+        verify(mongoTemplate, times(20)).findAndModify(
+                argThat((Query query) -> shardOf(query).equals("global#3")),
+                any(Update.class), any(FindAndModifyOptions.class), eq(RateLimiter.class));
+    }
+
+    @Test
+    void testDeniedWithEarliestShardResetWhenAllShardsAreFull() {
+        Instant earliest = Instant.now().plusSeconds(10);
+        List<RateLimiter> shards = new ArrayList<>();
+        for (int shard = 0; shard < 4; shard++) {
+            shards.add(new RateLimiter("global#" + shard, HotKeySharding.quota(shard, 4, 10), earliest.plusSeconds(shard), 1L));
+        }
+        when(mongoTemplate.find(any(Query.class), eq(RateLimiter.class))).thenReturn(shards);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(RateLimiter.class)))
+                .thenThrow(new DuplicateKeyException("Shard is full"));
+
+        RateLimiterResponse response = hotKeySharding.checkRateLimit("global", POLICY);
+
+        assertFalse(response.isAllowed());
+        assertEquals(earliest, response.getRetryAfter());
+        verify(mongoTemplate, times(1)).findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(RateLimiter.class));
+    }
+
+    @Test
+    void testPolicyThresholdSetsShardQuotas() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(RateLimiter.class)))
+                .thenAnswer(invocation -> new RateLimiter(shardOf(invocation.getArgument(0)), 1, Instant.now().plusSeconds(60), 1L));
+
+        assertTrue(hotKeySharding.checkRateLimit("global", new Policy(2, 1)).isAllowed());
+
+        // Two shards of one permit each, whatever rate.limiter.threshold is
+        verify(mongoTemplate).findAndModify(
+                argThat((Query query) -> shardOf(query).matches("global#[01]")
+                        && query.getQueryObject().toJson().contains("\"$lt\": 1")),
+                any(Update.class), any(FindAndModifyOptions.class), eq(RateLimiter.class));
+    }
+
+    @Test
+    void testHotKeyIsPromotedAfterContentionThreshold() {
+        hotKeySharding.recordContention("user123");
+        hotKeySharding.recordContention("user123");
+        hotKeySharding.recordContention("user123");
+        hotKeySharding.recordContention("user123");
+
+        assertEquals(1, meterRegistry.get("ratelimiter.sharding.promotions").counter().count());
+        // The unsharded window that was live at promotion must end first
+        assertFalse(hotKeySharding.isSharded("user123"));
+    }
+
+    @Test
+    void testKeyReportedHotByHeavyHittersIsPromoted() {
+        HeavyHitters heavyHitters = new HeavyHitters(new SimpleMeterRegistry(), 64, 4, 5);
+        hotKeySharding.setHeavyHitters(heavyHitters);
+
+        for (int i = 0; i < 5; i++) {
+            heavyHitters.record("user123", true);
+        }
+
+        assertEquals(1, meterRegistry.get("ratelimiter.sharding.promotions").counter().count());
+    }
+
+    @Test
+    void testContentionIsCountedPerDetectionInterval() {
+        hotKeySharding.recordContention("user123");
+        hotKeySharding.recordContention("user123");
+        hotKeySharding.resetContention();
+        hotKeySharding.recordContention("user123");
+
+        assertEquals(0, meterRegistry.get("ratelimiter.sharding.promotions").counter().count());
+    }
+
+    @Test
+    void testConfiguredKeysAreAlwaysSharded() {
+        assertTrue(hotKeySharding.isSharded("global"));
+        assertFalse(hotKeySharding.isSharded("user123"));
+    }
+
+    private static String shardOf(Query query) {
+        return query.getQueryObject().get("userId").toString();
+    }
+}
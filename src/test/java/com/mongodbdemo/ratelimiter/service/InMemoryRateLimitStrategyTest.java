@@ -0,0 +1,75 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryRateLimitStrategyTest {
+
+    private static final Policy POLICY = new Policy(2, 1);
+
+    private InMemoryRateLimitStrategy inMemoryRateLimitStrategy;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        inMemoryRateLimitStrategy = new InMemoryRateLimitStrategy(1024, "");
+    }
+
+    @Test
+    void testAllowsUpToThreshold() {
+        assertTrue(inMemoryRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+        assertTrue(inMemoryRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+    }
+
+    @Test
+    void testCostIsConsumedOnlyIfItFits() {
+        assertTrue(inMemoryRateLimitStrategy.supportsCost());
+        assertTrue(inMemoryRateLimitStrategy.checkRateLimit("user123", POLICY, 1).isAllowed());
+
+        assertFalse(inMemoryRateLimitStrategy.checkRateLimit("user123", POLICY, 2).isAllowed());
+        assertTrue(inMemoryRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+    }
+
+    @Test
+    void testCostAboveThresholdIsDeniedEvenAsFirstRequestOfWindow() {
+        assertFalse(inMemoryRateLimitStrategy.checkRateLimit("user123", new Policy(0, 1)).isAllowed());
+        assertFalse(inMemoryRateLimitStrategy.checkRateLimit("user456", POLICY, 3).isAllowed());
+        // The denied request did not start a window
+        assertTrue(inMemoryRateLimitStrategy.checkRateLimit("user456", POLICY, 2).isAllowed());
+    }
+
+    @Test
+    void testDeniedResponseKeepsControllerRetryAfterContract() {
+        Instant windowStart = Instant.now();
+        inMemoryRateLimitStrategy.checkRateLimit("user123", POLICY);
+        inMemoryRateLimitStrategy.checkRateLimit("user123", POLICY);
+
+        RateLimiterResponse response = inMemoryRateLimitStrategy.checkRateLimit("user123", POLICY);
+
+        assertFalse(response.isAllowed());
+        // The controller adds the TTL monitor interval back, which yields the end of the one-minute window
+        Instant windowEnd = response.getRetryAfter().plusSeconds(60);
+        assertTrue(!windowEnd.isBefore(windowStart.plusSeconds(59)) && !windowEnd.isAfter(windowStart.plusSeconds(61)));
+    }
+
+    @Test
+    void testMappedCountersSurviveRestart(@TempDir Path directory) throws IOException {
+        String file = directory.resolve("counters.table").toString();
+        InMemoryRateLimitStrategy beforeRestart = new InMemoryRateLimitStrategy(1024, file);
+        beforeRestart.checkRateLimit("user123", POLICY);
+        beforeRestart.checkRateLimit("user123", POLICY);
+        beforeRestart.close();
+
+        InMemoryRateLimitStrategy afterRestart = new InMemoryRateLimitStrategy(1024, file);
+
+        assertFalse(afterRestart.checkRateLimit("user123", POLICY).isAllowed());
+        afterRestart.close();
+    }
+}
@@ -0,0 +1,261 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LeaseRateLimitStrategyTest {
+
+    private static final Policy POLICY = new Policy(100, 1);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @InjectMocks
+    private LeaseRateLimitStrategy leaseRateLimitStrategy;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(leaseRateLimitStrategy, "maxBlockSize", 10);
+        ReflectionTestUtils.setField(leaseRateLimitStrategy, "leaseDurationMillis", 60_000L);
+    }
+
+    @Test
+    void testChecksAreServedFromLeasedBlock() {
+        String userId = "user123";
+        LeaseRateLimitStrategy.Lease lease = new LeaseRateLimitStrategy.Lease();
+        lease.refill(4, Instant.now().plusSeconds(60), System.currentTimeMillis(), 60_000L, 0.5);
+        leases().put(userId, lease);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(leaseRateLimitStrategy.checkRateLimit(userId, POLICY).isAllowed());
+        }
+
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testExhaustedLeaseClaimsNewBlock() {
+        String userId = "user123";
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(AggregationUpdate.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class))
+        ).thenReturn(null);
+
+        RateLimiterResponse response = leaseRateLimitStrategy.checkRateLimit(userId, POLICY);
+
+        assertTrue(response.isAllowed());
+        verify(mongoTemplate, times(1)).findAndModify(
+                any(Query.class),
+                any(AggregationUpdate.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class));
+    }
+
+    @Test
+    void testClaimedBlockServesNextChecksWithinOneMinuteWindow() {
+        String userId = "user123";
+        LeaseRateLimitStrategy.Lease lease = new LeaseRateLimitStrategy.Lease();
+        lease.ratePerMilli = 1.0;
+        leases().put(userId, lease);
+        // A new document: its expirationTime is the window end minus the TTL monitor interval, i.e. now
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(AggregationUpdate.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class))
+        ).thenReturn(null);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(leaseRateLimitStrategy.checkRateLimit(userId, new Policy(100, 1)).isAllowed());
+        }
+
+        verify(mongoTemplate, times(1)).findAndModify(
+                any(Query.class),
+                any(AggregationUpdate.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class));
+        verifyNoMoreInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testBlockClaimedFromLiveWindowIsServedAndHandedBack() {
+        String userId = "user123";
+        LeaseRateLimitStrategy.Lease lease = new LeaseRateLimitStrategy.Lease();
+        lease.ratePerMilli = 1.0;
+        leases().put(userId, lease);
+        // The window ends in 30 seconds, so the stored expirationTime is already in the past
+        Instant expirationTime = Instant.now().minusSeconds(30);
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(AggregationUpdate.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class))
+        ).thenReturn(new RateLimiter(userId, 20, expirationTime, 1L));
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(leaseRateLimitStrategy.checkRateLimit(userId, new Policy(100, 1)).isAllowed());
+        }
+        lease.validUntil = System.currentTimeMillis();
+        leaseRateLimitStrategy.releaseExpiredLeases();
+
+        verify(mongoTemplate, times(1)).findAndModify(
+                any(Query.class),
+                any(AggregationUpdate.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class));
+        verify(mongoTemplate).updateFirst(any(Query.class), eq(new Update().inc("counter", -6)), eq(RateLimiter.class));
+    }
+
+    @Test
+    void testBlockClaimedPastThresholdGrantsOnlyRemainingPermits() {
+        String userId = "user123";
+        LeaseRateLimitStrategy.Lease lease = new LeaseRateLimitStrategy.Lease();
+        lease.ratePerMilli = 1.0;
+        leases().put(userId, lease);
+        // Block of 10 claimed while the counter was at 97: only 3 permits are within the threshold
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(AggregationUpdate.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class))
+        ).thenReturn(new RateLimiter(userId, 97, Instant.now().plusSeconds(60), 1L));
+
+        assertTrue(leaseRateLimitStrategy.checkRateLimit(userId, POLICY).isAllowed());
+
+        assertEquals(2, lease.remaining.get());
+    }
+
+    @Test
+    void testClaimUpdateCapsCounterAtThreshold() {
+        Instant expirationTime = Instant.ofEpochMilli(1_700_000_000_000L);
+
+        Document set = leaseRateLimitStrategy.buildClaimUpdate(10, 100, expirationTime).toPipeline(Aggregation.DEFAULT_CONTEXT)
+                .get(0).get("$set", Document.class);
+
+        assertEquals(new Document("$min", List.of(
+                new Document("$add", List.of(new Document("$ifNull", List.of("$counter", 0)), 10)), 100)), set.get("counter"));
+        assertEquals(new Document("$ifNull", List.of("$expirationTime", Date.from(expirationTime))), set.get("expirationTime"));
+    }
+
+    @Test
+    void testCheckRetriesWithCurrentLeaseWhenSweeperRetiredIt() {
+        String userId = "user123";
+        LeaseRateLimitStrategy.Lease retired = new LeaseRateLimitStrategy.Lease();
+        retired.retired = true;
+        LeaseRateLimitStrategy.Lease current = new LeaseRateLimitStrategy.Lease();
+        current.refill(4, Instant.now().plusSeconds(60), System.currentTimeMillis(), 60_000L, 0.5);
+        Map<String, LeaseRateLimitStrategy.Lease> leases = leases();
+        leases.put(userId, retired);
+        // The sweeper swaps the lease out while the check waits for the retired lease's lock
+        retired.lock.lock();
+        CompletableFuture<RateLimiterResponse> check = CompletableFuture.supplyAsync(() -> leaseRateLimitStrategy.checkRateLimit(userId, POLICY));
+        try {
+            while (!retired.lock.hasQueuedThreads()) {
+                Thread.onSpinWait();
+            }
+            leases.put(userId, current);
+        } finally {
+            retired.lock.unlock();
+        }
+
+        assertTrue(check.join().isAllowed());
+        assertEquals(3, current.remaining.get());
+        assertEquals(0, retired.remaining.get());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testDuplicateKeyDeniesWithDocumentExpiration() {
+        String userId = "user123";
+        Instant expirationTime = Instant.now().plusSeconds(60);
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(AggregationUpdate.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class))
+        ).thenThrow(new DuplicateKeyException("Duplicate key"));
+        when(mongoTemplate.findById(eq(userId), eq(RateLimiter.class)))
+                .thenReturn(new RateLimiter(userId, 100, expirationTime, 1L));
+
+        RateLimiterResponse response = leaseRateLimitStrategy.checkRateLimit(userId, POLICY);
+
+        assertFalse(response.isAllowed());
+        assertEquals(expirationTime, response.getRetryAfter());
+    }
+
+    @Test
+    void testEndedWindowLeftByTtlIndexIsRemovedAndClaimedAgain() {
+        String userId = "user123";
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(AggregationUpdate.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class))
+        ).thenThrow(new DuplicateKeyException("Duplicate key")).thenReturn(null);
+        when(mongoTemplate.findById(eq(userId), eq(RateLimiter.class)))
+                .thenReturn(new RateLimiter(userId, 100, Instant.now().minusSeconds(61), 1L));
+
+        assertTrue(leaseRateLimitStrategy.checkRateLimit(userId, POLICY).isAllowed());
+        verify(mongoTemplate).remove(any(Query.class), eq(RateLimiter.class));
+    }
+
+    @Test
+    void testExpiredLeaseHandsBackUnusedPermits() {
+        String userId = "user123";
+        LeaseRateLimitStrategy.Lease lease = new LeaseRateLimitStrategy.Lease();
+        long claimedAt = System.currentTimeMillis() - 180_000L;
+        lease.refill(5, Instant.now().plusSeconds(60), claimedAt, 1_000L, 0.5);
+        leases().put(userId, lease);
+
+        leaseRateLimitStrategy.releaseExpiredLeases();
+
+        verify(mongoTemplate).updateFirst(any(Query.class), eq(new Update().inc("counter", -5)), eq(RateLimiter.class));
+        assertFalse(leases().containsKey(userId));
+    }
+
+    @Test
+    void testBlockSizeFollowsObservedRate() {
+        LeaseRateLimitStrategy.Lease lease = new LeaseRateLimitStrategy.Lease();
+
+        assertEquals(1, leaseRateLimitStrategy.nextBlockSize(lease, 100));
+
+        lease.ratePerMilli = 0.0001; // 6 requests per lease of one minute
+        assertEquals(6, leaseRateLimitStrategy.nextBlockSize(lease, 100));
+
+        lease.ratePerMilli = 1.0;
+        assertEquals(10, leaseRateLimitStrategy.nextBlockSize(lease, 100));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, LeaseRateLimitStrategy.Lease> leases() {
+        return (Map<String, LeaseRateLimitStrategy.Lease>) ReflectionTestUtils.getField(leaseRateLimitStrategy, "leases");
+    }
+}
@@ -0,0 +1,175 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Instant;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class NativeRateLimitStrategyTest {
+
+    private static final Policy POLICY = new Policy(5, 1);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private MongoCollection<Document> rateLimiters;
+
+    @Mock
+    private MongoCollection<RawBsonDocument> collection;
+
+    @Mock
+    private FindIterable<RawBsonDocument> findIterable;
+
+    private NativeRateLimitStrategy nativeRateLimitStrategy;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(mongoTemplate.getCollectionName(RateLimiter.class)).thenReturn("rateLimiter");
+        when(mongoTemplate.getCollection("rateLimiter")).thenReturn(rateLimiters);
+        when(rateLimiters.withDocumentClass(RawBsonDocument.class)).thenReturn(collection);
+        when(collection.find(any(Bson.class))).thenReturn(findIterable);
+        when(findIterable.projection(any(Bson.class))).thenReturn(findIterable);
+        nativeRateLimitStrategy = new NativeRateLimitStrategy(mongoTemplate, 5, 1);
+    }
+
+    @Test
+    void testCheckRateLimitAllowed() {
+        when(collection.findOneAndUpdate(any(Bson.class), any(Bson.class), any(FindOneAndUpdateOptions.class)))
+                .thenReturn(projected(Instant.now().plusSeconds(60)));
+
+        RateLimiterResponse response = nativeRateLimitStrategy.checkRateLimit("user123", POLICY);
+
+        assertTrue(response.isAllowed());
+        verify(collection).findOneAndUpdate(
+                argThat((Bson filter) -> ((BsonDocument) filter).getDocument("counter").equals(BsonDocument.parse("{$lt: 5}"))
+                        && ((BsonDocument) filter).getDocument("expirationTime").containsKey("$gt")),
+                any(Bson.class),
+                any(FindOneAndUpdateOptions.class));
+        verify(collection, never()).find(any(Bson.class));
+    }
+
+    @Test
+    void testCheckRateLimitDeniedWithExistingExpiration() {
+        Instant expirationTime = Instant.ofEpochMilli(System.currentTimeMillis() + 30_000);
+        when(collection.findOneAndUpdate(any(Bson.class), any(Bson.class), any(FindOneAndUpdateOptions.class)))
+                .thenThrow(duplicateKey());
+        when(findIterable.first()).thenReturn(projected(expirationTime));
+
+        RateLimiterResponse response = nativeRateLimitStrategy.checkRateLimit("user123", POLICY);
+
+        assertFalse(response.isAllowed());
+        assertEquals(expirationTime, response.getRetryAfter());
+        verify(collection).find(BsonDocument.parse("{_id: 'user123'}"));
+    }
+
+    @Test
+    void testDuplicateKeyWithoutDocumentIsRetried() {
+        when(collection.findOneAndUpdate(any(Bson.class), any(Bson.class), any(FindOneAndUpdateOptions.class)))
+                .thenThrow(duplicateKey())
+                .thenReturn(projected(Instant.now().plusSeconds(60)));
+        when(findIterable.first()).thenReturn(null);
+
+        RateLimiterResponse response = nativeRateLimitStrategy.checkRateLimit("user123", POLICY);
+
+        assertTrue(response.isAllowed());
+        verify(collection, times(2)).findOneAndUpdate(any(Bson.class), any(Bson.class), any(FindOneAndUpdateOptions.class));
+    }
+
+    @Test
+    void testEndedWindowLeftByTtlIndexIsRemovedAndRestarted() {
+        Instant expirationTime = Instant.ofEpochMilli(System.currentTimeMillis() - 61_000);
+        when(collection.findOneAndUpdate(any(Bson.class), any(Bson.class), any(FindOneAndUpdateOptions.class)))
+                .thenThrow(duplicateKey())
+                .thenReturn(projected(Instant.now().plusSeconds(60)));
+        when(findIterable.first()).thenReturn(projected(expirationTime));
+
+        RateLimiterResponse response = nativeRateLimitStrategy.checkRateLimit("user123", POLICY);
+
+        assertTrue(response.isAllowed());
+        verify(collection).deleteOne(new BsonDocument("_id", new BsonString("user123"))
+                .append("expirationTime", new BsonDateTime(expirationTime.toEpochMilli())));
+    }
+
+    @Test
+    void testOtherServerErrorsArePropagated() {
+        when(collection.findOneAndUpdate(any(Bson.class), any(Bson.class), any(FindOneAndUpdateOptions.class)))
+                .thenThrow(new MongoCommandException(new BsonDocument("code", new BsonInt32(13))
+                        .append("errmsg", new BsonString("Unauthorized")), new ServerAddress()));
+
+        assertThrows(MongoCommandException.class, () -> nativeRateLimitStrategy.checkRateLimit("user123", POLICY));
+    }
+
+    @Test
+    void testUpdateIsSharedWithinOneSecond() {
+        BsonDocument first = nativeRateLimitStrategy.update(1_000, POLICY);
+
+        assertSame(first, nativeRateLimitStrategy.update(1_000, POLICY));
+        assertNotSame(first, nativeRateLimitStrategy.update(1_001, POLICY));
+        assertEquals(BsonDocument.parse("{$inc: {counter: 1}, $setOnInsert: {expirationTime: {$date: 1000000}}}"), first);
+    }
+
+    @Test
+    void testPolicyOfItsOwnSetsThresholdAndWindow() {
+        Policy policy = new Policy(2, 10);
+
+        assertEquals(BsonDocument.parse("{_id: 'user123', counter: {$lt: 2}, expirationTime: {$gt: {$date: 940000}}}"),
+                nativeRateLimitStrategy.filter(new BsonString("user123"), 1_000, policy));
+        assertEquals(BsonDocument.parse("{$inc: {counter: 1}, $setOnInsert: {expirationTime: {$date: 1540000}}}"),
+                nativeRateLimitStrategy.update(1_000, policy));
+    }
+
+    @Test
+    void testDecoderDecodesOnlyExpirationTime() {
+        Date expirationTime = new Date(1_700_000_000_000L);
+        RawBsonDocument document = RawBsonDocument.parse(new Document("_id", "user123")
+                .append("counter", 3)
+                .append("createdAt", new Date(0))
+                .append("expirationTime", expirationTime)
+                .append("version", 7L)
+                .toJson());
+
+        Instant decoded = NativeRateLimitStrategy.expirationTime(document);
+
+        assertEquals(expirationTime.toInstant(), decoded);
+        assertNull(new ExpirationTimeDecoder().decode(
+                new BsonDocumentReader(new BsonDocument("_id", new BsonString("user123"))), DecoderContext.builder().build()));
+    }
+
+    private static RawBsonDocument projected(Instant expirationTime) {
+        return RawBsonDocument.parse(new Document("expirationTime", Date.from(expirationTime)).toJson());
+    }
+
+    private static MongoCommandException duplicateKey() {
+        return new MongoCommandException(new BsonDocument("code", new BsonInt32(11000))
+                .append("errmsg", new BsonString("E11000 duplicate key error")), new ServerAddress());
+    }
+}
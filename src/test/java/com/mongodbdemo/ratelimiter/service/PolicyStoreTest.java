@@ -0,0 +1,63 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.entity.LimitPolicy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PolicyStoreTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @InjectMocks
+    private PolicyStore policyStore;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testLookupUsesLastLoadedPoliciesWithoutQuerying() {
+        when(mongoTemplate.findAll(LimitPolicy.class)).thenReturn(List.of(new LimitPolicy("user123", 20, 1)));
+        policyStore.reload();
+
+        assertEquals(new Policy(20, 1), policyStore.lookup("user123"));
+        assertNull(policyStore.lookup("user456"));
+        verify(mongoTemplate, times(1)).findAll(LimitPolicy.class);
+    }
+
+    @Test
+    void testReloadPicksUpChangedPolicies() {
+        when(mongoTemplate.findAll(LimitPolicy.class))
+                .thenReturn(List.of(new LimitPolicy("user123", 20, 1)))
+                .thenReturn(List.of(new LimitPolicy("user*", 3, 2)));
+
+        policyStore.reload();
+        policyStore.reload();
+
+        assertEquals(new Policy(3, 2), policyStore.lookup("user123"));
+    }
+
+    @Test
+    void testFailedReloadKeepsCurrentPolicies() {
+        when(mongoTemplate.findAll(LimitPolicy.class))
+                .thenReturn(List.of(new LimitPolicy("user123", 20, 1)))
+                .thenThrow(new DataAccessResourceFailureException("unreachable"));
+
+        policyStore.reload();
+        policyStore.reload();
+
+        assertEquals(new Policy(20, 1), policyStore.lookup("user123"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.entity.LimitPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PolicyTableTest {
+
+    private final PolicyTable table = new PolicyTable(List.of(
+            new LimitPolicy("*", 5, 1),
+            new LimitPolicy("tenant:acme/*", 50, 1),
+            new LimitPolicy("tenant:acme/user:bot*", 1, 10),
+            new LimitPolicy("tenant:acme/user:admin", 1000, 1)));
+
+    @Test
+    void testExactPatternWinsOverPrefixes() {
+        assertEquals(new Policy(1000, 1), table.lookup("tenant:acme/user:admin"));
+    }
+
+    @Test
+    void testLongestPrefixWins() {
+        assertEquals(new Policy(1, 10), table.lookup("tenant:acme/user:bot42"));
+        assertEquals(new Policy(50, 1), table.lookup("tenant:acme/user:alice"));
+        assertEquals(new Policy(5, 1), table.lookup("tenant:other/user:alice"));
+    }
+
+    @Test
+    void testExactPatternDoesNotMatchLongerKeys() {
+        assertEquals(new Policy(50, 1), table.lookup("tenant:acme/user:administrator"));
+    }
+
+    @Test
+    void testNoMatchWithoutCatchAll() {
+        PolicyTable withoutCatchAll = new PolicyTable(List.of(new LimitPolicy("tenant:acme/*", 50, 1)));
+
+        assertNull(withoutCatchAll.lookup("tenant:other"));
+        assertNull(PolicyTable.EMPTY.lookup("tenant:acme/user:alice"));
+    }
+
+    @Test
+    void testFallbackModeIsParsedAndUnknownModesUseDefault() {
+        PolicyTable withFallbacks = new PolicyTable(List.of(
+                new LimitPolicy("tenant:acme/*", 50, 1, "closed"),
+                new LimitPolicy("tenant:other/*", 50, 1, "sideways")));
+
+        assertEquals(FallbackMode.CLOSED, withFallbacks.lookup("tenant:acme/user:alice").fallback());
+        assertNull(withFallbacks.lookup("tenant:other/user:bob").fallback());
+    }
+
+    @Test
+    void testPoliciesBelowOneAreIgnored() {
+        PolicyTable withInvalid = new PolicyTable(List.of(
+                new LimitPolicy("tenant:acme/*", 50, 1),
+                new LimitPolicy("tenant:acme/user:bot*", 0, 1),
+                new LimitPolicy("tenant:acme/user:admin", 1000, 0)));
+
+        assertEquals(1, withInvalid.size());
+        assertEquals(new Policy(50, 1), withInvalid.lookup("tenant:acme/user:bot42"));
+        assertEquals(new Policy(50, 1), withInvalid.lookup("tenant:acme/user:admin"));
+    }
+}
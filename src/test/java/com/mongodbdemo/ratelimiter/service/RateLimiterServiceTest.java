@@ -2,6 +2,14 @@ package com.mongodbdemo.ratelimiter.service;
 
 import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
 import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import com.mongodbdemo.ratelimiter.metrics.RateLimiterMetrics;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -9,16 +17,25 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.TTL_MONITOR_INTERVAL_SECONDS;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -89,6 +106,101 @@ class RateLimiterServiceTest {
         assertNotNull(response.getRetryAfter());
     }
 
+    @Test
+    void testWeightedCheckIncrementsByCostOnlyIfItFits() {
+        String userId = "user123";
+        ReflectionTestUtils.setField(rateLimiterService, "threshold", 10);
+        ReflectionTestUtils.setField(rateLimiterService, "expirationMinutes", 1);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(RateLimiter.class)))
+                .thenReturn(new RateLimiter(userId, 7, Instant.now().plusSeconds(60), 1L));
+
+        RateLimiterResponse response = rateLimiterService.checkWeightedRateLimit(userId, 3);
+
+        assertTrue(response.isAllowed());
+        assertEquals(3, response.getRemaining());
+        verify(mongoTemplate).findAndModify(
+                argThat((Query query) -> query.getQueryObject().toJson().contains("\"$lt\": 8")),
+                argThat((Update update) -> update.getUpdateObject().get("$inc", Document.class).get("counter").equals(3)),
+                any(FindAndModifyOptions.class), eq(RateLimiter.class));
+    }
+
+    @Test
+    void testEndedWindowLeftByTtlIndexIsRemovedAndRestarted() {
+        String userId = "user123";
+        ReflectionTestUtils.setField(rateLimiterService, "threshold", 5);
+        ReflectionTestUtils.setField(rateLimiterService, "expirationMinutes", 1);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(RateLimiter.class)))
+                .thenThrow(new DuplicateKeyException("Duplicate key error"))
+                .thenReturn(new RateLimiter(userId, 1, Instant.now(), 1L));
+        // The window ended a second ago, but the TTL index has not removed the full document
+        when(mongoTemplate.findById(userId, RateLimiter.class))
+                .thenReturn(new RateLimiter(userId, 5, Instant.now().minusSeconds(TTL_MONITOR_INTERVAL_SECONDS + 1), 1L));
+
+        RateLimiterResponse response = rateLimiterService.checkRateLimit(userId);
+
+        assertTrue(response.isAllowed());
+        assertEquals(4, response.getRemaining());
+        verify(mongoTemplate).remove(argThat((Query query) -> query.getQueryObject().toJson().contains("\"$lte\"")), eq(RateLimiter.class));
+        verify(mongoTemplate, times(2)).findAndModify(
+                argThat((Query query) -> query.getQueryObject().toJson().contains("\"expirationTime\": {\"$gt\"")),
+                any(Update.class), any(FindAndModifyOptions.class), eq(RateLimiter.class));
+    }
+
+    @Test
+    void testWeightedCheckThatDoesNotFitConsumesNothing() {
+        String userId = "user123";
+        Instant expirationTime = Instant.now().plusSeconds(60);
+        ReflectionTestUtils.setField(rateLimiterService, "threshold", 10);
+        ReflectionTestUtils.setField(rateLimiterService, "expirationMinutes", 1);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(RateLimiter.class)))
+                .thenThrow(new DuplicateKeyException("Duplicate key error"));
+        when(mongoTemplate.findById(userId, RateLimiter.class)).thenReturn(new RateLimiter(userId, 8, expirationTime, 1L));
+
+        RateLimiterResponse response = rateLimiterService.checkWeightedRateLimit(userId, 3);
+
+        assertFalse(response.isAllowed());
+        assertEquals(expirationTime, response.getRetryAfter());
+        assertEquals(2, response.getRemaining());
+        verify(mongoTemplate, times(1)).findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(RateLimiter.class));
+    }
+
+    @Test
+    void testWeightedCheckAboveLimitIsDeniedWithoutRoundTrip() {
+        ReflectionTestUtils.setField(rateLimiterService, "threshold", 10);
+        ReflectionTestUtils.setField(rateLimiterService, "expirationMinutes", 1);
+
+        assertFalse(rateLimiterService.checkWeightedRateLimit("user123", 11).isAllowed());
+        assertThrows(IllegalArgumentException.class, () -> rateLimiterService.checkWeightedRateLimit("user123", 0));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testWeightedCheckIsChargedByConfiguredStrategy() {
+        RateLimitStrategy strategy = mock(RateLimitStrategy.class);
+        when(strategy.supportsCost()).thenReturn(true);
+        when(strategy.checkRateLimit(eq("user123"), any(Policy.class), eq(3))).thenReturn(new RateLimiterResponse(true, null));
+        rateLimiterService.setRateLimitStrategy(strategy);
+        ReflectionTestUtils.setField(rateLimiterService, "threshold", 10);
+        ReflectionTestUtils.setField(rateLimiterService, "expirationMinutes", 1);
+
+        assertTrue(rateLimiterService.checkWeightedRateLimit("user123", 3).isAllowed());
+        verify(strategy).checkRateLimit("user123", new Policy(10, 1), 3);
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testWeightedCheckIsRejectedWhenStrategyCannotChargeCost() {
+        RateLimitStrategy strategy = mock(RateLimitStrategy.class);
+        rateLimiterService.setRateLimitStrategy(strategy);
+        ReflectionTestUtils.setField(rateLimiterService, "threshold", 10);
+        ReflectionTestUtils.setField(rateLimiterService, "expirationMinutes", 1);
+
+        assertFalse(rateLimiterService.supportsWeightedChecks());
+        assertThrows(UnsupportedOperationException.class, () -> rateLimiterService.checkWeightedRateLimit("user123", 3));
+        verify(strategy, never()).checkRateLimit(anyString(), any(Policy.class), anyInt());
+        verifyNoInteractions(mongoTemplate);
+    }
+
     @Test
     void testCheckRateLimitDuplicateKeyException() {
         String userId = "user123";
@@ -127,6 +239,310 @@ class RateLimiterServiceTest {
         );
     }
 
+    @Test
+    void testCheckRateLimitDelegatesToConfiguredStrategy() {
+        String userId = "user123";
+        RateLimitStrategy strategy = mock(RateLimitStrategy.class);
+        when(strategy.checkRateLimit(eq(userId), any(Policy.class))).thenReturn(new RateLimiterResponse(true, null));
+        rateLimiterService.setRateLimitStrategy(strategy);
+
+        RateLimiterResponse response = rateLimiterService.checkRateLimit(userId);
+
+        assertTrue(response.isAllowed());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testConfiguredStrategyIsGivenThePolicyOfTheKey() {
+        String userId = "user123";
+        PolicyStore policyStore = mock(PolicyStore.class);
+        when(policyStore.lookup(userId)).thenReturn(new Policy(20, 2));
+        rateLimiterService.setPolicyStore(policyStore);
+        RateLimitStrategy strategy = mock(RateLimitStrategy.class);
+        when(strategy.checkRateLimit(eq(userId), any(Policy.class))).thenReturn(new RateLimiterResponse(true, null));
+        rateLimiterService.setRateLimitStrategy(strategy);
+
+        rateLimiterService.checkRateLimit(userId);
+
+        verify(strategy).checkRateLimit(userId, new Policy(20, 2));
+    }
+
+    @Test
+    void testCheckRateLimitsSplitsMergedIncrementInRequestOrder() {
+        ReflectionTestUtils.setField(rateLimiterService, "threshold", 5);
+        Instant expirationTime = Instant.now().plusSeconds(60);
+        BulkOperations bulkOperations = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RateLimiter.class)).thenReturn(bulkOperations);
+        // userA was at 3 before its increment of 3, so only two of its three requests fit the threshold
+        when(mongoTemplate.find(any(Query.class), eq(RateLimiter.class))).thenReturn(List.of(
+                new RateLimiter("userA", 6, expirationTime, 1L),
+                new RateLimiter("userB", 1, expirationTime, 1L)));
+
+        List<RateLimiterResponse> responses = rateLimiterService.checkRateLimits(
+                List.of("userA", "userB", "userA", "userA"));
+
+        assertTrue(responses.get(0).isAllowed());
+        assertTrue(responses.get(1).isAllowed());
+        assertTrue(responses.get(2).isAllowed());
+        assertFalse(responses.get(3).isAllowed());
+        assertEquals(expirationTime, responses.get(3).getRetryAfter());
+        // Each occurrence reports the quota left after it
+        assertEquals(List.of(1, 4, 0, 0), responses.stream().map(RateLimiterResponse::getRemaining).toList());
+        assertTrue(responses.stream().allMatch(response -> response.getLimit() == 5));
+        verify(bulkOperations, times(2)).upsert(any(Query.class), any(Update.class));
+        verify(bulkOperations).execute();
+        verify(mongoTemplate, never()).findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(RateLimiter.class));
+    }
+
+    @Test
+    void testCheckRateLimitsCapsVanishedDocumentAtThreshold() {
+        ReflectionTestUtils.setField(rateLimiterService, "threshold", 2);
+        ReflectionTestUtils.setField(rateLimiterService, "expirationMinutes", 1);
+        BulkOperations bulkOperations = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RateLimiter.class)).thenReturn(bulkOperations);
+        // The increment succeeded but the window expired before the read
+        when(mongoTemplate.find(any(Query.class), eq(RateLimiter.class))).thenReturn(List.of());
+
+        List<RateLimiterResponse> responses = rateLimiterService.checkRateLimits(List.of("userA", "userA", "userA"));
+
+        assertEquals(List.of(true, true, false), responses.stream().map(RateLimiterResponse::isAllowed).toList());
+        assertNotNull(responses.get(2).getRetryAfter());
+        verify(bulkOperations).execute();
+    }
+
+    @Test
+    void testCheckRateLimitsRetriesOnlyDuplicateKeysWithoutDocument() {
+        ReflectionTestUtils.setField(rateLimiterService, "threshold", 5);
+        RateLimiterService spyService = spy(rateLimiterService);
+        doNothing().when(spyService).sleepWithBackoff(anyInt());
+        Instant expirationTime = Instant.now().plusSeconds(60);
+        BulkOperations firstBulk = mock(BulkOperations.class);
+        BulkOperations retryBulk = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RateLimiter.class))
+                .thenReturn(firstBulk, retryBulk);
+        // Both upserts collide; userA is over the limit while userB's document vanished before the read
+        when(firstBulk.execute()).thenThrow(bulkException(0, 1));
+        when(mongoTemplate.find(any(Query.class), eq(RateLimiter.class))).thenReturn(
+                List.of(new RateLimiter("userA", 5, expirationTime, 1L)),
+                List.of(new RateLimiter("userB", 1, expirationTime, 1L)));
+
+        List<RateLimiterResponse> responses = spyService.checkRateLimits(List.of("userA", "userB"));
+
+        assertFalse(responses.get(0).isAllowed());
+        assertEquals(expirationTime, responses.get(0).getRetryAfter());
+        assertTrue(responses.get(1).isAllowed());
+        verify(retryBulk, times(1)).upsert(any(Query.class), any(Update.class));
+        verify(spyService, times(1)).sleepWithBackoff(intThat(backoff -> backoff >= 50 && backoff <= 100));
+    }
+
+    @Test
+    void testCheckRateLimitsDelegatesToConfiguredStrategy() {
+        RateLimitStrategy strategy = mock(RateLimitStrategy.class);
+        List<String> userIds = List.of("userA", "userB");
+        when(strategy.checkRateLimits(eq(userIds), anyList())).thenReturn(List.of(
+                new RateLimiterResponse(true, null), new RateLimiterResponse(true, null)));
+        rateLimiterService.setRateLimitStrategy(strategy);
+
+        List<RateLimiterResponse> responses = rateLimiterService.checkRateLimits(userIds);
+
+        assertEquals(2, responses.size());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testCheckRateLimitRecordsRetriesFallbacksAndVerdict() {
+        String userId = "user123";
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        rateLimiterService.setMetrics(new RateLimiterMetrics(meterRegistry));
+        RateLimiterService spyService = spy(rateLimiterService);
+        doNothing().when(spyService).sleepWithBackoff(anyInt());
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(Update.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class))
+        ).thenThrow(new OptimisticLockingFailureException("Optimistic locking failed"))
+                .thenThrow(new DuplicateKeyException("Duplicate key"));
+        when(mongoTemplate.findById(eq(userId), eq(RateLimiter.class)))
+                .thenReturn(new RateLimiter(userId, 5, Instant.now().plusSeconds(60), 1L));
+
+        RateLimiterResponse response = spyService.checkRateLimit(userId);
+
+        assertFalse(response.isAllowed());
+        assertEquals(1, meterRegistry.get("ratelimiter.mongo.findandmodify").tag("outcome", "optimistic_lock").timer().count());
+        assertEquals(1, meterRegistry.get("ratelimiter.mongo.findandmodify").tag("outcome", "duplicate_key").timer().count());
+        assertEquals(1, meterRegistry.get("ratelimiter.retries").tag("exception", "OptimisticLockingFailureException").counter().count());
+        assertEquals(1, meterRegistry.get("ratelimiter.duplicatekey.fallbacks").tag("result", "denied").counter().count());
+        assertEquals(1, meterRegistry.get("ratelimiter.verdicts").tag("verdict", "denied").counter().count());
+        assertEquals(0, meterRegistry.get("ratelimiter.verdicts").tag("verdict", "allowed").counter().count());
+    }
+
+    @Test
+    void testSleepWithBackoffRecordsTimeSpent() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        rateLimiterService.setMetrics(new RateLimiterMetrics(meterRegistry));
+
+        rateLimiterService.sleepWithBackoff(10);
+
+        assertTrue(meterRegistry.get("ratelimiter.backoff").timer().totalTime(TimeUnit.MILLISECONDS) >= 10);
+    }
+
+    @Test
+    void testCheckRateLimitServesRepeatDenialsFromDenyCache() {
+        String userId = "user123";
+        Instant expirationTime = Instant.now().plusSeconds(60);
+        rateLimiterService.setDenyCache(new DenyCache(100, new SimpleMeterRegistry()));
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(Update.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class))
+        ).thenThrow(new DuplicateKeyException("Duplicate key"));
+        when(mongoTemplate.findById(eq(userId), eq(RateLimiter.class)))
+                .thenReturn(new RateLimiter(userId, 5, expirationTime, 1L));
+
+        RateLimiterResponse first = rateLimiterService.checkRateLimit(userId);
+        RateLimiterResponse second = rateLimiterService.checkRateLimit(userId);
+
+        assertFalse(second.isAllowed());
+        assertEquals(first.getRetryAfter(), second.getRetryAfter());
+        verify(mongoTemplate, times(1)).findAndModify(
+                any(Query.class),
+                any(Update.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class));
+        verify(mongoTemplate, times(1)).findById(eq(userId), eq(RateLimiter.class));
+    }
+
+    @Test
+    void testCheckRateLimitsSkipsCachedDenialsInBatch() {
+        Instant expirationTime = Instant.now().plusSeconds(60);
+        DenyCache denyCache = new DenyCache(100, new SimpleMeterRegistry());
+        denyCache.record("deniedUser", new RateLimiterResponse(false, expirationTime));
+        rateLimiterService.setDenyCache(denyCache);
+        RateLimitStrategy strategy = mock(RateLimitStrategy.class);
+        when(strategy.checkRateLimits(eq(List.of("otherUser")), anyList())).thenReturn(List.of(new RateLimiterResponse(true, null)));
+        rateLimiterService.setRateLimitStrategy(strategy);
+
+        List<RateLimiterResponse> responses = rateLimiterService.checkRateLimits(List.of("deniedUser", "otherUser"));
+
+        assertFalse(responses.get(0).isAllowed());
+        assertEquals(expirationTime, responses.get(0).getRetryAfter());
+        assertTrue(responses.get(1).isAllowed());
+    }
+
+    @Test
+    void testShardedKeysAreCheckedOnTheirShards() {
+        PolicyStore policyStore = mock(PolicyStore.class);
+        when(policyStore.lookup("global")).thenReturn(new Policy(1000, 5));
+        rateLimiterService.setPolicyStore(policyStore);
+        HotKeySharding hotKeySharding = mock(HotKeySharding.class);
+        when(hotKeySharding.isSharded("global")).thenReturn(true);
+        when(hotKeySharding.checkRateLimit(eq("global"), any(Policy.class))).thenReturn(new RateLimiterResponse(true, null));
+        rateLimiterService.setHotKeySharding(hotKeySharding);
+
+        RateLimiterResponse response = rateLimiterService.checkRateLimit("global");
+
+        assertTrue(response.isAllowed());
+        // The shards split the key's own policy, not the configured default
+        verify(hotKeySharding).checkRateLimit("global", new Policy(1000, 5));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testWeightedChecksOfShardedKeysAreChargedToTheirShards() {
+        ReflectionTestUtils.setField(rateLimiterService, "threshold", 10);
+        ReflectionTestUtils.setField(rateLimiterService, "expirationMinutes", 1);
+        HotKeySharding hotKeySharding = mock(HotKeySharding.class);
+        when(hotKeySharding.isSharded("global")).thenReturn(true);
+        when(hotKeySharding.checkRateLimit(eq("global"), any(Policy.class), eq(3))).thenReturn(new RateLimiterResponse(true, null));
+        rateLimiterService.setHotKeySharding(hotKeySharding);
+
+        assertTrue(rateLimiterService.checkWeightedRateLimit("global", 3).isAllowed());
+        verify(hotKeySharding).checkRateLimit("global", new Policy(10, 1), 3);
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testRetriesAreReportedAsContention() {
+        String userId = "user123";
+        RateLimiterService spyService = spy(rateLimiterService);
+        doNothing().when(spyService).sleepWithBackoff(anyInt());
+        HotKeySharding hotKeySharding = mock(HotKeySharding.class);
+        spyService.setHotKeySharding(hotKeySharding);
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(Update.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class))
+        ).thenThrow(new OptimisticLockingFailureException("Contended"));
+
+        spyService.checkRateLimit(userId);
+
+        verify(hotKeySharding, times(3)).recordContention(userId);
+    }
+
+    @Test
+    void testCoalescedIncrementSplitsCounterIntoVerdicts() {
+        String userId = "user123";
+        Instant expirationTime = Instant.now().plusSeconds(60);
+        ReflectionTestUtils.setField(rateLimiterService, "threshold", 5);
+        // The counter was at 3 before an increment of 4, so two of the four checks fit the threshold
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(Update.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class))
+        ).thenReturn(new RateLimiter(userId, 7, expirationTime, 1L));
+
+        RateLimiterService.BatchVerdict verdict = rateLimiterService.tryCoalescedIncrement(userId, 4, 3);
+
+        assertTrue(verdict.at(0).isAllowed());
+        assertTrue(verdict.at(1).isAllowed());
+        assertFalse(verdict.at(2).isAllowed());
+        assertEquals(expirationTime, verdict.at(3).getRetryAfter());
+        verify(mongoTemplate).findAndModify(
+                any(Query.class),
+                argThat((Update update) -> update.getUpdateObject().get("$inc", Document.class).get("counter").equals(4)),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class));
+    }
+
+    @Test
+    void testCoalescedIncrementDeniesAllWhenDocumentIsFull() {
+        String userId = "user123";
+        Instant expirationTime = Instant.now().plusSeconds(60);
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(Update.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class))
+        ).thenThrow(new DuplicateKeyException("Duplicate key"));
+        when(mongoTemplate.findById(eq(userId), eq(RateLimiter.class)))
+                .thenReturn(new RateLimiter(userId, 5, expirationTime, 1L));
+
+        RateLimiterService.BatchVerdict verdict = rateLimiterService.tryCoalescedIncrement(userId, 3, 3);
+
+        assertFalse(verdict.at(0).isAllowed());
+        assertEquals(expirationTime, verdict.at(2).getRetryAfter());
+    }
+
+    @Test
+    void testCheckRateLimitCoalescesWhenEnabled() {
+        String userId = "user123";
+        ReflectionTestUtils.setField(rateLimiterService, "threshold", 5);
+        ReflectionTestUtils.setField(rateLimiterService, "coalescingEnabled", true);
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(Update.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class))
+        ).thenReturn(new RateLimiter(userId, 1, Instant.now().plusSeconds(60), 1L));
+
+        assertTrue(rateLimiterService.checkRateLimit(userId).isAllowed());
+    }
+
     @Test
     void testAttemptRateLimitIncrementSuccess() {
         String userId = "user123";
@@ -143,10 +559,13 @@ class RateLimiterServiceTest {
                 eq(RateLimiter.class))
         ).thenReturn(rateLimiter);
 
-        RateLimiterResponse response = rateLimiterService.attemptRateLimitIncrement(query, update);
+        RateLimiterResponse response = rateLimiterService.attemptRateLimitIncrement(query, update, new Policy(20, 1));
 
         assertTrue(response.isAllowed());
         assertNull(response.getRetryAfter());
+        assertEquals(20, response.getLimit());
+        assertEquals(10, response.getRemaining());
+        assertEquals(expirationTime.plusSeconds(60), response.getReset());
     }
 
     @Test
@@ -168,10 +587,11 @@ class RateLimiterServiceTest {
         when(mongoTemplate.findById(eq(userId), eq(RateLimiter.class)))
                 .thenReturn(existingRateLimiter);
 
-        RateLimiterResponse response = rateLimiterService.attemptRateLimitIncrement(query, update);
+        RateLimiterResponse response = rateLimiterService.attemptRateLimitIncrement(query, update, new Policy(10, 1));
 
         assertFalse(response.isAllowed());
         assertEquals(expirationTime, response.getRetryAfter());
+        assertEquals(0, response.getRemaining());
     }
 
     @Test
@@ -192,7 +612,7 @@ class RateLimiterServiceTest {
 
         // Ensure that the DuplicateKeyException is thrown so retry logic can handle it
         DuplicateKeyException thrownException = assertThrows(DuplicateKeyException.class, () -> {
-            rateLimiterService.attemptRateLimitIncrement(query, update);
+            rateLimiterService.attemptRateLimitIncrement(query, update, new Policy(20, 1));
         });
 
     }
@@ -212,12 +632,20 @@ class RateLimiterServiceTest {
 
         // Ensure that the OptimisticLockingFailureException is thrown and handled by the retry logic
         OptimisticLockingFailureException thrownException = assertThrows(OptimisticLockingFailureException.class, () -> {
-            rateLimiterService.attemptRateLimitIncrement(query, update);
+            rateLimiterService.attemptRateLimitIncrement(query, update, new Policy(20, 1));
         });
 
         assertEquals("Optimistic locking error", thrownException.getMessage());
     }
 
+    @Test
+    void testJitteredBackoffStaysWithinUpperHalf() {
+        for (int i = 0; i < 1000; i++) {
+            int backoff = rateLimiterService.jitteredBackoff(200);
+            assertTrue(backoff >= 100 && backoff <= 200, "Jittered backoff should stay between half and full backoff");
+        }
+    }
+
     @Test
     void testSleepWithBackoffSuccess() {
         // Testing the sleepWithBackoff method without interruption
@@ -260,4 +688,37 @@ class RateLimiterServiceTest {
         // No specific assertion for this test as it verifies proper handling of interruption
         // Ensuring no exceptions are thrown is sufficient
     }
+
+    private static BulkOperationException bulkException(int... duplicateIndexes) {
+        List<BulkWriteError> errors = new ArrayList<>();
+        for (int index : duplicateIndexes) {
+            errors.add(new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), index));
+        }
+        MongoBulkWriteException cause = new MongoBulkWriteException(BulkWriteResult.unacknowledged(), errors,
+                null, new ServerAddress(), Set.of());
+        return new BulkOperationException("Bulk write failed", cause);
+    }
+
+    @Test
+    void testPolicyOfKeyReplacesConfiguredLimit() {
+        String userId = "user123";
+        PolicyStore policyStore = mock(PolicyStore.class);
+        when(policyStore.lookup(userId)).thenReturn(new Policy(20, 2));
+        rateLimiterService.setPolicyStore(policyStore);
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(Update.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class))
+        ).thenReturn(new RateLimiter(userId, 1, Instant.now().plusSeconds(60), 1L));
+
+        assertTrue(rateLimiterService.checkRateLimit(userId).isAllowed());
+
+        verify(mongoTemplate).findAndModify(
+                argThat((Query query) -> query.getQueryObject().toJson().contains("{\"counter\": {\"$lt\": 20}}")),
+                argThat((Update update) -> update.getUpdateObject().get("$setOnInsert", Document.class).get("expirationTime", Instant.class)
+                        .isAfter(Instant.now().plusSeconds(59))),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class));
+    }
 }
@@ -0,0 +1,106 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestCoalescerTest {
+
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer();
+
+    @Test
+    void testCheckOnIdleKeyIncrementsAtOnce() {
+        List<Integer> increments = new ArrayList<>();
+
+        RateLimiterResponse response = requestCoalescer.check("user123", permits -> {
+            increments.add(permits);
+            return new RateLimiterService.BatchVerdict(permits, null);
+        });
+
+        assertTrue(response.isAllowed());
+        assertEquals(List.of(1), increments);
+    }
+
+    @Test
+    void testChecksArrivingDuringRoundTripShareOneIncrementInArrivalOrder() throws Exception {
+        Instant retryAfter = Instant.now().plusSeconds(60);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> increments = new CopyOnWriteArrayList<>();
+        RateLimiterService.BatchVerdict firstVerdict = new RateLimiterService.BatchVerdict(1, retryAfter);
+        RateLimiterService.BatchVerdict mergedVerdict = new RateLimiterService.BatchVerdict(3, retryAfter);
+
+        Thread first = startCheck(new AtomicReference<>(), permits -> {
+            increments.add(permits);
+            awaitQuietly(release);
+            return increments.size() == 1 ? firstVerdict : mergedVerdict;
+        });
+        awaitWaiting(first);
+
+        List<AtomicReference<RateLimiterResponse>> responses = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            AtomicReference<RateLimiterResponse> response = new AtomicReference<>();
+            responses.add(response);
+            Thread thread = startCheck(response, permits -> {
+                increments.add(permits);
+                return mergedVerdict;
+            });
+            awaitWaiting(thread);
+            threads.add(thread);
+        }
+        release.countDown();
+        first.join();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(List.of(1, 5), increments);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i < 3, responses.get(i).get().isAllowed());
+        }
+        assertEquals(retryAfter, responses.get(4).get().getRetryAfter());
+    }
+
+    @Test
+    void testFailureIsRethrownToEveryCheckOfTheBatch() {
+        IllegalStateException failure = new IllegalStateException("MongoDB unavailable");
+
+        IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                () -> requestCoalescer.check("user123", permits -> {
+                    throw failure;
+                }));
+
+        assertSame(failure, thrown);
+        // The key is free again for the next check
+        assertTrue(requestCoalescer.check("user123", permits -> new RateLimiterService.BatchVerdict(permits, null)).isAllowed());
+    }
+
+    private Thread startCheck(AtomicReference<RateLimiterResponse> response,
+                              java.util.function.IntFunction<RateLimiterService.BatchVerdict> increment) {
+        Thread thread = new Thread(() -> response.set(requestCoalescer.check("user123", increment)));
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
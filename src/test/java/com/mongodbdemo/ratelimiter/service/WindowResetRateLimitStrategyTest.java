@@ -0,0 +1,142 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import com.mongodbdemo.ratelimiter.metrics.RateLimiterMetrics;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class WindowResetRateLimitStrategyTest {
+
+    private static final Policy POLICY = new Policy(5, 1);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private WindowResetRateLimitStrategy windowResetRateLimitStrategy;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        windowResetRateLimitStrategy = new WindowResetRateLimitStrategy(mongoTemplate, RateLimiterMetrics.noop());
+    }
+
+    @Test
+    void testFirstRequestIsAllowed() {
+        assertTrue(windowResetRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+    }
+
+    @Test
+    void testRequestBelowThresholdIsAllowed() {
+        whenPrevious(new RateLimiter("user123", 4, Instant.now().plusSeconds(30), null));
+
+        assertTrue(windowResetRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+    }
+
+    @Test
+    void testRequestAtThresholdIsDeniedUntilExactWindowEnd() {
+        Instant windowEnd = Instant.ofEpochMilli(System.currentTimeMillis() + 30_000L);
+        whenPrevious(new RateLimiter("user123", 5, windowEnd, null));
+
+        RateLimiterResponse response = windowResetRateLimitStrategy.checkRateLimit("user123", POLICY);
+
+        assertFalse(response.isAllowed());
+        // The retry instant is reported with the TTL monitor offset the controller adds back
+        assertEquals(windowEnd.minusSeconds(60), response.getRetryAfter());
+    }
+
+    @Test
+    void testCostIsAllowedOnlyIfThatManyPermitsRemain() {
+        Instant windowEnd = Instant.now().plusSeconds(30);
+        whenPrevious(new RateLimiter("user123", 2, windowEnd, null));
+        assertTrue(windowResetRateLimitStrategy.checkRateLimit("user123", POLICY, 3).isAllowed());
+
+        whenPrevious(new RateLimiter("user123", 3, windowEnd, null));
+        assertFalse(windowResetRateLimitStrategy.checkRateLimit("user123", POLICY, 3).isAllowed());
+        assertTrue(windowResetRateLimitStrategy.supportsCost());
+    }
+
+    @Test
+    void testCostUpdateAddsCostOnlyWhileItFits() {
+        Document set = windowResetRateLimitStrategy.buildUpdate(1_000L, POLICY, 3)
+                .toPipeline(Aggregation.DEFAULT_CONTEXT).get(0).get("$set", Document.class);
+
+        String counter = set.get("counter", Document.class).toJson();
+        assertTrue(counter.contains("\"$lte\": [\"$counter\", 2]"), counter);
+        assertTrue(counter.contains("\"$add\": [\"$counter\", 3]"), counter);
+    }
+
+    @Test
+    void testCostAboveThresholdIsDeniedEvenAsFirstRequestOfWindow() {
+        RateLimiterResponse zeroThreshold = windowResetRateLimitStrategy.checkRateLimit("user123", new Policy(0, 1));
+        RateLimiterResponse overThreshold = windowResetRateLimitStrategy.checkRateLimit("user123", POLICY, 6);
+
+        assertFalse(zeroThreshold.isAllowed());
+        assertNotNull(zeroThreshold.getRetryAfter());
+        assertFalse(overThreshold.isAllowed());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testNewWindowStartsEmptyForCostAboveThreshold() {
+        Document set = windowResetRateLimitStrategy.buildUpdate(1_000L, POLICY, 6)
+                .toPipeline(Aggregation.DEFAULT_CONTEXT).get(0).get("$set", Document.class);
+
+        String counter = set.get("counter", Document.class).toJson();
+        assertTrue(counter.endsWith(", 0]}"), counter);
+    }
+
+    @Test
+    void testEndedWindowNotYetRemovedByTtlIsReset() {
+        whenPrevious(new RateLimiter("user123", 5, Instant.now().minusSeconds(1), null));
+
+        assertTrue(windowResetRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+    }
+
+    @Test
+    void testCheckIsSingleUpsertOnIdWithoutFallback() {
+        windowResetRateLimitStrategy.checkRateLimit("user123", POLICY);
+
+        verify(mongoTemplate).findAndModify(
+                argThat((Query query) -> query.getQueryObject().keySet().equals(Set.of("userId"))),
+                any(UpdateDefinition.class),
+                argThat((FindAndModifyOptions options) -> options.isUpsert() && !options.isReturnNew()),
+                eq(RateLimiter.class));
+        verifyNoMoreInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testUpdateIsSinglePipelineStageOnCounterAndExpiration() {
+        List<Document> pipeline = windowResetRateLimitStrategy.buildUpdate(1_000L, POLICY, 1).toPipeline(Aggregation.DEFAULT_CONTEXT);
+
+        assertEquals(1, pipeline.size());
+        Document set = pipeline.get(0).get("$set", Document.class);
+        assertEquals(List.of("counter", "expirationTime"), List.copyOf(set.keySet()));
+    }
+
+    private void whenPrevious(RateLimiter previous) {
+        when(mongoTemplate.findAndModify(
+                any(Query.class),
+                any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class),
+                eq(RateLimiter.class))
+        ).thenReturn(previous);
+    }
+}
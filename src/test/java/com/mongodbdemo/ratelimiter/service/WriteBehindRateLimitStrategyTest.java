@@ -0,0 +1,172 @@
+package com.mongodbdemo.ratelimiter.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.entity.RateLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+
+import static com.mongodbdemo.ratelimiter.RateLimiterConstants.TTL_MONITOR_INTERVAL_SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class WriteBehindRateLimitStrategyTest {
+
+    private static final Policy POLICY = new Policy(5, 1);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    private SimpleMeterRegistry meterRegistry;
+    private WriteBehindRateLimitStrategy writeBehindRateLimitStrategy;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        writeBehindRateLimitStrategy = new WriteBehindRateLimitStrategy(mongoTemplate, meterRegistry);
+        ReflectionTestUtils.setField(writeBehindRateLimitStrategy, "maxPending", 10);
+        ReflectionTestUtils.setField(writeBehindRateLimitStrategy, "flushMillis", 100L);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RateLimiter.class)).thenReturn(bulkOperations);
+    }
+
+    @Test
+    void testChecksAreDecidedLocallyUpToThreshold() {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(writeBehindRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+        }
+
+        assertFalse(writeBehindRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+        assertEquals(5.0, meterRegistry.get("ratelimiter.writebehind.buffer.permits").gauge().value());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testUnflushedPermitsPerKeyAreBounded() {
+        ReflectionTestUtils.setField(writeBehindRateLimitStrategy, "maxPending", 2);
+
+        assertTrue(writeBehindRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+        assertTrue(writeBehindRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+        RateLimiterResponse response = writeBehindRateLimitStrategy.checkRateLimit("user123", POLICY);
+
+        assertFalse(response.isAllowed());
+        // Retry once the next flush has emptied the buffer
+        Instant retryAt = response.getRetryAfter().plusSeconds(TTL_MONITOR_INTERVAL_SECONDS);
+        assertTrue(retryAt.isBefore(Instant.now().plusSeconds(1)));
+    }
+
+    @Test
+    void testFlushWritesBufferedPermitsAndRefreshesCount() {
+        writeBehindRateLimitStrategy.checkRateLimit("user123", POLICY);
+        writeBehindRateLimitStrategy.checkRateLimit("user123", POLICY);
+        Instant expirationTime = Instant.now().plusSeconds(30).truncatedTo(ChronoUnit.MILLIS);
+        when(mongoTemplate.find(any(Query.class), eq(RateLimiter.class)))
+                .thenReturn(List.of(new RateLimiter("user123", 5, expirationTime, 1L)));
+
+        writeBehindRateLimitStrategy.flush();
+
+        verify(bulkOperations).upsert(any(Query.class),
+                argThat((Update update) -> update.getUpdateObject().get("$inc", Document.class).get("counter").equals(2)));
+        verify(bulkOperations).execute();
+        RateLimiterResponse response = writeBehindRateLimitStrategy.checkRateLimit("user123", POLICY);
+        assertFalse(response.isAllowed());
+        assertEquals(expirationTime, response.getRetryAfter());
+        assertEquals(0.0, meterRegistry.get("ratelimiter.writebehind.buffer.permits").gauge().value());
+        assertEquals(1L, meterRegistry.get("ratelimiter.writebehind.flush").timer().count());
+    }
+
+    @Test
+    void testFailedFlushKeepsPermitsBuffered() {
+        writeBehindRateLimitStrategy.checkRateLimit("user123", POLICY);
+        when(bulkOperations.execute()).thenThrow(new DataAccessResourceFailureException("unreachable"));
+
+        assertThrows(DataAccessResourceFailureException.class, writeBehindRateLimitStrategy::flush);
+
+        assertEquals(1.0, meterRegistry.get("ratelimiter.writebehind.buffer.permits").gauge().value());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(writeBehindRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+        }
+        assertFalse(writeBehindRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+    }
+
+    @Test
+    void testFailedRefreshDoesNotBufferWrittenPermitsAgain() {
+        writeBehindRateLimitStrategy.checkRateLimit("user123", POLICY);
+        when(mongoTemplate.find(any(Query.class), eq(RateLimiter.class)))
+                .thenThrow(new DataAccessResourceFailureException("unreachable"));
+
+        assertThrows(DataAccessResourceFailureException.class, writeBehindRateLimitStrategy::flush);
+
+        verify(bulkOperations).execute();
+        assertEquals(0.0, meterRegistry.get("ratelimiter.writebehind.buffer.permits").gauge().value());
+    }
+
+    @Test
+    void testPartiallyFailedFlushBuffersOnlyFailedPermitsAgain() {
+        writeBehindRateLimitStrategy.checkRateLimit("userA", POLICY);
+        writeBehindRateLimitStrategy.checkRateLimit("userB", POLICY);
+        writeBehindRateLimitStrategy.checkRateLimit("userB", POLICY);
+        BulkWriteError error = new BulkWriteError(50, "operation exceeded time limit", new BsonDocument(), 1);
+        BulkOperationException failure = new BulkOperationException("Bulk write failed", new MongoBulkWriteException(
+                BulkWriteResult.unacknowledged(), List.of(error), null, new ServerAddress(), Set.of()));
+        when(bulkOperations.execute()).thenThrow(failure);
+
+        assertSame(failure, assertThrows(BulkOperationException.class, writeBehindRateLimitStrategy::flush));
+
+        // userA's upsert was applied and read back; only userB's two permits wait for the next flush
+        assertEquals(2.0, meterRegistry.get("ratelimiter.writebehind.buffer.permits").gauge().value());
+        verify(mongoTemplate).find(argThat((Query query) -> query.getQueryObject().toJson().contains("userA")
+                && !query.getQueryObject().toJson().contains("userB")), eq(RateLimiter.class));
+    }
+
+    @Test
+    void testDuplicateKeyRemovesEndedWindowForNextFlush() {
+        writeBehindRateLimitStrategy.checkRateLimit("user123", POLICY);
+        BulkWriteError error = new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 0);
+        when(bulkOperations.execute()).thenThrow(new BulkOperationException("Bulk write failed", new MongoBulkWriteException(
+                BulkWriteResult.unacknowledged(), List.of(error), null, new ServerAddress(), Set.of())));
+
+        writeBehindRateLimitStrategy.flush();
+
+        // Only a document whose window ended is removed; the permit waits for the next flush
+        verify(mongoTemplate).remove(argThat((Query query) -> query.getQueryObject().toJson().contains("\"$lte\"")),
+                eq(RateLimiter.class));
+        assertEquals(1.0, meterRegistry.get("ratelimiter.writebehind.buffer.permits").gauge().value());
+    }
+
+    @Test
+    void testExpiredWindowResetsCount() {
+        writeBehindRateLimitStrategy.checkRateLimit("user123", POLICY);
+        when(mongoTemplate.find(any(Query.class), eq(RateLimiter.class)))
+                .thenReturn(List.of(new RateLimiter("user123", 5, Instant.now().minusSeconds(TTL_MONITOR_INTERVAL_SECONDS + 1), 1L)));
+        writeBehindRateLimitStrategy.flush();
+
+        assertTrue(writeBehindRateLimitStrategy.checkRateLimit("user123", POLICY).isAllowed());
+    }
+}
@@ -0,0 +1,37 @@
+package com.mongodbdemo.ratelimiter.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeyTemplateTest {
+
+    @Test
+    void testResolvesPathVariablesAndHeaders() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, Map.of("userId", "user123"));
+        request.addHeader("X-Tenant", "acme");
+
+        assertEquals("orders:user123:acme", KeyTemplate.parse("orders:{userId}:{header:X-Tenant}").resolve(request));
+    }
+
+    @Test
+    void testMissingValuesResolveToEmpty() {
+        assertEquals("orders::", KeyTemplate.parse("orders:{userId}:{header:X-Tenant}").resolve(new MockHttpServletRequest()));
+    }
+
+    @Test
+    void testLiteralKeyIsSharedByAllRequests() {
+        assertEquals("search", KeyTemplate.parse("search").resolve(new MockHttpServletRequest()));
+    }
+
+    @Test
+    void testUnclosedPlaceholderIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> KeyTemplate.parse("orders:{userId"));
+    }
+}
@@ -0,0 +1,93 @@
+package com.mongodbdemo.ratelimiter.web;
+
+import com.mongodbdemo.ratelimiter.dto.RateLimiterResponse;
+import com.mongodbdemo.ratelimiter.service.RateLimiterService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RateLimitInterceptorTest {
+
+    @Mock
+    private RateLimiterService rateLimiterService;
+
+    private RateLimitInterceptor interceptor;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        interceptor = new RateLimitInterceptor(rateLimiterService);
+        request = new MockHttpServletRequest();
+        request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, Map.of("userId", "user123"));
+        response = new MockHttpServletResponse();
+    }
+
+    @Test
+    void testAllowedRequestProceedsWithAnnotationLimit() throws Exception {
+        when(rateLimiterService.checkRateLimit("orders:user123", 100)).thenReturn(new RateLimiterResponse(true, null));
+
+        assertTrue(interceptor.preHandle(request, response, handler(new Handlers(), "orders")));
+        assertEquals(200, response.getStatus());
+    }
+
+    @Test
+    void testDeniedRequestGetsTooManyRequests() throws Exception {
+        when(rateLimiterService.checkRateLimit("orders:user123", 100))
+                .thenReturn(new RateLimiterResponse(false, Instant.now().minusSeconds(30)));
+
+        assertFalse(interceptor.preHandle(request, response, handler(new Handlers(), "orders")));
+        assertEquals(429, response.getStatus());
+        long retryAfter = Long.parseLong(response.getHeader("retry-after"));
+        assertTrue(retryAfter > 0 && retryAfter <= 30);
+        assertEquals(RateLimitResponses.TOO_MANY_REQUESTS_BODY, response.getContentAsString());
+    }
+
+    @Test
+    void testClassAnnotationUsesConfiguredLimit() throws Exception {
+        when(rateLimiterService.checkRateLimit("limited:user123")).thenReturn(new RateLimiterResponse(true, null));
+
+        assertTrue(interceptor.preHandle(request, response, handler(new LimitedHandlers(), "search")));
+        verify(rateLimiterService).checkRateLimit("limited:user123");
+    }
+
+    @Test
+    void testHandlerWithoutAnnotationIsNotChecked() throws Exception {
+        assertTrue(interceptor.preHandle(request, response, handler(new Handlers(), "health")));
+        assertTrue(interceptor.preHandle(request, response, new Object()));
+        verifyNoInteractions(rateLimiterService);
+    }
+
+    private static HandlerMethod handler(Object bean, String method) throws NoSuchMethodException {
+        return new HandlerMethod(bean, method);
+    }
+
+    static class Handlers {
+
+        @RateLimited(key = "orders:{userId}", limit = 100)
+        public void orders() {
+        }
+
+        public void health() {
+        }
+    }
+
+    @RateLimited(key = "limited:{userId}")
+    static class LimitedHandlers {
+
+        public void search() {
+        }
+    }
+}